@@ -0,0 +1,16 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk insert. Rows that failed are listed by their index in the input and did not
+ * stop the rest of the batch from being written.
+ */
+public record BatchResult(int inserted, List<RowFailure> failures) {
+
+    public record RowFailure(int index, String reason) {}
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+}
@@ -0,0 +1,153 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves a {@link DataSnapshot} in a compact binary format and reads it back through {@link MappedSnapshot}.
+ * <p>
+ * Layout, all big-endian: a {@value #HEADER_BYTES}-byte header, then the string dictionary's offset
+ * table, then one fixed-width column per field (students, locations, entries), then the UTF-8 bytes
+ * of the dictionary. Every string is stored once and referred to by its index, -1 meaning null.
+ * Entries store the day as a {@link DayOfWeek} ordinal and the start as minutes after midnight, so
+ * they come back as {@code "08:00"} even if they were saved as {@code "08:00:00"}. Since every
+ * column has a fixed width, a reader can find any field of any row without decoding the others.
+ */
+public class BinarySnapshotStorage implements Storage {
+
+    static final int MAGIC = 0x53434842; // "SCHB"
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 48;
+
+    @Override
+    public void save(DataSnapshot data, String dataSource) throws IOException {
+        Path path = Path.of(dataSource);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = encode(data);
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Decodes the whole file; use {@link MappedSnapshot#open} to read only the rows you need. */
+    @Override
+    public DataSnapshot load(String dataSource) throws IOException {
+        return MappedSnapshot.open(Path.of(dataSource)).toDataSnapshot();
+    }
+
+    public static ByteBuffer encode(DataSnapshot data) throws IOException {
+        List<Student> students = data.getStudents();
+        List<Location> locations = data.getLocations();
+        List<TimetableEntry> entries = data.getEntries();
+
+        Dictionary dict = new Dictionary();
+        for (Student s : students) {
+            dict.add(s.getName());
+            dict.add(s.getFaculty());
+        }
+        for (Location l : locations) {
+            dict.add(l.getId());
+            dict.add(l.getName());
+            dict.add(l.getBuilding());
+        }
+        for (TimetableEntry e : entries) {
+            dict.add(e.getCourseName());
+            dict.add(e.getLocationId());
+        }
+
+        int strings = dict.bytes.size();
+        int size = HEADER_BYTES + 4 * (strings + 1)
+                + 8 * students.size()
+                + 20 * locations.size()
+                + 22 * entries.size()
+                + dict.totalBytes;
+        ByteBuffer buf = ByteBuffer.allocate(size);
+
+        buf.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) 0)
+                .putLong(data.getVersion())
+                .putInt(strings).putInt(students.size()).putInt(locations.size()).putInt(entries.size())
+                .putInt(dict.totalBytes);
+        buf.position(HEADER_BYTES);
+
+        int offset = 0;
+        for (byte[] b : dict.bytes) {
+            buf.putInt(offset);
+            offset += b.length;
+        }
+        buf.putInt(offset);
+
+        for (Student s : students) buf.putInt(dict.ref(s.getName()));
+        for (Student s : students) buf.putInt(dict.ref(s.getFaculty()));
+
+        for (Location l : locations) buf.putInt(dict.ref(l.getId()));
+        for (Location l : locations) buf.putInt(dict.ref(l.getName()));
+        for (Location l : locations) buf.putInt(dict.ref(l.getBuilding()));
+        for (Location l : locations) buf.putInt(l.getX());
+        for (Location l : locations) buf.putInt(l.getY());
+
+        for (TimetableEntry e : entries) buf.putInt(e.getId());
+        for (TimetableEntry e : entries) buf.putInt(e.getVersion());
+        for (TimetableEntry e : entries) buf.putInt(dict.ref(e.getCourseName()));
+        for (TimetableEntry e : entries) buf.putInt(dict.ref(e.getLocationId()));
+        for (TimetableEntry e : entries) buf.putShort(startMinutes(e));
+        for (TimetableEntry e : entries) buf.putShort(shortValue(e.getDurationMinutes(), "Duration"));
+        for (TimetableEntry e : entries) buf.put(dayOrdinal(e));
+        for (TimetableEntry e : entries) buf.put(typeOrdinal(e));
+
+        for (byte[] b : dict.bytes) buf.put(b);
+        return buf.flip();
+    }
+
+    private static short startMinutes(TimetableEntry e) throws IOException {
+        int minutes = e.getStartMinutes();
+        if (minutes < 0) throw new IOException("Invalid start time in entry " + e.getId() + ": " + e.getStartTime());
+        return (short) minutes;
+    }
+
+    private static byte dayOrdinal(TimetableEntry e) throws IOException {
+        DayOfWeek day = e.getDayOfWeek();
+        if (day == null) throw new IOException("Invalid day in entry " + e.getId() + ": " + e.getDay());
+        return (byte) day.ordinal();
+    }
+
+    private static byte typeOrdinal(TimetableEntry e) throws IOException {
+        if (e.getType() == null) throw new IOException("Missing class type in entry " + e.getId());
+        return (byte) e.getType().ordinal();
+    }
+
+    private static short shortValue(int value, String what) throws IOException {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) throw new IOException(what + " out of range: " + value);
+        return (short) value;
+    }
+
+    /** Strings in first-seen order; the index of a string is its reference. */
+    private static final class Dictionary {
+        final Map<String, Integer> refs = new HashMap<>();
+        final List<byte[]> bytes = new ArrayList<>();
+        int totalBytes;
+
+        void add(String s) {
+            if (s == null || refs.containsKey(s)) return;
+            refs.put(s, bytes.size());
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            bytes.add(b);
+            totalBytes += b.length;
+        }
+
+        int ref(String s) {
+            return s == null ? -1 : refs.get(s);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the last {@code maxEntries} faculty snapshots in memory so repeated refreshes of the
+ * same faculty skip the storage altogether. Writes go straight through to the wrapped storage
+ * and then drop every cached snapshot the write could have changed. Edits made past this cache,
+ * e.g. by another instance of the app, show up once a snapshot outlives its TTL: it is then
+ * brought up to date with {@link ScheduleStorage#loadChangesSince} rather than reloaded.
+ * <p>
+ * Cached snapshots are {@link DataSnapshot#freeze() frozen} and shared between callers; copy one
+ * to change it.
+ */
+public class CachingStorage implements ScheduleStorage {
+
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60_000;
+
+    private final ScheduleStorage delegate;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // guarded by this; access-ordered so the eldest entry is the least recently used
+    private final LinkedHashMap<Key, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+    // bumped by every write so a load that raced with it doesn't cache what it read before the write
+    private long writeGeneration; // guarded by this
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong deltaRefreshes = new AtomicLong();
+
+    public CachingStorage(ScheduleStorage delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public CachingStorage(ScheduleStorage delegate, int maxEntries, long ttlMillis) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    private record Key(String dataSource, String faculty) {}
+
+    private record Cached(DataSnapshot snapshot, long loadedAt) {}
+
+    /**
+     * {@code hits} were served from memory without asking the wrapped storage, {@code deltaRefreshes}
+     * were expired snapshots revalidated with a delta load, and {@code misses} were loaded in full.
+     */
+    public record Stats(long hits, long misses, long evictions, long invalidations, long deltaRefreshes, int size) {}
+
+    @Override
+    public DataSnapshot loadByFaculty(String facultyName, String dataSource) throws IOException {
+        Key key = new Key(dataSource, facultyName);
+        long generation;
+        Cached expired = null;
+        synchronized (this) {
+            generation = writeGeneration;
+            Cached c = cache.get(key);
+            if (c != null) {
+                if (System.currentTimeMillis() - c.loadedAt() < ttlMillis) {
+                    hits.incrementAndGet();
+                    return c.snapshot();
+                }
+                expired = c;
+            }
+        }
+
+        long loadedAt = System.currentTimeMillis();
+        DataSnapshot fresh;
+        if (expired != null) {
+            DataSnapshot old = expired.snapshot();
+            ChangeSet changes = delegate.loadChangesSince(facultyName, old.getVersion(), dataSource);
+            if (changes.isEmpty() && changes.toVersion() == old.getVersion()) {
+                fresh = old;
+            } else {
+                // The old snapshot is frozen and may still be in use, so the changes go to a copy.
+                fresh = new DataSnapshot(old);
+                fresh.apply(changes);
+                fresh.freeze();
+            }
+            deltaRefreshes.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            fresh = delegate.loadByFaculty(facultyName, dataSource);
+            fresh.freeze();
+        }
+
+        synchronized (this) {
+            if (generation != writeGeneration) return fresh;
+            cache.put(key, new Cached(fresh, loadedAt));
+            while (cache.size() > maxEntries) {
+                Iterator<Key> eldest = cache.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return fresh;
+    }
+
+    @Override
+    public ChangeSet loadChangesSince(String facultyName, long version, String dataSource) throws IOException {
+        return delegate.loadChangesSince(facultyName, version, dataSource);
+    }
+
+    // A student's timetable is small and only read on login and refresh, so it is not cached.
+    @Override
+    public DataSnapshot loadForStudent(String studentName, String dataSource) throws IOException {
+        return delegate.loadForStudent(studentName, dataSource);
+    }
+
+    @Override
+    public void enroll(String studentName, String courseName, String dataSource) throws IOException {
+        delegate.enroll(studentName, courseName, dataSource);
+    }
+
+    @Override
+    public void unenroll(String studentName, String courseName, String dataSource) throws IOException {
+        delegate.unenroll(studentName, courseName, dataSource);
+    }
+
+    @Override
+    public CampusGraph loadCampusGraph(String dataSource) throws IOException {
+        return delegate.loadCampusGraph(dataSource);
+    }
+
+    @Override
+    public List<String> listFaculties(String dataSource) throws IOException {
+        return delegate.listFaculties(dataSource);
+    }
+
+    // Only faculty loads are cached; a whole data source is loaded rarely enough to go straight through.
+    @Override
+    public DataSnapshot load(String dataSource) throws IOException, ClassNotFoundException {
+        return delegate.load(dataSource);
+    }
+
+    @Override
+    public void save(DataSnapshot data, String dataSource) throws IOException {
+        delegate.save(data, dataSource);
+        invalidate(dataSource, s -> true);
+    }
+
+    @Override
+    public void addTimetableEntry(String courseName, String type, String day, String startTime, int duration,
+                                  String locationName, int x, int y, String faculty, String dataSource) throws IOException {
+        try {
+            delegate.addTimetableEntry(courseName, type, day, startTime, duration, locationName, x, y, faculty, dataSource);
+        } finally {
+            invalidateFaculty(dataSource, faculty);
+            invalidate(dataSource, s -> !hasLocationAt(s, locationName, x, y));
+        }
+    }
+
+    @Override
+    public BatchResult addTimetableEntries(List<NewTimetableEntry> rows, String dataSource) throws IOException {
+        try {
+            return delegate.addTimetableEntries(rows, dataSource);
+        } finally {
+            invalidate(dataSource, s -> true);
+        }
+    }
+
+    @Override
+    public void updateTimetableEntry(int entryId, int expectedVersion,
+                                     String newCourseName, String newType,
+                                     String locationName, int x, int y,
+                                     String faculty, String dataSource) throws IOException {
+        try {
+            delegate.updateTimetableEntry(entryId, expectedVersion, newCourseName, newType, locationName, x, y, faculty, dataSource);
+        } finally {
+            invalidateFaculty(dataSource, faculty);
+            invalidate(dataSource, s -> hasEntry(s, entryId) || hasCourse(s, newCourseName)
+                    || !hasLocationAt(s, locationName, x, y));
+        }
+    }
+
+    @Override
+    public void deleteTimetableEntry(int entryId, int expectedVersion, String dataSource) throws IOException {
+        try {
+            delegate.deleteTimetableEntry(entryId, expectedVersion, dataSource);
+        } finally {
+            invalidate(dataSource, s -> hasEntry(s, entryId));
+        }
+    }
+
+    @Override
+    public void renameCourse(String oldName, String newName, String dataSource) throws IOException {
+        try {
+            delegate.renameCourse(oldName, newName, dataSource);
+        } finally {
+            invalidate(dataSource, s -> hasCourse(s, oldName) || hasCourse(s, newName));
+        }
+    }
+
+    @Override
+    public void deleteCourse(String courseName, String dataSource) throws IOException {
+        try {
+            delegate.deleteCourse(courseName, dataSource);
+        } finally {
+            invalidate(dataSource, s -> hasCourse(s, courseName));
+        }
+    }
+
+    @Override
+    public boolean accountExists(String name, String faculty, String dataSource) throws IOException {
+        return delegate.accountExists(name, faculty, dataSource);
+    }
+
+    @Override
+    public boolean createAdmin(String name, String password, String faculty, String dataSource) throws IOException {
+        return delegate.createAdmin(name, password, faculty, dataSource);
+    }
+
+    @Override
+    public boolean authenticateAdmin(String name, String password, String faculty, String dataSource) throws IOException {
+        return delegate.authenticateAdmin(name, password, faculty, dataSource);
+    }
+
+    @Override
+    public void createStudentIfNotExists(String name, String faculty, String dataSource) throws IOException {
+        delegate.createStudentIfNotExists(name, faculty, dataSource);
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), invalidations.get(), deltaRefreshes.get(), cache.size());
+    }
+
+    public synchronized void invalidateAll() {
+        writeGeneration++;
+        invalidations.addAndGet(cache.size());
+        cache.clear();
+    }
+
+    @Override
+    public void close() {
+        invalidateAll();
+        delegate.close();
+    }
+
+    private synchronized void invalidateFaculty(String dataSource, String faculty) {
+        writeGeneration++;
+        if (cache.remove(new Key(dataSource, faculty)) != null) invalidations.incrementAndGet();
+    }
+
+    // Writes don't say which faculty they touched, so every cached snapshot of the data source is checked.
+    private synchronized void invalidate(String dataSource, Predicate<DataSnapshot> affected) {
+        writeGeneration++;
+        Iterator<Map.Entry<Key, Cached>> it = cache.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Cached> e = it.next();
+            if (e.getKey().dataSource().equals(dataSource) && affected.test(e.getValue().snapshot())) {
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private static boolean hasEntry(DataSnapshot s, int entryId) {
+        TimetableStore entries = s.getTimetable();
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.id(i) == entryId) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasCourse(DataSnapshot s, String courseName) {
+        TimetableStore entries = s.getTimetable();
+        int course = entries.courseIdOf(courseName);
+        if (course < 0) return false;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.courseId(i) == course) return true;
+        }
+        return false;
+    }
+
+    // Every snapshot carries the full location list, so a moved or new location affects all of them.
+    private static boolean hasLocationAt(DataSnapshot s, String name, int x, int y) {
+        return s.findLocationByName(name).filter(l -> l.getX() == x && l.getY() == y).isPresent();
+    }
+}
@@ -0,0 +1,99 @@
+package org.example;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The walkways of the campus: junctions, doors and entrances as nodes, walkable paths between them
+ * as edges. A node with a {@code locationId} is the door of that room. Coordinates are in meters,
+ * like {@link Location}'s, and every path is walkable both ways.
+ * <p>
+ * Immutable. Adjacency is stored in flat arrays (edges of node {@code i} are
+ * {@code [edgeStart[i], edgeStart[i + 1])}) so {@link CampusRouter} can expand nodes without
+ * allocating.
+ */
+public final class CampusGraph {
+
+    public record Node(int id, String name, int x, int y, String locationId) {}
+
+    /** Between node ids; a length of zero or less means the straight-line distance. */
+    public record Edge(int from, int to, int meters) {}
+
+    private static final CampusGraph EMPTY = new CampusGraph(List.of(), List.of());
+
+    private final Node[] nodes;
+    private final Map<Integer, Integer> indexById = new HashMap<>();
+    private final Map<String, Integer> indexByLocation = new HashMap<>();
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final int[] edgeMeters;
+
+    public CampusGraph(List<Node> nodes, List<Edge> edges) {
+        this.nodes = nodes.toArray(new Node[0]);
+        for (int i = 0; i < this.nodes.length; i++) {
+            indexById.put(this.nodes[i].id(), i);
+            if (this.nodes[i].locationId() != null) indexByLocation.putIfAbsent(this.nodes[i].locationId(), i);
+        }
+
+        int[] degree = new int[this.nodes.length + 1];
+        for (Edge e : edges) {
+            Integer a = indexById.get(e.from()), b = indexById.get(e.to());
+            if (a == null || b == null) throw new IllegalArgumentException("Walkway " + e + " ends at an unknown node");
+            degree[a]++;
+            degree[b]++;
+        }
+        edgeStart = new int[this.nodes.length + 1];
+        for (int i = 0; i < this.nodes.length; i++) edgeStart[i + 1] = edgeStart[i] + degree[i];
+        edgeTarget = new int[edgeStart[this.nodes.length]];
+        edgeMeters = new int[edgeTarget.length];
+        int[] next = edgeStart.clone();
+        for (Edge e : edges) {
+            int a = indexById.get(e.from()), b = indexById.get(e.to());
+            int meters = e.meters() > 0 ? e.meters() : (int) Math.ceil(distance(a, b));
+            edgeTarget[next[a]] = b;
+            edgeMeters[next[a]++] = meters;
+            edgeTarget[next[b]] = a;
+            edgeMeters[next[b]++] = meters;
+        }
+    }
+
+    /** No walkways; {@link CampusRouter} then routes along the x and y axes. */
+    public static CampusGraph empty() {
+        return EMPTY;
+    }
+
+    public int size() {
+        return nodes.length;
+    }
+
+    public Node node(int index) {
+        return nodes[index];
+    }
+
+    /** Index of the node at the location's door, or -1 if the location is not on the graph. */
+    public int indexOf(Location location) {
+        Integer i = indexByLocation.get(location.getId());
+        return i == null ? -1 : i;
+    }
+
+    int edgeStart(int node) {
+        return edgeStart[node];
+    }
+
+    int edgeEnd(int node) {
+        return edgeStart[node + 1];
+    }
+
+    int edgeTarget(int edge) {
+        return edgeTarget[edge];
+    }
+
+    int edgeMeters(int edge) {
+        return edgeMeters[edge];
+    }
+
+    double distance(int a, int b) {
+        return Math.hypot(nodes[a].x() - nodes[b].x(), nodes[a].y() - nodes[b].y());
+    }
+}
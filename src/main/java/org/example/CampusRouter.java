@@ -0,0 +1,212 @@
+package org.example;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * Room-to-room walking routes over a {@link CampusGraph}, found with A* and the straight-line
+ * distance as heuristic (so walkway lengths must not be shorter than the straight line between
+ * their ends). Rooms that are not on the graph, or not connected to each other, get the axis-aligned
+ * route {@link Location#getDirectionsFromEntrance} has always used.
+ * <p>
+ * Routes are kept in a bounded least-recently-used cache. {@link #precomputeFrequentPairs} also pins
+ * the routes between rooms that most often hold back-to-back classes, so the routes students ask for
+ * most are a map lookup even after the cache has moved on.
+ */
+public class CampusRouter {
+
+    public static final int DEFAULT_CACHE_SIZE = 1_024;
+    public static final int WALKING_METERS_PER_MINUTE = 80;
+    /** A class ending at most this long before another starts is the one students walk from. */
+    public static final int BACK_TO_BACK_MINUTES = 30;
+
+    /**
+     * {@code path} runs from the node at {@code from}'s door to the one at {@code to}'s, and
+     * {@code legs} holds the walkway length between each node and the next; both are empty if the
+     * route is off the graph.
+     */
+    public record Route(Location from, Location to, List<CampusGraph.Node> path, List<Integer> legs, int meters) {
+
+        public int walkingMinutes() {
+            return (meters + WALKING_METERS_PER_MINUTE - 1) / WALKING_METERS_PER_MINUTE;
+        }
+
+        public String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("START: ").append(from.getName()).append('\n');
+            sb.append("----------------------\n");
+            if (path.size() > 1) {
+                for (int i = 1; i < path.size(); i++) {
+                    CampusGraph.Node a = path.get(i - 1), b = path.get(i);
+                    sb.append("• Go ").append(heading(b.x() - a.x(), b.y() - a.y())).append(" for ").append(legs.get(i - 1)).append(" meters");
+                    if (i < path.size() - 1 && b.name() != null && !b.name().isBlank()) sb.append(" to ").append(b.name());
+                    sb.append(".\n");
+                }
+            } else {
+                int dx = to.getX() - from.getX(), dy = to.getY() - from.getY();
+                if (dx != 0) sb.append("• Go ").append(heading(dx, 0)).append(" for ").append(Math.abs(dx)).append(" meters.\n");
+                if (dy != 0) sb.append("• Go ").append(heading(0, dy)).append(" for ").append(Math.abs(dy)).append(" meters.\n");
+            }
+            sb.append("----------------------\n");
+            sb.append("You have arrived at ").append(to.getName())
+                    .append(" (").append(meters).append(" m, about ").append(walkingMinutes()).append(" min walk)");
+            return sb.toString();
+        }
+
+        // y grows southwards, as in Location.getDirectionsFromEntrance.
+        private static String heading(int dx, int dy) {
+            String ns = Math.abs(dy) * 2 > Math.abs(dx) ? (dy > 0 ? "SOUTH" : "NORTH") : "";
+            String ew = Math.abs(dx) * 2 > Math.abs(dy) ? (dx > 0 ? "EAST" : "WEST") : "";
+            return ns.isEmpty() || ew.isEmpty() ? ns + ew : ns + "-" + ew;
+        }
+    }
+
+    private record Key(String from, String to) {}
+
+    private final CampusGraph graph;
+    private final Map<Key, Route> cache;
+    private volatile Map<Key, Route> pinned = Map.of();
+
+    public CampusRouter(CampusGraph graph) {
+        this(graph, DEFAULT_CACHE_SIZE);
+    }
+
+    public CampusRouter(CampusGraph graph, int cacheSize) {
+        this.graph = graph;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public Route route(Location from, Location to) {
+        Key key = new Key(from.getId(), to.getId());
+        Route route = pinned.get(key);
+        if (route == null) route = cache.get(key);
+        if (route == null) {
+            route = findRoute(from, to);
+            cache.put(key, route);
+        }
+        return route;
+    }
+
+    /** The walk from the class before {@code entry} (see {@link #previousClass}), if there is one in another room. */
+    public Optional<Route> routeFromPreviousClass(ScheduleSnapshot data, TimetableEntry entry) {
+        TimetableEntry previous = previousClass(data, entry);
+        if (previous == null) return Optional.empty();
+        Optional<Location> from = data.findLocation(previous.getLocationId());
+        Optional<Location> to = data.findLocation(entry.getLocationId());
+        if (from.isEmpty() || to.isEmpty() || from.get().getId().equals(to.get().getId())) return Optional.empty();
+        return Optional.of(route(from.get(), to.get()));
+    }
+
+    /** The class in {@code data} that ends last within {@link #BACK_TO_BACK_MINUTES} before {@code entry} starts, or null. */
+    public static TimetableEntry previousClass(ScheduleSnapshot data, TimetableEntry entry) {
+        DayOfWeek day = entry.getDayOfWeek();
+        int start = entry.getStartMinutes();
+        if (day == null || start < 0) return null;
+        TimetableEntry previous = null;
+        int previousEnd = -1;
+        for (TimetableEntry e : data.entriesOverlapping(day, start - BACK_TO_BACK_MINUTES, start)) {
+            int end = e.getStartMinutes() + e.getDurationMinutes();
+            if (end <= start && end > previousEnd) {
+                previous = e;
+                previousEnd = end;
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Computes and pins the routes for the {@code limit} room pairs that hold back-to-back classes
+     * most often in {@code data}, replacing the previously pinned ones.
+     */
+    public void precomputeFrequentPairs(ScheduleSnapshot data, int limit) {
+        Map<Key, Integer> counts = new HashMap<>();
+        Map<String, Location> byId = new HashMap<>();
+        for (TimetableEntry entry : data.getEntries()) {
+            TimetableEntry previous = previousClass(data, entry);
+            if (previous == null) continue;
+            Optional<Location> from = data.findLocation(previous.getLocationId());
+            Optional<Location> to = data.findLocation(entry.getLocationId());
+            if (from.isEmpty() || to.isEmpty() || from.get().getId().equals(to.get().getId())) continue;
+            byId.put(from.get().getId(), from.get());
+            byId.put(to.get().getId(), to.get());
+            counts.merge(new Key(from.get().getId(), to.get().getId()), 1, Integer::sum);
+        }
+
+        List<Key> frequent = counts.entrySet().stream()
+                .sorted(Map.Entry.<Key, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+        Map<Key, Route> routes = new HashMap<>();
+        frequent.parallelStream()
+                .map(k -> {
+                    Route r = pinned.get(k);
+                    return r != null ? r : findRoute(byId.get(k.from()), byId.get(k.to()));
+                })
+                .toList()
+                .forEach(r -> routes.put(new Key(r.from().getId(), r.to().getId()), r));
+        pinned = Map.copyOf(routes);
+    }
+
+    private Route findRoute(Location from, Location to) {
+        int start = graph.indexOf(from), goal = graph.indexOf(to);
+        if (start >= 0 && goal >= 0) {
+            Route route = aStar(from, to, start, goal);
+            if (route != null) return route;
+        }
+        return new Route(from, to, List.of(), List.of(), Math.abs(to.getX() - from.getX()) + Math.abs(to.getY() - from.getY()));
+    }
+
+    private Route aStar(Location from, Location to, int start, int goal) {
+        int n = graph.size();
+        int[] cost = new int[n];
+        int[] cameFrom = new int[n];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        cost[start] = 0;
+        cameFrom[start] = -1;
+        // Estimated total in the high half, node in the low half; stale entries are skipped when polled.
+        PriorityQueue<Long> open = new PriorityQueue<>();
+        open.add((long) (int) graph.distance(start, goal) << 32 | start);
+
+        while (!open.isEmpty()) {
+            long top = open.poll();
+            int node = (int) top;
+            int estimate = (int) (top >>> 32);
+            if (node == goal) break;
+            if (estimate > cost[node] + (int) graph.distance(node, goal)) continue;
+            for (int e = graph.edgeStart(node); e < graph.edgeEnd(node); e++) {
+                int next = graph.edgeTarget(e);
+                int c = cost[node] + graph.edgeMeters(e);
+                if (c < cost[next]) {
+                    cost[next] = c;
+                    cameFrom[next] = node;
+                    open.add((long) (c + (int) graph.distance(next, goal)) << 32 | next);
+                }
+            }
+        }
+        if (cost[goal] == Integer.MAX_VALUE) return null;
+
+        List<CampusGraph.Node> path = new ArrayList<>();
+        List<Integer> legs = new ArrayList<>();
+        for (int node = goal; node != -1; node = cameFrom[node]) {
+            path.add(graph.node(node));
+            if (cameFrom[node] != -1) legs.add(cost[node] - cost[cameFrom[node]]);
+        }
+        Collections.reverse(path);
+        Collections.reverse(legs);
+        return new Route(from, to, List.copyOf(path), List.copyOf(legs), cost[goal]);
+    }
+}
@@ -0,0 +1,197 @@
+package org.example;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Every class on campus laid out for {@link CampusTimetableView}: one row per room or per faculty,
+ * time along the other axis as minutes since Monday 00:00. Classes in a row that overlap get
+ * separate lanes, so a row is as many lanes tall as it has classes running at once.
+ * <p>
+ * Rows and blocks can be added at any time, e.g. as faculties finish loading; the layout is brought
+ * up to date by {@link #layout()}, which only touches the rows that changed. Queries binary-search
+ * the rows on screen and the blocks in view, so their cost does not grow with the campus.
+ * Not thread-safe; the view uses it on the FX thread only.
+ */
+final class CampusTimetable {
+
+    enum Axis {
+        ROOMS("Rooms"), FACULTIES("Faculties");
+
+        private final String label;
+
+        Axis(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    static final int DAY_MINUTES = 24 * 60;
+
+    /** A class at {@code [from, to)} week minutes, drawn in {@code lane} of its row. */
+    static final class Block {
+        final TimetableEntry entry;
+        final String faculty;
+        final int from;
+        final int to;
+        int lane;
+
+        Block(TimetableEntry entry, String faculty, int from, int to) {
+            this.entry = entry;
+            this.faculty = faculty;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private static final class Row {
+        final String name;
+        final List<Block> blocks = new ArrayList<>();
+        int longest;
+        int lanes = 1;
+
+        Row(String name) {
+            this.name = name;
+        }
+
+        // Sorts by start and gives each block the lowest lane that is free when it starts.
+        void settle() {
+            blocks.sort(Comparator.comparingInt((Block b) -> b.from).thenComparingInt(b -> b.to));
+            int[] laneEnds = new int[4];
+            int used = 0;
+            for (Block b : blocks) {
+                int lane = 0;
+                while (lane < used && laneEnds[lane] > b.from) lane++;
+                if (lane == used) {
+                    if (used == laneEnds.length) laneEnds = Arrays.copyOf(laneEnds, used * 2);
+                    used++;
+                }
+                laneEnds[lane] = b.to;
+                b.lane = lane;
+            }
+            lanes = Math.max(1, used);
+        }
+    }
+
+    private final List<Row> rows = new ArrayList<>();
+    private final Map<String, Integer> rowIndex = new HashMap<>(); // lower-cased name
+    private final Set<Row> unsettled = new LinkedHashSet<>();
+    private int[] laneTops = {0}; // laneTops[r] = lanes above row r; laneTops[rows] = total
+    private boolean layoutStale;
+    private int size;
+
+    /** Index of the row called {@code name}, adding it at the bottom if there is none yet. */
+    int rowFor(String name) {
+        Integer index = rowIndex.get(name.toLowerCase(Locale.ROOT));
+        if (index != null) return index;
+        rows.add(new Row(name));
+        rowIndex.put(name.toLowerCase(Locale.ROOT), rows.size() - 1);
+        layoutStale = true;
+        return rows.size() - 1;
+    }
+
+    /** Adds the entry to the row called {@code rowName}; entries without a valid day and time are skipped. */
+    void add(String rowName, String faculty, TimetableEntry entry) {
+        DayOfWeek day = entry.getDayOfWeek();
+        int start = entry.getStartMinutes();
+        if (day == null || start < 0) return;
+        int from = day.ordinal() * DAY_MINUTES + start;
+        Row row = rows.get(rowFor(rowName));
+        row.blocks.add(new Block(entry, faculty, from, from + Math.max(entry.getDurationMinutes(), 1)));
+        row.longest = Math.max(row.longest, Math.max(entry.getDurationMinutes(), 1));
+        unsettled.add(row);
+        size++;
+    }
+
+    /** Sorts and re-lanes the rows that got blocks since the last call. */
+    void layout() {
+        if (!unsettled.isEmpty()) {
+            for (Row row : unsettled) {
+                int before = row.lanes;
+                row.settle();
+                if (row.lanes != before) layoutStale = true;
+            }
+            unsettled.clear();
+        }
+        if (!layoutStale) return;
+        laneTops = new int[rows.size() + 1];
+        for (int r = 0; r < rows.size(); r++) laneTops[r + 1] = laneTops[r] + rows.get(r).lanes;
+        layoutStale = false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int rowCount() {
+        return rows.size();
+    }
+
+    String rowName(int row) {
+        return rows.get(row).name;
+    }
+
+    /** Lanes above {@code row}; call {@link #layout()} first. */
+    int laneTop(int row) {
+        return laneTops[row];
+    }
+
+    int lanes(int row) {
+        return rows.get(row).lanes;
+    }
+
+    int totalLanes() {
+        return laneTops[rows.size()];
+    }
+
+    /** The row holding lane {@code lane} counted from the top, clamped to the rows there are, or -1 if there are none. */
+    int rowAtLane(int lane) {
+        if (rows.isEmpty()) return -1;
+        int lo = 0, hi = rows.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (laneTops[mid] <= lane) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** Visits the row's blocks that share at least one minute with {@code [from, to)}, in start order. */
+    void forEachBlock(int row, int from, int to, Consumer<Block> visit) {
+        Row r = rows.get(row);
+        List<Block> blocks = r.blocks;
+        // Blocks starting at or before from - longest end by from at the latest.
+        int lo = 0, hi = blocks.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blocks.get(mid).from <= from - r.longest) lo = mid + 1;
+            else hi = mid;
+        }
+        for (int i = lo; i < blocks.size() && blocks.get(i).from < to; i++) {
+            Block b = blocks.get(i);
+            if (b.to > from) visit.accept(b);
+        }
+    }
+
+    /** The block drawn in the row's lane at {@code minute}, or null. */
+    Block blockAt(int row, int lane, int minute) {
+        Block[] hit = new Block[1];
+        forEachBlock(row, minute, minute + 1, b -> {
+            if (b.lane == lane) hit[0] = b;
+        });
+        return hit[0];
+    }
+}
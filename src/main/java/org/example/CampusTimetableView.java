@@ -0,0 +1,301 @@
+package org.example;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.*;
+import javafx.scene.layout.*;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Every faculty's classes side by side, with rooms or faculties down the side and Monday to Friday
+ * across. Only what is on screen is drawn, onto a canvas the size of the viewport, so scrolling
+ * costs the same for ten thousand classes as for ten; redraws are coalesced to one per frame.
+ * <p>
+ * Faculties are loaded one at a time in the background and appear as they arrive. With faculties
+ * down the side, the ones scrolled into view are loaded first.
+ */
+public class CampusTimetableView extends BorderPane {
+
+    private static final double LANE_HEIGHT = 28;
+    private static final double HEADER_HEIGHT = 44;
+    private static final double LABEL_WIDTH = 170;
+    private static final double PX_PER_MINUTE = 1.5;
+    private static final int DAY_START = 8 * 60;
+    private static final int DAY_END = 22 * 60;
+    private static final int DAY_SPAN = DAY_END - DAY_START;
+    private static final int DAYS = ScheduleGrid.DAYS.length;
+
+    private final ScheduleStorage storage;
+    private final String dataSource;
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar hBar = new ScrollBar();
+    private final ScrollBar vBar = new ScrollBar();
+    private final Label status = new Label();
+    private final AnimationTimer painter;
+
+    private CampusTimetable model = new CampusTimetable(); // FX thread only
+    private boolean dirty = true;
+    private final LoadExecutor.Lane loads = LoadExecutor.shared().lane("campus"); // switching axis cancels the previous load
+    private volatile int visibleFrom, visibleTo = -1; // rows on screen, for the loader to put first
+
+    public CampusTimetableView(ScheduleStorage storage, String dataSource) {
+        this.storage = storage;
+        this.dataSource = dataSource;
+
+        ComboBox<CampusTimetable.Axis> axisBox = new ComboBox<>();
+        axisBox.getItems().addAll(CampusTimetable.Axis.values());
+        axisBox.setValue(CampusTimetable.Axis.ROOMS);
+        axisBox.setOnAction(e -> load(axisBox.getValue()));
+        HBox top = new HBox(10, new Label("Rows:"), axisBox, status);
+        top.setAlignment(Pos.CENTER_LEFT);
+        top.setPadding(new Insets(8));
+        setTop(top);
+
+        Pane viewport = new Pane(canvas);
+        viewport.setMinSize(0, 0);
+        canvas.widthProperty().bind(viewport.widthProperty());
+        canvas.heightProperty().bind(viewport.heightProperty());
+        canvas.widthProperty().addListener(o -> dirty = true);
+        canvas.heightProperty().addListener(o -> dirty = true);
+        vBar.setOrientation(Orientation.VERTICAL);
+        hBar.valueProperty().addListener(o -> dirty = true);
+        vBar.valueProperty().addListener(o -> dirty = true);
+        canvas.setOnScroll(e -> {
+            vBar.setValue(clamp(vBar.getValue() - e.getDeltaY(), vBar.getMax()));
+            hBar.setValue(clamp(hBar.getValue() - e.getDeltaX(), hBar.getMax()));
+        });
+        canvas.setOnMouseClicked(e -> showBlock(e.getX(), e.getY()));
+        BorderPane body = new BorderPane(viewport);
+        body.setRight(vBar);
+        body.setBottom(hBar);
+        setCenter(body);
+
+        painter = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                if (!dirty) return;
+                dirty = false;
+                draw();
+            }
+        };
+        painter.start();
+        load(axisBox.getValue());
+    }
+
+    /** Stops drawing and loading; call when the window closes. */
+    public void stop() {
+        painter.stop();
+        loads.cancel();
+    }
+
+    private void load(CampusTimetable.Axis axis) {
+        CampusTimetable fresh = new CampusTimetable();
+        model = fresh;
+        vBar.setValue(0);
+        dirty = true;
+        status.setText("Loading…");
+
+        loads.submit(ticket -> {
+            List<String> faculties = storage.listFaculties(dataSource);
+            if (axis == CampusTimetable.Axis.FACULTIES) {
+                Platform.runLater(() -> {
+                    if (ticket.isCancelled()) return;
+                    faculties.forEach(fresh::rowFor);
+                    dirty = true;
+                });
+            }
+            Set<String> pending = new LinkedHashSet<>(faculties);
+            boolean roomsListed = false;
+            while (!pending.isEmpty() && !ticket.isCancelled()) {
+                String faculty = nextFaculty(pending, faculties, axis);
+                pending.remove(faculty);
+                DataSnapshot s = storage.loadByFaculty(faculty, dataSource);
+
+                // Every snapshot carries all rooms, so the first one lays out the rows in name order.
+                List<String> rooms = new ArrayList<>();
+                if (axis == CampusTimetable.Axis.ROOMS && !roomsListed) {
+                    s.getLocations().stream().map(Location::getName).sorted(String.CASE_INSENSITIVE_ORDER).forEach(rooms::add);
+                    roomsListed = true;
+                }
+                TimetableStore store = s.getTimetable();
+                List<TimetableEntry> entries = new ArrayList<>(store.size());
+                List<String> rowNames = new ArrayList<>(store.size());
+                for (int row = 0; row < store.size(); row++) {
+                    TimetableEntry e = store.detach(row);
+                    entries.add(e);
+                    rowNames.add(axis == CampusTimetable.Axis.FACULTIES ? faculty
+                            : s.findLocation(e.getLocationId()).map(Location::getName).orElse(e.getLocationId()));
+                }
+                int left = pending.size();
+                Platform.runLater(() -> {
+                    if (ticket.isCancelled()) return;
+                    rooms.forEach(fresh::rowFor);
+                    for (int i = 0; i < entries.size(); i++) fresh.add(rowNames.get(i), faculty, entries.get(i));
+                    status.setText(fresh.size() + " classes" + (left > 0 ? ", " + left + " faculties to go…" : ""));
+                    dirty = true;
+                });
+            }
+            return null;
+        }, done -> {}, e -> status.setText("Load failed: " + e.getMessage()));
+    }
+
+    // With faculties as rows, one that is on screen goes first; otherwise they load in name order.
+    private String nextFaculty(Set<String> pending, List<String> faculties, CampusTimetable.Axis axis) {
+        if (axis == CampusTimetable.Axis.FACULTIES) {
+            int from = visibleFrom, to = Math.min(visibleTo, faculties.size() - 1);
+            for (int r = Math.max(from, 0); r <= to; r++) {
+                if (pending.contains(faculties.get(r))) return faculties.get(r);
+            }
+        }
+        return pending.iterator().next();
+    }
+
+    private void draw() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        double w = canvas.getWidth(), h = canvas.getHeight();
+        model.layout();
+        updateScrollBars(w, h);
+        g.setFill(Color.WHITE);
+        g.fillRect(0, 0, w, h);
+
+        double scrollX = hBar.getValue(), scrollY = vBar.getValue();
+        int firstRow = model.rowAtLane((int) (scrollY / LANE_HEIGHT));
+        int lastRow = model.rowAtLane((int) ((scrollY + h - HEADER_HEIGHT) / LANE_HEIGHT));
+        visibleFrom = firstRow;
+        visibleTo = lastRow;
+
+        g.save();
+        g.beginPath();
+        g.rect(LABEL_WIDTH, HEADER_HEIGHT, Math.max(0, w - LABEL_WIDTH), Math.max(0, h - HEADER_HEIGHT));
+        g.clip();
+        g.setFont(Font.font("Arial", 11));
+        g.setTextBaseline(VPos.CENTER);
+        for (int row = firstRow; row >= 0 && row <= lastRow; row++) {
+            double rowY = HEADER_HEIGHT + model.laneTop(row) * LANE_HEIGHT - scrollY;
+            g.setStroke(Color.gray(0.9));
+            g.strokeLine(LABEL_WIDTH, rowY, w, rowY);
+            for (int d = 0; d < DAYS; d++) {
+                double dayX = LABEL_WIDTH + d * DAY_SPAN * PX_PER_MINUTE - scrollX;
+                if (dayX > w || dayX + DAY_SPAN * PX_PER_MINUTE < LABEL_WIDTH) continue;
+                // Only the minutes of this day that are on screen.
+                int from = d * CampusTimetable.DAY_MINUTES + DAY_START + (int) Math.max(0, (LABEL_WIDTH - dayX) / PX_PER_MINUTE);
+                int to = d * CampusTimetable.DAY_MINUTES + DAY_START + (int) Math.min(DAY_SPAN, (w - dayX) / PX_PER_MINUTE + 1);
+                int dayOffset = d * CampusTimetable.DAY_MINUTES + DAY_START;
+                model.forEachBlock(row, from, to, b -> drawBlock(g, b, dayX + (b.from - dayOffset) * PX_PER_MINUTE, rowY));
+            }
+        }
+        g.restore();
+
+        drawHeader(g, w, scrollX);
+        drawRowLabels(g, h, firstRow, lastRow, scrollY);
+    }
+
+    private void drawBlock(GraphicsContext g, CampusTimetable.Block b, double x, double rowY) {
+        double y = rowY + b.lane * LANE_HEIGHT + 2;
+        double width = Math.max(2, (b.to - b.from) * PX_PER_MINUTE - 2);
+        g.setFill(colorOf(b.entry.getType()));
+        g.fillRoundRect(x, y, width, LANE_HEIGHT - 4, 6, 6);
+        if (width > 24) {
+            g.setFill(Color.WHITE);
+            g.fillText(b.entry.getCourseName(), x + 4, y + (LANE_HEIGHT - 4) / 2, width - 8);
+        }
+    }
+
+    private void drawHeader(GraphicsContext g, double w, double scrollX) {
+        g.setFill(Color.gray(0.96));
+        g.fillRect(0, 0, w, HEADER_HEIGHT);
+        g.save();
+        g.beginPath();
+        g.rect(LABEL_WIDTH, 0, Math.max(0, w - LABEL_WIDTH), HEADER_HEIGHT);
+        g.clip();
+        g.setTextBaseline(VPos.CENTER);
+        for (int d = 0; d < DAYS; d++) {
+            double dayX = LABEL_WIDTH + d * DAY_SPAN * PX_PER_MINUTE - scrollX;
+            if (dayX > w || dayX + DAY_SPAN * PX_PER_MINUTE < LABEL_WIDTH) continue;
+            g.setFill(Color.DARKBLUE);
+            g.setFont(Font.font("Arial", FontWeight.BOLD, 13));
+            g.fillText(ScheduleGrid.DAYS[d], Math.max(dayX, LABEL_WIDTH) + 4, 12);
+            g.setFont(Font.font("Arial", 10));
+            g.setFill(Color.GRAY);
+            for (int m = 0; m < DAY_SPAN; m += 60) {
+                double x = dayX + m * PX_PER_MINUTE;
+                g.setStroke(m == 0 ? Color.GRAY : Color.gray(0.85));
+                g.strokeLine(x, 24, x, HEADER_HEIGHT);
+                g.fillText(TimetableStore.formatMinutes(DAY_START + m), x + 3, 34);
+            }
+        }
+        g.restore();
+    }
+
+    private void drawRowLabels(GraphicsContext g, double h, int firstRow, int lastRow, double scrollY) {
+        g.setFill(Color.gray(0.96));
+        g.fillRect(0, HEADER_HEIGHT, LABEL_WIDTH, h - HEADER_HEIGHT);
+        g.save();
+        g.beginPath();
+        g.rect(0, HEADER_HEIGHT, LABEL_WIDTH, Math.max(0, h - HEADER_HEIGHT));
+        g.clip();
+        g.setFont(Font.font("Arial", 12));
+        g.setTextBaseline(VPos.CENTER);
+        for (int row = firstRow; row >= 0 && row <= lastRow; row++) {
+            double y = HEADER_HEIGHT + model.laneTop(row) * LANE_HEIGHT - scrollY;
+            g.setStroke(Color.gray(0.85));
+            g.strokeLine(0, y, LABEL_WIDTH, y);
+            g.setFill(Color.BLACK);
+            g.fillText(model.rowName(row), 6, y + LANE_HEIGHT / 2, LABEL_WIDTH - 12);
+        }
+        g.restore();
+    }
+
+    private void updateScrollBars(double w, double h) {
+        double contentWidth = DAYS * DAY_SPAN * PX_PER_MINUTE, contentHeight = model.totalLanes() * LANE_HEIGHT;
+        hBar.setMax(Math.max(0, contentWidth - (w - LABEL_WIDTH)));
+        vBar.setMax(Math.max(0, contentHeight - (h - HEADER_HEIGHT)));
+        hBar.setVisibleAmount(Math.max(1, w - LABEL_WIDTH));
+        vBar.setVisibleAmount(Math.max(1, h - HEADER_HEIGHT));
+        hBar.setUnitIncrement(60 * PX_PER_MINUTE);
+        vBar.setUnitIncrement(LANE_HEIGHT);
+    }
+
+    private void showBlock(double x, double y) {
+        if (x < LABEL_WIDTH || y < HEADER_HEIGHT || model.rowCount() == 0) return;
+        int lane = (int) ((y - HEADER_HEIGHT + vBar.getValue()) / LANE_HEIGHT);
+        int row = model.rowAtLane(lane);
+        if (lane >= model.totalLanes()) return;
+        int minuteOnAxis = (int) ((x - LABEL_WIDTH + hBar.getValue()) / PX_PER_MINUTE);
+        int day = minuteOnAxis / DAY_SPAN;
+        if (day >= DAYS) return;
+        int minute = day * CampusTimetable.DAY_MINUTES + DAY_START + minuteOnAxis % DAY_SPAN;
+        CampusTimetable.Block b = model.blockAt(row, lane - model.laneTop(row), minute);
+        if (b == null) return;
+        TimetableEntry e = b.entry;
+        new Alert(Alert.AlertType.INFORMATION, e.getCourseName() + " (" + e.getType() + ")\n"
+                + e.getDay() + " " + e.getStartTime() + ", " + e.getDurationMinutes() + " min\n"
+                + "Room: " + e.getLocationId() + "\nFaculty: " + b.faculty).show();
+    }
+
+    private static Color colorOf(ClassType type) {
+        return switch (type) {
+            case LECTURE -> Color.web("#4CAF50");
+            case LAB -> Color.web("#2196F3");
+            case SEMINAR -> Color.web("#FF9800");
+            default -> Color.web("#9E9E9E");
+        };
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
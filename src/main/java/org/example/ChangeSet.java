@@ -0,0 +1,26 @@
+package org.example;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * What changed in one faculty's timetable between two change versions.
+ * Upserted entries and locations are complete rows that replace any earlier copy with the same id.
+ */
+public record ChangeSet(long fromVersion, long toVersion,
+                        List<TimetableEntry> upsertedEntries,
+                        List<Integer> deletedEntryIds,
+                        List<Location> upsertedLocations) implements Serializable {
+
+    public static ChangeSet empty(long version) {
+        return new ChangeSet(version, version, List.of(), List.of(), List.of());
+    }
+
+    public boolean isEmpty() {
+        return upsertedEntries.isEmpty() && deletedEntryIds.isEmpty() && upsertedLocations.isEmpty();
+    }
+
+    public int size() {
+        return upsertedEntries.size() + deletedEntryIds.size() + upsertedLocations.size();
+    }
+}
@@ -0,0 +1,192 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds double bookings: two classes in the same room, or two classes of the same course, whose
+ * times overlap on the same day. Rooms and courses are matched by name, ignoring case, like the
+ * database does.
+ * <p>
+ * {@link #conflictsWith} checks one new or edited entry against its neighbours and is what the
+ * storage backends call before committing a write. {@link #audit} sweeps a whole timetable: each
+ * room-day and course-day group is sorted by start and swept once, keeping only the classes still
+ * running, so it costs O(n log n + conflicts). {@link #auditCampus} loads every faculty and sweeps
+ * the groups in parallel.
+ */
+public final class ConflictDetector {
+
+    public enum Kind { ROOM, COURSE }
+
+    /**
+     * {@code first} starts no later than {@code second}; {@code from}/{@code to} is the overlap in
+     * minutes after midnight and {@code resource} is the room or course both classes share.
+     */
+    public record Conflict(Kind kind, String resource, DayOfWeek day, int from, int to,
+                           TimetableEntry first, TimetableEntry second) implements Serializable {
+
+        public String describe() {
+            String what = kind == Kind.ROOM ? "Room " + resource + " is double-booked" : "Course " + resource + " has two classes at once";
+            return what + " on " + day + " " + TimetableStore.formatMinutes(from) + "-" + TimetableStore.formatMinutes(Math.min(to, 24 * 60 - 1))
+                    + ": " + label(first) + " and " + label(second);
+        }
+
+        private static String label(TimetableEntry e) {
+            return e.getCourseName() + " (" + e.getType() + ", " + e.getStartTime() + ", " + e.getLocationId() + ")";
+        }
+    }
+
+    private ConflictDetector() {}
+
+    /**
+     * Conflicts {@code candidate} would have with {@code others}. An entry in {@code others} with the
+     * candidate's id is the candidate's own stored version and is skipped.
+     */
+    public static List<Conflict> conflictsWith(TimetableEntry candidate, Collection<? extends TimetableEntry> others) {
+        List<Conflict> conflicts = new ArrayList<>();
+        DayOfWeek day = candidate.getDayOfWeek();
+        int start = candidate.getStartMinutes();
+        if (day == null || start < 0) return conflicts;
+        int end = start + candidate.getDurationMinutes();
+        String room = key(candidate.getLocationId());
+        String course = key(candidate.getCourseName());
+
+        for (TimetableEntry other : others) {
+            if (candidate.getId() != 0 && other.getId() == candidate.getId()) continue;
+            if (other.getDayOfWeek() != day) continue;
+            int otherStart = other.getStartMinutes();
+            int otherEnd = otherStart + other.getDurationMinutes();
+            if (otherStart < 0 || otherStart >= end || otherEnd <= start) continue;
+
+            TimetableEntry first = otherStart <= start ? other : candidate;
+            TimetableEntry second = first == other ? candidate : other;
+            int from = Math.max(start, otherStart), to = Math.min(end, otherEnd);
+            if (key(other.getLocationId()).equals(room)) {
+                conflicts.add(new Conflict(Kind.ROOM, other.getLocationId(), day, from, to, first, second));
+            }
+            if (key(other.getCourseName()).equals(course)) {
+                conflicts.add(new Conflict(Kind.COURSE, other.getCourseName(), day, from, to, first, second));
+            }
+        }
+        return conflicts;
+    }
+
+    /** Every conflict in {@code entries}, room conflicts first, each group in start order. */
+    public static List<Conflict> audit(Collection<? extends TimetableEntry> entries) {
+        List<Conflict> conflicts = new ArrayList<>();
+        for (Group g : groups(entries)) conflicts.addAll(sweep(g));
+        return conflicts;
+    }
+
+    /** Like {@link #audit}, sweeping the groups on the common fork-join pool. */
+    public static List<Conflict> auditParallel(Collection<? extends TimetableEntry> entries) {
+        return groups(entries).parallelStream()
+                .map(ConflictDetector::sweep)
+                .flatMap(List::stream)
+                .toList();
+    }
+
+    /**
+     * Loads every faculty of {@code dataSource} in parallel and audits them together, so a room
+     * booked by two faculties at once is caught too.
+     */
+    public static List<Conflict> auditCampus(ScheduleStorage storage, String dataSource) throws IOException {
+        return auditParallel(campusEntries(storage, dataSource));
+    }
+
+    /** The entries of every faculty, loaded in parallel, each entry once. */
+    static List<TimetableEntry> campusEntries(ScheduleStorage storage, String dataSource) throws IOException {
+        List<String> faculties = storage.listFaculties(dataSource);
+        List<DataSnapshot> snapshots;
+        try {
+            snapshots = faculties.parallelStream().map(f -> {
+                try {
+                    return storage.loadByFaculty(f, dataSource);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Map<Integer, TimetableEntry> byId = new LinkedHashMap<>();
+        List<TimetableEntry> unsaved = new ArrayList<>();
+        for (DataSnapshot s : snapshots) {
+            for (TimetableEntry e : s.getEntries()) {
+                TimetableEntry stable = e instanceof TimetableStore.EntryView view ? view.detach() : e;
+                if (e.getId() == 0) unsaved.add(stable);
+                else byId.putIfAbsent(e.getId(), stable);
+            }
+        }
+        unsaved.addAll(byId.values());
+        return unsaved;
+    }
+
+    private record Group(Kind kind, String resource, DayOfWeek day, List<TimetableEntry> entries) {}
+
+    private static List<Group> groups(Collection<? extends TimetableEntry> entries) {
+        Map<List<Object>, Group> groups = new HashMap<>();
+        List<Group> ordered = new ArrayList<>();
+        for (Kind kind : Kind.values()) {
+            for (TimetableEntry e : entries) {
+                DayOfWeek day = e.getDayOfWeek();
+                if (day == null || e.getStartMinutes() < 0) continue;
+                String resource = kind == Kind.ROOM ? e.getLocationId() : e.getCourseName();
+                Group g = groups.get(List.of(kind, key(resource), day));
+                if (g == null) {
+                    g = new Group(kind, resource, day, new ArrayList<>());
+                    groups.put(List.of(kind, key(resource), day), g);
+                    ordered.add(g);
+                }
+                g.entries().add(e);
+            }
+        }
+        return ordered;
+    }
+
+    private static List<Conflict> sweep(Group g) {
+        List<TimetableEntry> byStart = new ArrayList<>(g.entries());
+        byStart.sort(Comparator.comparingInt(TimetableEntry::getStartMinutes));
+
+        List<Conflict> conflicts = new ArrayList<>();
+        List<TimetableEntry> running = new ArrayList<>();
+        for (TimetableEntry e : byStart) {
+            int start = e.getStartMinutes();
+            int end = start + e.getDurationMinutes();
+            running.removeIf(r -> r.getStartMinutes() + r.getDurationMinutes() <= start);
+            for (TimetableEntry r : running) {
+                int to = Math.min(end, r.getStartMinutes() + r.getDurationMinutes());
+                if (to > start) conflicts.add(new Conflict(g.kind(), g.resource(), g.day(), start, to, r, e));
+            }
+            running.add(e);
+        }
+        return conflicts;
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Usage: {@code ConflictDetector [jdbcUrl]} prints every conflict on the campus. */
+    public static void main(String[] args) throws IOException {
+        String dataSource = args.length > 0 ? args[0] : System.getenv().getOrDefault("JDBC_URL",
+                "jdbc:mysql://localhost:3306/university_schedule?user=root&password=root");
+        try (JdbcStorage storage = new JdbcStorage()) {
+            long start = System.nanoTime();
+            List<Conflict> conflicts = auditCampus(storage, dataSource);
+            conflicts.forEach(c -> System.out.println(c.describe()));
+            System.out.printf("%,d conflicts found in %,d ms%n", conflicts.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
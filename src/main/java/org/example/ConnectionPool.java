@@ -0,0 +1,266 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of physical connections to one JDBC url.
+ * Borrowers wait at most {@code maxWaitMillis} for a free slot, idle connections are
+ * closed after {@code idleTimeoutMillis}, and every connection keeps its own LRU cache
+ * of prepared statements so hot queries are only prepared once per connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    // Connections idle for less than this are handed out without a validation ping.
+    private static final long VALIDATION_INTERVAL_MILLIS = 5_000;
+
+    private final String url;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); // guarded by this, most recently used first
+    private final ScheduledExecutorService reaper;
+    private volatile boolean closed;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url) {
+        this(url, DEFAULT_MAX_SIZE, DEFAULT_MAX_WAIT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    public ConnectionPool(String url, int maxSize, long maxWaitMillis, long idleTimeoutMillis, int statementCacheSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be positive");
+        this.url = url;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, idleTimeoutMillis / 2);
+        reaper.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Borrows a connection; closing the returned handle gives it back to the pool. */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + maxWaitMillis + " ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pc;
+            while ((pc = pollIdle()) != null) {
+                if (isUsable(pc)) {
+                    pc.leased = true;
+                    return pc;
+                }
+                pc.destroy();
+            }
+            Connection raw = DriverManager.getConnection(url);
+            created.incrementAndGet();
+            PooledConnection fresh = new PooledConnection(raw);
+            fresh.leased = true;
+            return fresh;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private synchronized PooledConnection pollIdle() {
+        return idle.pollFirst();
+    }
+
+    private boolean isUsable(PooledConnection pc) {
+        try {
+            if (pc.raw.isClosed()) return false;
+            long idleFor = System.currentTimeMillis() - pc.lastReturned;
+            return idleFor < VALIDATION_INTERVAL_MILLIS || pc.raw.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void giveBack(PooledConnection pc) {
+        try {
+            if (closed || pc.raw.isClosed()) {
+                pc.destroy();
+                return;
+            }
+            if (!pc.raw.getAutoCommit()) {
+                pc.raw.rollback();
+                pc.raw.setAutoCommit(true);
+            }
+            pc.lastReturned = System.currentTimeMillis();
+            synchronized (this) {
+                idle.addFirst(pc);
+            }
+        } catch (SQLException e) {
+            pc.destroy();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Deque<PooledConnection> expired = new ArrayDeque<>();
+        synchronized (this) {
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pc = it.next();
+                if (pc.lastReturned >= cutoff) break; // the rest were returned more recently
+                it.remove();
+                expired.add(pc);
+            }
+        }
+        expired.forEach(PooledConnection::destroy);
+    }
+
+    private void recordWait(long nanos) {
+        acquisitions.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Stats stats() {
+        int idleCount;
+        synchronized (this) {
+            idleCount = idle.size();
+        }
+        long n = acquisitions.get();
+        return new Stats(
+                maxSize - permits.availablePermits(),
+                idleCount,
+                created.get(),
+                n,
+                timeouts.get(),
+                n == 0 ? 0 : totalWaitNanos.get() / 1e6 / n,
+                maxWaitNanos.get() / 1e6
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reaper.shutdownNow();
+        Deque<PooledConnection> toClose;
+        synchronized (this) {
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(PooledConnection::destroy);
+    }
+
+    /** Snapshot of pool usage; wait times are the time spent blocked in {@link #borrow()}. */
+    public record Stats(int active, int idle, long created, long acquisitions, long timeouts,
+                        double avgWaitMillis, double maxWaitMillis) {}
+
+    /**
+     * A borrowed connection. Statements obtained through {@link #prepare} belong to the
+     * connection's cache and must not be closed by the caller; their result sets should be.
+     */
+    public class PooledConnection implements AutoCloseable {
+        private final Connection raw;
+        private final Map<String, PreparedStatement> statements;
+        private volatile long lastReturned = System.currentTimeMillis();
+        private volatile boolean leased;
+
+        private PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= statementCacheSize) return false;
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        public Connection connection() {
+            return raw;
+        }
+
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return prepare(sql, Statement.NO_GENERATED_KEYS);
+        }
+
+        public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+            String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+            PreparedStatement ps = statements.get(key);
+            if (ps == null || ps.isClosed()) {
+                ps = raw.prepareStatement(sql, autoGeneratedKeys);
+                statements.put(key, ps);
+            } else {
+                ps.clearParameters();
+                ps.clearBatch();
+            }
+            return ps;
+        }
+
+        @Override
+        public void close() {
+            if (!leased) return;
+            leased = false;
+            giveBack(this);
+        }
+
+        private void destroy() {
+            statements.values().forEach(this::closeQuietly);
+            statements.clear();
+            try {
+                raw.close();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        private void closeQuietly(PreparedStatement ps) {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+}
@@ -1,30 +1,474 @@
 package org.example;
 
 import java.io.Serializable;
+import java.time.DayOfWeek;
 import java.util.*;
 
 public class DataSnapshot implements Serializable {
+    // What the class had before versions and indexes were added, so snapshots saved then still read back.
+    private static final long serialVersionUID = 5632193817941659112L;
+
     private final List<Student> students = new ArrayList<>();
     private final List<Location> locations = new ArrayList<>();
-    private final List<TimetableEntry> entries = new ArrayList<>();
+    private List<TimetableEntry> entries = new TimetableStore(); // an ArrayList when read back by Gson
+    private long version; // change version the snapshot was read at, see ScheduleStorage.loadChangesSince
+
+    // Lookup indexes, built on first use and kept up to date by the add/remove methods below.
+    private transient ShardedMap<String, Location> locationsById;
+    private transient ShardedMap<String, Location> locationsByName; // lower-cased name, first location wins
+    private transient LocationGrid locationGrid;
+    private transient EntryIndex entryIndex;
+    private transient Intervals intervals;
+    private transient boolean frozen;
+
+    public DataSnapshot() {}
+
+    // Shallow copy: the lists are new, the entries and locations in them are shared. The copy is never frozen.
+    public DataSnapshot(DataSnapshot other) {
+        students.addAll(other.students);
+        locations.addAll(other.locations);
+        entries = other.entries instanceof TimetableStore store ? new TimetableStore(store) : new TimetableStore(other.entries);
+        version = other.version;
+    }
 
     public List<Student> getStudents() {
-        return students;
+        return frozen ? Collections.unmodifiableList(students) : students;
     }
 
+    /** Read-only; use {@link #addLocation} and {@link #removeLocation} so the indexes stay current. */
     public List<Location> getLocations() {
-        return locations;
+        return Collections.unmodifiableList(locations);
     }
 
+    /** Read-only; use {@link #addEntry} and {@link #removeEntry} so the indexes stay current. */
     public List<TimetableEntry> getEntries() {
-        return entries;
+        return Collections.unmodifiableList(getTimetable());
+    }
+
+    /**
+     * The entries as a {@link TimetableStore}, converting them first if they were deserialized into
+     * a plain list. Bulk loaders may append to it directly; the entry indexes notice and rebuild.
+     */
+    public TimetableStore getTimetable() {
+        if (!(entries instanceof TimetableStore)) entries = new TimetableStore(entries);
+        return (TimetableStore) entries;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        checkNotFrozen();
+        this.version = version;
+    }
+
+    /**
+     * Makes the snapshot read-only and builds every index now, so any number of threads can read
+     * it without locking. Changes from then on throw {@link UnsupportedOperationException}; use the
+     * copy constructor for a snapshot that can be changed.
+     */
+    public void freeze() {
+        if (frozen) return;
+        TimetableStore store = getTimetable();
+        store.freeze();
+        entryIndex(store);
+        Intervals times = intervals();
+        times.byDay.freeze();
+        times.byLocation.freeze();
+        locationIndexes();
+        locationsById.freeze();
+        locationsByName.freeze();
+        locationGrid().freeze();
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public void addLocation(Location location) {
+        checkNotFrozen();
+        locations.add(location);
+        if (locationsById != null) indexLocation(location);
+        if (locationGrid != null) locationGrid.put(location);
+    }
+
+    public boolean removeLocation(String id) {
+        checkNotFrozen();
+        int i = indexOfLocation(id);
+        if (i < 0) return false;
+        Location old = locations.remove(i);
+        if (locationsById != null) unindexLocation(old);
+        if (locationGrid != null) locationGrid.remove(id);
+        return true;
+    }
+
+    public void addEntry(TimetableEntry entry) {
+        checkNotFrozen();
+        TimetableStore store = getTimetable();
+        EntryIndex index = currentEntryIndex(store);
+        Intervals times = currentIntervals(store);
+        store.add(entry);
+        if (index != null) index.append(store, store.size() - 1);
+        if (times != null) times.put(store, entry);
+    }
+
+    /** Replaces the stored entry that has the same id; returns false if there is none. */
+    public boolean updateEntry(TimetableEntry entry) {
+        checkNotFrozen();
+        TimetableStore store = getTimetable();
+        EntryIndex index = entryIndex(store);
+        Intervals times = currentIntervals(store);
+        Integer row = index.rowById.get(entry.getId());
+        if (row == null) return false;
+        index.unlist(store, row);
+        store.set(row, entry);
+        index.list(store, row);
+        if (times != null) times.put(store, entry);
+        return true;
+    }
+
+    /** Removes the entry with the given id; the last entry takes its place in {@link #getEntries()}. */
+    public boolean removeEntry(int entryId) {
+        checkNotFrozen();
+        TimetableStore store = getTimetable();
+        EntryIndex index = entryIndex(store);
+        Intervals times = currentIntervals(store);
+        Integer row = index.rowById.get(entryId);
+        if (row == null) return false;
+        index.unlist(store, row);
+        index.rowById.remove(entryId);
+        int last = store.size() - 1;
+        if (row != last) index.renumber(store, last, row);
+        store.swapRemove(row);
+        index.seenWrites = store.writeCount();
+        if (times != null) times.remove(store, entryId);
+        return true;
+    }
+
+    /** Brings this snapshot from {@code changes.fromVersion()} up to {@code changes.toVersion()}. */
+    public void apply(ChangeSet changes) {
+        checkNotFrozen();
+        for (int id : changes.deletedEntryIds()) removeEntry(id);
+        for (TimetableEntry e : changes.upsertedEntries()) {
+            if (!updateEntry(e)) addEntry(e);
+        }
+        for (Location l : changes.upsertedLocations()) putLocation(l);
+        version = changes.toVersion();
     }
 
     public Optional<Location> findLocationById(String id) {
-        return locations.stream().filter(l -> l.getId().equals(id)).findFirst();
+        locationIndexes();
+        return Optional.ofNullable(locationsById.get(id));
     }
 
     public Optional<Location> findLocationByName(String name) {
-        return locations.stream().filter(l -> l.getName().equalsIgnoreCase(name)).findFirst();
+        locationIndexes();
+        return Optional.ofNullable(name == null ? null : locationsByName.get(name.toLowerCase(Locale.ROOT)));
+    }
+
+    /** Up to {@code k} locations closest to {@code (x, y)}, closest first. */
+    public List<Location> nearestLocations(int x, int y, int k) {
+        return locationGrid().nearest(x, y, k);
+    }
+
+    /** Entries point at their location by id or by name depending on the backend; this accepts either. */
+    public Optional<Location> findLocation(String idOrName) {
+        Optional<Location> byId = findLocationById(idOrName);
+        return byId.isPresent() ? byId : findLocationByName(idOrName);
+    }
+
+    public List<TimetableEntry> entriesOn(DayOfWeek day) {
+        TimetableStore store = getTimetable();
+        EntryIndex index = entryIndex(store);
+        return index.rows(store, index.byDay, day.ordinal());
+    }
+
+    public List<TimetableEntry> entriesOfCourse(String courseName) {
+        TimetableStore store = getTimetable();
+        EntryIndex index = entryIndex(store);
+        return index.rows(store, index.byCourse, store.courseIdOf(courseName));
+    }
+
+    /** Entries held at the location, whether they refer to it by id or by name. */
+    public List<TimetableEntry> entriesAt(Location location) {
+        TimetableStore store = getTimetable();
+        EntryIndex index = entryIndex(store);
+        List<TimetableEntry> byId = index.rows(store, index.byLocation, store.locationRefOf(location.getId()));
+        if (location.getName().equals(location.getId())) return byId;
+        List<TimetableEntry> byName = index.rows(store, index.byLocation, store.locationRefOf(location.getName()));
+        if (byId.isEmpty()) return byName;
+        if (byName.isEmpty()) return byId;
+        List<TimetableEntry> both = new ArrayList<>(byId);
+        both.addAll(byName);
+        return both;
+    }
+
+    /** Entries running at {@code minute} on {@code day}. */
+    public List<TimetableEntry> entriesOccupying(DayOfWeek day, int minute) {
+        return intervals().byDay.occupying(day, minute);
+    }
+
+    /** Entries on {@code day} sharing at least one minute with {@code [from, to)}, in start order. */
+    public List<TimetableEntry> entriesOverlapping(DayOfWeek day, int from, int to) {
+        return intervals().byDay.overlapping(day, from, to);
+    }
+
+    /** Like {@link #entriesOverlapping}, limited to entries held at the location, whether by id or by name. */
+    public List<TimetableEntry> entriesOverlappingAt(Location location, DayOfWeek day, int from, int to) {
+        return LocationDay.overlapping(intervals().byLocation, location, day, from, to);
+    }
+
+    /** The first entry on {@code day} starting at or after {@code minute}, or null. */
+    public TimetableEntry nextEntryStarting(DayOfWeek day, int minute) {
+        return intervals().byDay.nextStarting(day, minute);
+    }
+
+    // Copies for ScheduleSnapshot.of; they share their contents with this snapshot's until either side changes.
+
+    IntervalIndex<DayOfWeek> copyOfDayIndex() {
+        return intervals().byDay.copy();
+    }
+
+    IntervalIndex<LocationDay> copyOfLocationIndex() {
+        return intervals().byLocation.copy();
+    }
+
+    ShardedMap<String, Location> copyOfLocationsById() {
+        locationIndexes();
+        return locationsById.copy();
+    }
+
+    ShardedMap<String, Location> copyOfLocationsByName() {
+        locationIndexes();
+        return locationsByName.copy();
+    }
+
+    LocationGrid copyOfLocationGrid() {
+        return locationGrid().copy();
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) throw new UnsupportedOperationException("The snapshot is frozen; copy it to change it");
+    }
+
+    private LocationGrid locationGrid() {
+        if (locationGrid == null) locationGrid = LocationGrid.of(locations);
+        return locationGrid;
+    }
+
+    private void locationIndexes() {
+        if (locationsById != null) return;
+        locationsById = new ShardedMap<>();
+        locationsByName = new ShardedMap<>();
+        for (Location l : locations) indexLocation(l);
+    }
+
+    private void indexLocation(Location l) {
+        locationsById.putIfAbsent(l.getId(), l);
+        locationsByName.putIfAbsent(l.getName().toLowerCase(Locale.ROOT), l);
+    }
+
+    // Replaces the location with the same id where it stands, or adds it.
+    private void putLocation(Location l) {
+        int i = indexOfLocation(l.getId());
+        if (i < 0) {
+            addLocation(l);
+            return;
+        }
+        Location old = locations.set(i, l);
+        if (locationsById != null) {
+            unindexLocation(old);
+            indexLocation(l);
+        }
+        if (locationGrid != null) locationGrid.put(l);
+    }
+
+    // Drops the lookups that pointed at a location no longer listed; another with the same id or name takes over.
+    private void unindexLocation(Location old) {
+        String name = old.getName().toLowerCase(Locale.ROOT);
+        boolean byId = locationsById.remove(old.getId(), old);
+        boolean byName = locationsByName.remove(name, old);
+        if (!byId && !byName) return;
+        for (Location l : locations) {
+            if (byId && l.getId().equals(old.getId())) locationsById.putIfAbsent(l.getId(), l);
+            if (byName && l.getName().toLowerCase(Locale.ROOT).equals(name)) locationsByName.putIfAbsent(name, l);
+        }
+    }
+
+    private int indexOfLocation(String id) {
+        for (int i = 0; i < locations.size(); i++) {
+            if (locations.get(i).getId().equals(id)) return i;
+        }
+        return -1;
+    }
+
+    private EntryIndex entryIndex(TimetableStore store) {
+        EntryIndex index = currentEntryIndex(store);
+        if (index == null) {
+            index = new EntryIndex();
+            index.store = store;
+            index.seenWrites = store.writeCount();
+            for (int row = 0; row < store.size(); row++) index.append(store, row);
+            entryIndex = index;
+        }
+        return index;
+    }
+
+    // Null if the store was written to behind the index's back, e.g. rows appended by a bulk loader.
+    private EntryIndex currentEntryIndex(TimetableStore store) {
+        EntryIndex index = entryIndex;
+        return index != null && index.store == store && index.seenWrites == store.writeCount() ? index : null;
+    }
+
+    private Intervals intervals() {
+        TimetableStore store = getTimetable();
+        Intervals times = currentIntervals(store);
+        if (times == null) {
+            times = new Intervals();
+            for (TimetableEntry e : store) times.put(store, e);
+            times.seenWrites = store.writeCount();
+            times.store = store;
+            intervals = times;
+        }
+        return times;
+    }
+
+    private Intervals currentIntervals(TimetableStore store) {
+        Intervals times = intervals;
+        return times != null && times.store == store && times.seenWrites == store.writeCount() ? times : null;
+    }
+
+    /** The key of the per-location interval index: the location id or name an entry gives, lower-cased, and its day. */
+    record LocationDay(String location, DayOfWeek day) {
+
+        static LocationDay of(TimetableEntry e) {
+            return e.getDayOfWeek() == null ? null : new LocationDay(e.getLocationId().toLowerCase(Locale.ROOT), e.getDayOfWeek());
+        }
+
+        // Entries name their location by id or by name depending on the backend, so both are looked up.
+        static List<TimetableEntry> overlapping(IntervalIndex<LocationDay> index, Location location, DayOfWeek day, int from, int to) {
+            String id = location.getId().toLowerCase(Locale.ROOT), name = location.getName().toLowerCase(Locale.ROOT);
+            List<TimetableEntry> byId = index.overlapping(new LocationDay(id, day), from, to);
+            if (id.equals(name)) return byId;
+            List<TimetableEntry> byName = index.overlapping(new LocationDay(name, day), from, to);
+            if (byId.isEmpty()) return byName;
+            if (byName.isEmpty()) return byId;
+            List<TimetableEntry> both = new ArrayList<>(byId);
+            both.addAll(byName);
+            both.sort(Comparator.comparingInt(TimetableEntry::getStartMinutes));
+            return both;
+        }
+    }
+
+    /** Entries by start time per day and per day at each location, kept as detached copies that ScheduleSnapshot can share. */
+    private static final class Intervals {
+        final IntervalIndex<DayOfWeek> byDay = new IntervalIndex<>(TimetableEntry::getDayOfWeek);
+        final IntervalIndex<LocationDay> byLocation = new IntervalIndex<>(LocationDay::of);
+        TimetableStore store;
+        long seenWrites;
+
+        void put(TimetableStore s, TimetableEntry e) {
+            TimetableEntry stable = e instanceof TimetableStore.EntryView view ? view.detach() : e;
+            byDay.put(stable);
+            byLocation.put(stable);
+            seenWrites = s.writeCount();
+        }
+
+        void remove(TimetableStore s, int entryId) {
+            byDay.remove(entryId);
+            byLocation.remove(entryId);
+            seenWrites = s.writeCount();
+        }
+    }
+
+    /**
+     * Row numbers of the store grouped by day, course id and location ref, and the row of each id.
+     * Every row remembers its place in its groups, so it can be taken out or renumbered in O(1).
+     */
+    private static final class EntryIndex {
+        TimetableStore store;
+        long seenWrites;
+        final Map<Integer, Integer> rowById = new HashMap<>();
+        final Groups byDay = new Groups();
+        final Groups byCourse = new Groups();
+        final Groups byLocation = new Groups();
+
+        void append(TimetableStore s, int row) {
+            store = s;
+            rowById.put(s.id(row), row);
+            list(s, row);
+        }
+
+        void list(TimetableStore s, int row) {
+            byDay.add(s.day(row).ordinal(), row);
+            byCourse.add(s.courseId(row), row);
+            byLocation.add(s.locationRef(row), row);
+            seenWrites = s.writeCount();
+        }
+
+        void unlist(TimetableStore s, int row) {
+            byDay.remove(s.day(row).ordinal(), row);
+            byCourse.remove(s.courseId(row), row);
+            byLocation.remove(s.locationRef(row), row);
+        }
+
+        // The store is about to move row {@code from} into row {@code to}.
+        void renumber(TimetableStore s, int from, int to) {
+            byDay.renumber(s.day(from).ordinal(), from, to);
+            byCourse.renumber(s.courseId(from), from, to);
+            byLocation.renumber(s.locationRef(from), from, to);
+            rowById.replace(s.id(from), from, to);
+        }
+
+        // A view over the group as it is now; take a copy to keep it across changes.
+        List<TimetableEntry> rows(TimetableStore s, Groups groups, int key) {
+            int[] list = groups.list(key);
+            if (list == null) return List.of();
+            int size = list[0];
+            return new AbstractList<>() {
+                @Override public TimetableEntry get(int i) {
+                    if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+                    return s.get(list[i + 1]);
+                }
+                @Override public int size() { return size; }
+            };
+        }
+    }
+
+    /** Row lists by key; each list is an int[] whose first slot holds its length. */
+    private static final class Groups {
+        private int[][] lists = new int[16][];
+        private int[] slots = new int[16]; // by row: where in its list the row sits
+
+        int[] list(int key) {
+            return key < 0 || key >= lists.length ? null : lists[key];
+        }
+
+        void add(int key, int row) {
+            if (key >= lists.length) lists = Arrays.copyOf(lists, Math.max(key + 1, lists.length * 2));
+            if (row >= slots.length) slots = Arrays.copyOf(slots, Math.max(row + 1, slots.length * 2));
+            int[] list = lists[key];
+            if (list == null) list = lists[key] = new int[4];
+            else if (list[0] + 1 == list.length) list = lists[key] = Arrays.copyOf(list, list.length * 2);
+            list[++list[0]] = row;
+            slots[row] = list[0];
+        }
+
+        // Swap-remove: the list's last row fills the gap.
+        void remove(int key, int row) {
+            int[] list = lists[key];
+            int slot = slots[row];
+            int moved = list[list[0]--];
+            list[slot] = moved;
+            slots[moved] = slot;
+        }
+
+        void renumber(int key, int from, int to) {
+            int slot = slots[from];
+            lists[key][slot] = to;
+            slots[to] = slot;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,173 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embedded backend that keeps the schedule in a local directory instead of MySQL, for running the
+ * app offline or on a single machine. The data source is the directory path; it is created on
+ * first use. Everything is held in memory and every write is appended to a checksummed log before
+ * the call returns, so a crash loses at most the write in progress. See {@link FileStore} for the
+ * file layout.
+ */
+public class FileStorage implements ScheduleStorage {
+
+    public static final String IMPORTED_FACULTY = "General";
+
+    private final boolean syncOnWrite;
+    private final Map<Path, FileStore> stores = new ConcurrentHashMap<>();
+
+    public FileStorage() {
+        this(true);
+    }
+
+    /** With {@code syncOnWrite} off, writes reach the OS but not necessarily the disk, which is much faster for bulk imports. */
+    public FileStorage(boolean syncOnWrite) {
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    private FileStore store(String dataSource) throws IOException {
+        Path dir = Path.of(dataSource).toAbsolutePath().normalize();
+        FileStore store = stores.get(dir);
+        if (store != null) return store;
+        synchronized (stores) {
+            store = stores.get(dir);
+            if (store == null) {
+                store = new FileStore(dir, syncOnWrite);
+                stores.put(dir, store);
+            }
+            return store;
+        }
+    }
+
+    /** Every faculty's entries; the JDBC backend has no equivalent of a whole-campus load. */
+    @Override
+    public DataSnapshot load(String dataSource) throws IOException {
+        return store(dataSource).snapshot(null);
+    }
+
+    /**
+     * Stores the snapshot's locations and entries and compacts the log. Entries with an unknown id
+     * are added; snapshots don't say which faculty a course belongs to, so new courses go under
+     * {@value #IMPORTED_FACULTY}.
+     */
+    @Override
+    public void save(DataSnapshot data, String dataSource) throws IOException {
+        store(dataSource).merge(data, IMPORTED_FACULTY);
+    }
+
+    @Override
+    public DataSnapshot loadByFaculty(String facultyName, String dataSource) throws IOException {
+        return store(dataSource).snapshot(facultyName);
+    }
+
+    @Override
+    public ChangeSet loadChangesSince(String facultyName, long version, String dataSource) throws IOException {
+        return store(dataSource).changesSince(facultyName, version);
+    }
+
+    @Override
+    public DataSnapshot loadForStudent(String studentName, String dataSource) throws IOException {
+        return store(dataSource).studentSnapshot(studentName);
+    }
+
+    @Override
+    public void enroll(String studentName, String courseName, String dataSource) throws IOException {
+        store(dataSource).enroll(studentName, courseName);
+    }
+
+    @Override
+    public void unenroll(String studentName, String courseName, String dataSource) throws IOException {
+        store(dataSource).unenroll(studentName, courseName);
+    }
+
+    // Walkways are only mapped in the database so far; routes fall back to the x/y axes.
+    @Override
+    public CampusGraph loadCampusGraph(String dataSource) {
+        return CampusGraph.empty();
+    }
+
+    @Override
+    public List<String> listFaculties(String dataSource) throws IOException {
+        return store(dataSource).faculties();
+    }
+
+    @Override
+    public boolean accountExists(String name, String faculty, String dataSource) throws IOException {
+        if (faculty == null) return false;
+        return store(dataSource).studentExists(name, faculty);
+    }
+
+    @Override
+    public boolean createAdmin(String name, String password, String faculty, String dataSource) throws IOException {
+        return store(dataSource).addAdmin(name, password, faculty);
+    }
+
+    @Override
+    public boolean authenticateAdmin(String name, String password, String faculty, String dataSource) throws IOException {
+        return store(dataSource).adminMatches(name, password, faculty);
+    }
+
+    @Override
+    public void createStudentIfNotExists(String name, String faculty, String dataSource) throws IOException {
+        store(dataSource).addStudentIfAbsent(name, faculty);
+    }
+
+    @Override
+    public void addTimetableEntry(String courseName, String type, String day, String startTime, int duration,
+                                  String locationName, int x, int y, String faculty, String dataSource) throws IOException {
+        NewTimetableEntry row = new NewTimetableEntry(courseName, type, day, startTime, duration, locationName, x, y, faculty);
+        String problem = row.validationError();
+        if (problem != null) throw new IOException(problem);
+        store(dataSource).addEntry(row);
+    }
+
+    @Override
+    public BatchResult addTimetableEntries(List<NewTimetableEntry> rows, String dataSource) throws IOException {
+        return store(dataSource).addEntries(rows);
+    }
+
+    @Override
+    public void updateTimetableEntry(int entryId, int expectedVersion,
+                                     String newCourseName, String newType,
+                                     String locationName, int x, int y,
+                                     String faculty, String dataSource) throws IOException {
+        store(dataSource).updateEntry(entryId, expectedVersion, newCourseName, newType, locationName, x, y, faculty);
+    }
+
+    @Override
+    public void deleteTimetableEntry(int entryId, int expectedVersion, String dataSource) throws IOException {
+        store(dataSource).deleteEntry(entryId, expectedVersion);
+    }
+
+    @Override
+    public void renameCourse(String oldName, String newName, String dataSource) throws IOException {
+        store(dataSource).renameCourse(oldName, newName);
+    }
+
+    @Override
+    public void deleteCourse(String courseName, String dataSource) throws IOException {
+        store(dataSource).deleteCourse(courseName);
+    }
+
+    /** Folds the log of {@code dataSource} into a fresh snapshot now instead of waiting for it to grow. */
+    public void compact(String dataSource) throws IOException {
+        store(dataSource).compact();
+    }
+
+    @Override
+    public void close() {
+        synchronized (stores) {
+            for (FileStore store : stores.values()) {
+                try {
+                    store.close();
+                } catch (IOException ignored) {
+                }
+            }
+            stores.clear();
+        }
+    }
+}
@@ -0,0 +1,825 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The state and files behind one {@link FileStorage} directory.
+ * <p>
+ * Every mutation is encoded as a frame of records and appended to {@code log-<gen>.bin}; a frame is
+ * applied completely or, if its checksum doesn't match after a crash, not at all. When the log
+ * outgrows the snapshot it is compacted: the whole state is written to {@code snapshot-<gen+1>.bin}
+ * and a fresh log for the new generation is started. Snapshots are read through a memory-mapped
+ * buffer. Files are never rewritten in place, only created and deleted, so a mapping that is still
+ * alive can't block compaction on Windows.
+ * <p>
+ * Compaction drops the tombstones of deletes made before the store was opened: no snapshot handed
+ * out since is older than that, so none of them can be asked about. A snapshot that fails its
+ * checksum is an error rather than a reason to fall back, since the logs before it are gone.
+ */
+class FileStore implements AutoCloseable {
+
+    private static final int SNAPSHOT_MAGIC = 0x53434853; // "SCHS"
+    private static final int LOG_MAGIC = 0x5343484C;      // "SCHL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_BYTES = 32;
+    private static final int LOG_HEADER_BYTES = 16;
+    private static final long MIN_COMPACT_BYTES = 1 << 20;
+
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+    private static final Pattern LOG_FILE = Pattern.compile("log-(\\d+)\\.bin");
+
+    // Record types. A snapshot is one frame of PUT and TOMBSTONE records.
+    private static final byte COURSE_PUT = 1;
+    private static final byte COURSE_DELETE = 2;
+    private static final byte LOCATION_PUT = 3;
+    private static final byte ENTRY_PUT = 4;
+    private static final byte ENTRY_DELETE = 5;
+    private static final byte STUDENT_PUT = 6;
+    private static final byte ADMIN_PUT = 7;
+    private static final byte TOMBSTONE = 8;
+    private static final byte ENROLL = 9;
+    private static final byte UNENROLL = 10;
+
+    record Course(int id, String name, String faculty) {}
+    record Loc(int id, String name, String code, int x, int y, long changeSeq) {}
+    record Entry(int id, int version, int courseId, ClassType type, String day, String startTime,
+                 int duration, int locationId, long changeSeq) {}
+    record Tombstone(long seq, int entryId, String faculty) {}
+    record Admin(String name, String password, String faculty) {}
+
+    private final Path dir;
+    private final boolean syncOnWrite;
+
+    private final Map<Integer, Course> courses = new HashMap<>();
+    private final Map<String, Course> courseByName = new HashMap<>();
+    private final Map<Integer, Loc> locations = new LinkedHashMap<>();
+    private final Map<String, Loc> locationByName = new HashMap<>();
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, String> studentFaculty = new LinkedHashMap<>();
+    private final Map<String, Admin> admins = new HashMap<>();
+    private final List<Tombstone> tombstones = new ArrayList<>();
+    // Derived on every write so a student's timetable is read without looking at other courses.
+    private final Map<String, Set<Integer>> enrollments = new HashMap<>(); // student key -> course ids
+    private final Map<Integer, Set<Integer>> entriesByCourse = new HashMap<>();
+    private int nextCourseId = 1;
+    private int nextLocationId = 1;
+    private int nextEntryId = 1;
+    private long changeSeq;
+    private long openedAt; // changeSeq when the files were read; older tombstones may be pruned
+
+    private long generation;
+    private long snapshotBytes;
+    private FileChannel log;
+
+    FileStore(Path dir, boolean syncOnWrite) throws IOException {
+        this.dir = dir;
+        this.syncOnWrite = syncOnWrite;
+        Files.createDirectories(dir);
+        open();
+    }
+
+    // ---- loading -------------------------------------------------------------------------
+
+    private void open() throws IOException {
+        clearState();
+        generation = 0;
+        List<Long> snapshots = generations(SNAPSHOT_FILE);
+        if (!snapshots.isEmpty()) {
+            generation = snapshots.get(snapshots.size() - 1);
+            readSnapshot(snapshotFile(generation));
+        }
+
+        Path logPath = logFile(generation);
+        if (Files.exists(logPath)) {
+            replayLog(logPath);
+            log = FileChannel.open(logPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } else {
+            log = createLog(logPath, generation);
+        }
+        openedAt = changeSeq;
+        deleteOtherGenerations();
+    }
+
+    private List<Long> generations(Pattern pattern) throws IOException {
+        List<Long> gens = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(f -> {
+                Matcher m = pattern.matcher(f.getFileName().toString());
+                if (m.matches()) gens.add(Long.parseLong(m.group(1)));
+            });
+        }
+        gens.sort(null);
+        return gens;
+    }
+
+    // Snapshots are renamed into place only once they are complete, so a bad one is real damage.
+    private void readSnapshot(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < SNAPSHOT_HEADER_BYTES) throw new IOException("Snapshot " + file + " is truncated");
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != SNAPSHOT_MAGIC || buf.getInt() != FORMAT_VERSION) {
+                throw new IOException("Snapshot " + file + " is not in a known format");
+            }
+            buf.getLong(); // generation, also encoded in the file name
+            long seq = buf.getLong();
+            int length = buf.getInt();
+            int crc = buf.getInt();
+            if (length != buf.remaining()) throw new IOException("Snapshot " + file + " is truncated");
+            ByteBuffer payload = buf.slice();
+            if (crc(payload.duplicate()) != crc) throw new IOException("Snapshot " + file + " is corrupt");
+            while (payload.hasRemaining()) applyRecord(payload);
+            changeSeq = Math.max(changeSeq, seq);
+            snapshotBytes = size;
+        }
+    }
+
+    // Applies every intact frame, reading one frame at a time; a torn or corrupt tail from a crash mid-append is cut off.
+    private void replayLog(Path file) throws IOException {
+        long goodUpTo = LOG_HEADER_BYTES;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            if (!readFully(ch, header, 0) || header.getInt() != LOG_MAGIC || header.getInt() != FORMAT_VERSION) {
+                goodUpTo = 0;
+            } else {
+                ByteBuffer frameHeader = ByteBuffer.allocate(8);
+                while (readFully(ch, frameHeader.clear(), goodUpTo)) {
+                    int length = frameHeader.getInt();
+                    int crc = frameHeader.getInt();
+                    if (length < 0 || length > size - goodUpTo - 8) break;
+                    ByteBuffer frame = ByteBuffer.allocate(length);
+                    readFully(ch, frame, goodUpTo + 8);
+                    if (crc(frame.duplicate()) != crc) break;
+                    while (frame.hasRemaining()) applyRecord(frame);
+                    goodUpTo += 8 + length;
+                }
+            }
+            if (goodUpTo < size) ch.truncate(goodUpTo);
+        }
+        if (goodUpTo == 0) {
+            Files.delete(file);
+            createLog(file, generation).close();
+        }
+    }
+
+    // Fills buf from position on and flips it; false if the file ends first.
+    private static boolean readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position);
+            if (n < 0) return false;
+            position += n;
+        }
+        buf.flip();
+        return true;
+    }
+
+    private void clearState() {
+        courses.clear();
+        courseByName.clear();
+        locations.clear();
+        locationByName.clear();
+        entries.clear();
+        studentFaculty.clear();
+        admins.clear();
+        tombstones.clear();
+        enrollments.clear();
+        entriesByCourse.clear();
+        nextCourseId = nextLocationId = nextEntryId = 1;
+        changeSeq = 0;
+        snapshotBytes = 0;
+    }
+
+    // ---- record encoding -----------------------------------------------------------------
+
+    private void applyRecord(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case COURSE_PUT -> putCourse(new Course(in.getInt(), readString(in), readString(in)));
+            case COURSE_DELETE -> removeCourse(in.getInt());
+            case LOCATION_PUT -> putLocation(new Loc(in.getInt(), readString(in), readString(in), in.getInt(), in.getInt(), in.getLong()));
+            case ENTRY_PUT -> putEntry(new Entry(in.getInt(), in.getInt(), in.getInt(), ClassType.values()[in.get()],
+                    readString(in), readString(in), in.getInt(), in.getInt(), in.getLong()));
+            case ENTRY_DELETE, TOMBSTONE -> {
+                Tombstone t = new Tombstone(in.getLong(), in.getInt(), readString(in));
+                if (type == ENTRY_DELETE) removeEntry(t.entryId());
+                tombstones.add(t);
+                nextEntryId = Math.max(nextEntryId, t.entryId() + 1); // ids are never reused
+                changeSeq = Math.max(changeSeq, t.seq());
+            }
+            case STUDENT_PUT -> {
+                String name = readString(in);
+                studentFaculty.put(key(name), readString(in));
+            }
+            case ADMIN_PUT -> {
+                Admin a = new Admin(readString(in), readString(in), readString(in));
+                admins.put(key(a.name()), a);
+            }
+            case ENROLL, UNENROLL -> setEnrolled(readString(in), in.getInt(), type == ENROLL);
+            default -> throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    private void putCourse(Course c) {
+        Course old = courses.put(c.id(), c);
+        if (old != null) courseByName.remove(key(old.name()));
+        courseByName.put(key(c.name()), c);
+        nextCourseId = Math.max(nextCourseId, c.id() + 1);
+    }
+
+    private void putLocation(Loc l) {
+        Loc old = locations.put(l.id(), l);
+        if (old != null) locationByName.remove(key(old.name()));
+        locationByName.put(key(l.name()), l);
+        nextLocationId = Math.max(nextLocationId, l.id() + 1);
+        changeSeq = Math.max(changeSeq, l.changeSeq());
+    }
+
+    private void putEntry(Entry e) {
+        Entry old = entries.put(e.id(), e);
+        if (old != null && old.courseId() != e.courseId()) entriesByCourse.get(old.courseId()).remove(e.id());
+        entriesByCourse.computeIfAbsent(e.courseId(), c -> new LinkedHashSet<>()).add(e.id());
+        nextEntryId = Math.max(nextEntryId, e.id() + 1);
+        changeSeq = Math.max(changeSeq, e.changeSeq());
+    }
+
+    private void removeEntry(int id) {
+        Entry e = entries.remove(id);
+        if (e != null) entriesByCourse.get(e.courseId()).remove(id);
+    }
+
+    private void removeCourse(int id) {
+        Course c = courses.remove(id);
+        if (c != null) courseByName.remove(key(c.name()));
+        entriesByCourse.remove(id);
+        for (Set<Integer> enrolled : enrollments.values()) enrolled.remove(id);
+    }
+
+    private void setEnrolled(String studentKey, int courseId, boolean enrolled) {
+        if (enrolled) enrollments.computeIfAbsent(studentKey, s -> new LinkedHashSet<>()).add(courseId);
+        else if (enrollments.containsKey(studentKey)) enrollments.get(studentKey).remove(courseId);
+    }
+
+    /**
+     * Records of one mutation; each is applied to memory as it is added and written out by {@link #commit}.
+     * Check everything that can fail before adding the first record, or memory and disk disagree.
+     */
+    private final class Tx {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        final long seq = changeSeq + 1;
+
+        void course(Course c) {
+            write(() -> {
+                out.writeByte(COURSE_PUT);
+                out.writeInt(c.id());
+                writeString(out, c.name());
+                writeString(out, c.faculty());
+            });
+            putCourse(c);
+        }
+
+        void deleteCourse(Course c) {
+            write(() -> {
+                out.writeByte(COURSE_DELETE);
+                out.writeInt(c.id());
+            });
+            removeCourse(c.id());
+        }
+
+        void location(Loc l) {
+            write(() -> writeLocation(out, LOCATION_PUT, l));
+            putLocation(l);
+        }
+
+        void entry(Entry e) {
+            write(() -> writeEntry(out, e));
+            putEntry(e);
+        }
+
+        void deleteEntry(Entry e) {
+            Tombstone t = new Tombstone(seq, e.id(), courses.get(e.courseId()).faculty());
+            write(() -> writeTombstone(out, ENTRY_DELETE, t));
+            removeEntry(e.id());
+            tombstones.add(t);
+            changeSeq = Math.max(changeSeq, seq);
+        }
+
+        void tombstone(Entry e) {
+            Tombstone t = new Tombstone(seq, e.id(), courses.get(e.courseId()).faculty());
+            write(() -> writeTombstone(out, TOMBSTONE, t));
+            tombstones.add(t);
+        }
+
+        void student(String name, String faculty) {
+            write(() -> {
+                out.writeByte(STUDENT_PUT);
+                writeString(out, name);
+                writeString(out, faculty);
+            });
+            studentFaculty.put(key(name), faculty);
+        }
+
+        void admin(Admin a) {
+            write(() -> {
+                out.writeByte(ADMIN_PUT);
+                writeString(out, a.name());
+                writeString(out, a.password());
+                writeString(out, a.faculty());
+            });
+            admins.put(key(a.name()), a);
+        }
+
+        void enrollment(String studentKey, int courseId, boolean enrolled) {
+            write(() -> writeEnrollment(out, enrolled ? ENROLL : UNENROLL, studentKey, courseId));
+            setEnrolled(studentKey, courseId, enrolled);
+        }
+
+        private void write(IoAction action) {
+            try {
+                action.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // ByteArrayOutputStream never actually throws
+            }
+        }
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private void commit(Tx tx) throws IOException {
+        byte[] payload = tx.bytes.toByteArray();
+        if (payload.length == 0) return;
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt(crc(ByteBuffer.wrap(payload))).put(payload).flip();
+        try {
+            while (frame.hasRemaining()) log.write(frame);
+            if (syncOnWrite) log.force(false);
+        } catch (IOException e) {
+            // Memory already holds the change but the disk may not; go back to what the disk says.
+            log.close();
+            open();
+            throw e;
+        }
+        if (log.size() > Math.max(MIN_COMPACT_BYTES, snapshotBytes)) compact();
+    }
+
+    private static void writeLocation(DataOutputStream out, byte type, Loc l) throws IOException {
+        out.writeByte(type);
+        out.writeInt(l.id());
+        writeString(out, l.name());
+        writeString(out, l.code());
+        out.writeInt(l.x());
+        out.writeInt(l.y());
+        out.writeLong(l.changeSeq());
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry e) throws IOException {
+        out.writeByte(ENTRY_PUT);
+        out.writeInt(e.id());
+        out.writeInt(e.version());
+        out.writeInt(e.courseId());
+        out.writeByte(e.type().ordinal());
+        writeString(out, e.day());
+        writeString(out, e.startTime());
+        out.writeInt(e.duration());
+        out.writeInt(e.locationId());
+        out.writeLong(e.changeSeq());
+    }
+
+    private static void writeTombstone(DataOutputStream out, byte type, Tombstone t) throws IOException {
+        out.writeByte(type);
+        out.writeLong(t.seq());
+        out.writeInt(t.entryId());
+        writeString(out, t.faculty());
+    }
+
+    private static void writeEnrollment(DataOutputStream out, byte type, String studentKey, int courseId) throws IOException {
+        out.writeByte(type);
+        writeString(out, studentKey);
+        out.writeInt(courseId);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    // ---- compaction ----------------------------------------------------------------------
+
+    /** Writes the whole state to a new snapshot generation and starts an empty log for it. */
+    synchronized void compact() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Course c : courses.values()) {
+            out.writeByte(COURSE_PUT);
+            out.writeInt(c.id());
+            writeString(out, c.name());
+            writeString(out, c.faculty());
+        }
+        for (Loc l : locations.values()) writeLocation(out, LOCATION_PUT, l);
+        for (Entry e : entries.values()) writeEntry(out, e);
+        tombstones.removeIf(t -> t.seq() <= openedAt);
+        for (Tombstone t : tombstones) writeTombstone(out, TOMBSTONE, t);
+        for (Map.Entry<String, String> s : studentFaculty.entrySet()) {
+            out.writeByte(STUDENT_PUT);
+            writeString(out, s.getKey());
+            writeString(out, s.getValue());
+        }
+        for (Admin a : admins.values()) {
+            out.writeByte(ADMIN_PUT);
+            writeString(out, a.name());
+            writeString(out, a.password());
+            writeString(out, a.faculty());
+        }
+        for (Map.Entry<String, Set<Integer>> s : enrollments.entrySet()) {
+            for (int courseId : s.getValue()) writeEnrollment(out, ENROLL, s.getKey(), courseId);
+        }
+        byte[] payload = bytes.toByteArray();
+
+        long next = generation + 1;
+        Path tmp = dir.resolve("snapshot-" + next + ".tmp");
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_BYTES);
+        header.putInt(SNAPSHOT_MAGIC).putInt(FORMAT_VERSION).putLong(next).putLong(changeSeq)
+                .putInt(payload.length).putInt(crc(ByteBuffer.wrap(payload))).flip();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ch.write(new ByteBuffer[]{header, ByteBuffer.wrap(payload)});
+            ch.force(true);
+        }
+        Files.move(tmp, snapshotFile(next), StandardCopyOption.ATOMIC_MOVE);
+
+        // From here on the new snapshot wins at startup even if the old log still exists.
+        FileChannel newLog = createLog(logFile(next), next);
+        log.close();
+        log = newLog;
+        generation = next;
+        snapshotBytes = SNAPSHOT_HEADER_BYTES + payload.length;
+        deleteOtherGenerations();
+    }
+
+    private static FileChannel createLog(Path file, long gen) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        header.putInt(LOG_MAGIC).putInt(FORMAT_VERSION).putLong(gen).flip();
+        ch.write(header);
+        ch.force(true);
+        return ch;
+    }
+
+    // Best effort: a file that is still mapped (Windows) is left for the next start to remove.
+    private void deleteOtherGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : files.toList()) {
+                String name = f.getFileName().toString();
+                Matcher s = SNAPSHOT_FILE.matcher(name);
+                Matcher l = LOG_FILE.matcher(name);
+                boolean stale = (s.matches() && Long.parseLong(s.group(1)) != generation)
+                        || (l.matches() && Long.parseLong(l.group(1)) != generation)
+                        || name.endsWith(".tmp");
+                if (stale) {
+                    try {
+                        Files.deleteIfExists(f);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    private Path snapshotFile(long gen) {
+        return dir.resolve("snapshot-" + gen + ".bin");
+    }
+
+    private Path logFile(long gen) {
+        return dir.resolve("log-" + gen + ".bin");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    // ---- queries -------------------------------------------------------------------------
+
+    /** Entries of {@code faculty}, or of every faculty if it is null, plus all locations. */
+    synchronized DataSnapshot snapshot(String faculty) {
+        DataSnapshot d = new DataSnapshot();
+        d.setVersion(changeSeq);
+        for (Loc l : locations.values()) d.addLocation(toLocation(l));
+        for (Entry e : entries.values()) {
+            if (faculty == null || courses.get(e.courseId()).faculty().equals(faculty)) d.addEntry(toEntry(e));
+        }
+        return d;
+    }
+
+    /** Entries of the student's courses and the locations they use, found through the enrollment and course indexes. */
+    synchronized DataSnapshot studentSnapshot(String student) {
+        DataSnapshot d = new DataSnapshot();
+        d.setVersion(changeSeq);
+        List<Entry> mine = new ArrayList<>();
+        Set<Integer> used = new LinkedHashSet<>();
+        for (int courseId : enrollments.getOrDefault(key(student), Set.of())) {
+            for (int entryId : entriesByCourse.getOrDefault(courseId, Set.of())) {
+                Entry e = entries.get(entryId);
+                mine.add(e);
+                used.add(e.locationId());
+            }
+        }
+        for (int locationId : used) d.addLocation(toLocation(locations.get(locationId)));
+        for (Entry e : mine) d.addEntry(toEntry(e));
+        return d;
+    }
+
+    synchronized ChangeSet changesSince(String faculty, long version) {
+        if (version >= changeSeq) return ChangeSet.empty(changeSeq);
+        List<TimetableEntry> changed = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            if (e.changeSeq() > version && courses.get(e.courseId()).faculty().equals(faculty)) changed.add(toEntry(e));
+        }
+        List<Integer> deleted = new ArrayList<>();
+        if (version < openedAt) {
+            // Its tombstones may be pruned; report every id that isn't one of the faculty's entries now.
+            Set<Integer> live = new HashSet<>();
+            for (Entry e : entries.values()) {
+                if (courses.get(e.courseId()).faculty().equals(faculty)) live.add(e.id());
+            }
+            for (int id = 1; id < nextEntryId; id++) {
+                if (!live.contains(id)) deleted.add(id);
+            }
+        } else {
+            for (Tombstone t : tombstones) {
+                if (t.seq() > version && t.faculty().equals(faculty)) deleted.add(t.entryId());
+            }
+        }
+        List<Location> moved = new ArrayList<>();
+        for (Loc l : locations.values()) {
+            if (l.changeSeq() > version) moved.add(toLocation(l));
+        }
+        return new ChangeSet(version, changeSeq, changed, deleted, moved);
+    }
+
+    private Location toLocation(Loc l) {
+        return new Location(String.valueOf(l.id()), l.name(), l.code(), l.x(), l.y());
+    }
+
+    private TimetableEntry toEntry(Entry e) {
+        return new TimetableEntry(e.id(), e.version(), courses.get(e.courseId()).name(), e.type(), e.day(),
+                e.startTime(), e.duration(), locations.get(e.locationId()).name());
+    }
+
+    synchronized List<String> faculties() {
+        return courses.values().stream().map(Course::faculty).distinct().sorted().toList();
+    }
+
+    synchronized boolean studentExists(String name, String faculty) {
+        return faculty.equals(studentFaculty.get(key(name)));
+    }
+
+    synchronized boolean adminMatches(String name, String password, String faculty) {
+        Admin a = admins.get(key(name));
+        return a != null && a.password().equals(password) && faculty.equals(a.faculty());
+    }
+
+    // ---- mutations -----------------------------------------------------------------------
+
+    synchronized void addStudentIfAbsent(String name, String faculty) throws IOException {
+        if (studentFaculty.containsKey(key(name))) return;
+        Tx tx = new Tx();
+        tx.student(name, faculty);
+        commit(tx);
+    }
+
+    synchronized boolean addAdmin(String name, String password, String faculty) throws IOException {
+        if (admins.containsKey(key(name))) return false;
+        Tx tx = new Tx();
+        tx.admin(new Admin(name, password, faculty));
+        commit(tx);
+        return true;
+    }
+
+    synchronized void enroll(String student, String courseName) throws IOException {
+        if (!studentFaculty.containsKey(key(student))) throw new IOException("No student named '" + student + "'");
+        Course c = courseByName.get(key(courseName));
+        if (c == null) throw new IOException("No course named '" + courseName + "'");
+        if (enrollments.getOrDefault(key(student), Set.of()).contains(c.id())) return;
+        Tx tx = new Tx();
+        tx.enrollment(key(student), c.id(), true);
+        commit(tx);
+    }
+
+    synchronized void unenroll(String student, String courseName) throws IOException {
+        Course c = courseByName.get(key(courseName));
+        if (c == null || !enrollments.getOrDefault(key(student), Set.of()).contains(c.id())) return;
+        Tx tx = new Tx();
+        tx.enrollment(key(student), c.id(), false);
+        commit(tx);
+    }
+
+    /** Adds one entry after checking it against the stored ones; batches are not checked, see {@link ConflictDetector#audit}. */
+    synchronized void addEntry(NewTimetableEntry row) throws IOException {
+        String problem = row.validationError();
+        if (problem != null) throw new IOException(problem);
+        checkConflicts(new TimetableEntry(row.courseName(), row.type(), row.day(), normalizeTime(row.startTime()),
+                row.durationMinutes(), row.locationName()));
+        addEntries(List.of(row));
+    }
+
+    synchronized BatchResult addEntries(List<NewTimetableEntry> rows) throws IOException {
+        List<BatchResult.RowFailure> failures = new ArrayList<>();
+        Tx tx = new Tx();
+        int inserted = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            NewTimetableEntry row = rows.get(i);
+            String problem = row.validationError();
+            if (problem != null) {
+                failures.add(new BatchResult.RowFailure(i, problem));
+                continue;
+            }
+            Course c = courseFor(tx, row.courseName(), row.faculty());
+            Loc l = locationFor(tx, row.locationName(), row.x(), row.y());
+            tx.entry(new Entry(nextEntryId, 0, c.id(), ClassType.valueOf(row.type().toUpperCase()),
+                    row.day().toUpperCase(), normalizeTime(row.startTime()), row.durationMinutes(), l.id(), tx.seq));
+            inserted++;
+        }
+        commit(tx);
+        return new BatchResult(inserted, failures);
+    }
+
+    synchronized void updateEntry(int entryId, int expectedVersion, String courseName, String type,
+                                  String locationName, int x, int y, String faculty) throws IOException {
+        Entry e = entries.get(entryId);
+        if (e == null || e.version() != expectedVersion) throw new StaleEntryException(entryId);
+        ClassType classType;
+        try {
+            classType = ClassType.valueOf(type.toUpperCase());
+        } catch (RuntimeException ex) {
+            throw new IOException("Unknown class type: " + type);
+        }
+        checkConflicts(new TimetableEntry(e.id(), e.version(), courseName, classType, e.day(), e.startTime(),
+                e.duration(), locationName));
+        Tx tx = new Tx();
+        Course c = courseFor(tx, courseName, faculty);
+        Loc l = locationFor(tx, locationName, x, y);
+        if (!courses.get(e.courseId()).faculty().equals(c.faculty())) tx.tombstone(e);
+        tx.entry(new Entry(e.id(), e.version() + 1, c.id(), classType,
+                e.day(), e.startTime(), e.duration(), l.id(), tx.seq));
+        commit(tx);
+    }
+
+    synchronized void deleteEntry(int entryId, int expectedVersion) throws IOException {
+        Entry e = entries.get(entryId);
+        if (e == null || e.version() != expectedVersion) throw new StaleEntryException(entryId);
+        Tx tx = new Tx();
+        tx.deleteEntry(e);
+        commit(tx);
+    }
+
+    synchronized void renameCourse(String oldName, String newName) throws IOException {
+        Course c = courseByName.get(key(oldName));
+        if (c == null) return;
+        if (courseByName.containsKey(key(newName)) && courseByName.get(key(newName)) != c) {
+            throw new IOException("A course named '" + newName + "' already exists");
+        }
+        Tx tx = new Tx();
+        tx.course(new Course(c.id(), newName, c.faculty()));
+        for (Entry e : List.copyOf(entries.values())) {
+            if (e.courseId() == c.id()) tx.entry(new Entry(e.id(), e.version(), e.courseId(), e.type(), e.day(),
+                    e.startTime(), e.duration(), e.locationId(), tx.seq));
+        }
+        commit(tx);
+    }
+
+    synchronized void deleteCourse(String name) throws IOException {
+        Course c = courseByName.get(key(name));
+        if (c == null) return;
+        Tx tx = new Tx();
+        for (Entry e : List.copyOf(entries.values())) {
+            if (e.courseId() == c.id()) tx.deleteEntry(e);
+        }
+        tx.deleteCourse(c);
+        commit(tx);
+    }
+
+    /**
+     * Stores every location and entry of {@code data}: entries whose id is already known are
+     * overwritten, the rest are added under {@code faculty} unless their course already has one.
+     */
+    synchronized void merge(DataSnapshot data, String faculty) throws IOException {
+        for (Location loc : data.getLocations()) {
+            if (loc.getName() == null || loc.getName().isBlank()) throw new IOException("Location " + loc.getId() + " has no name");
+        }
+        for (TimetableEntry te : data.getEntries()) {
+            String problem = new NewTimetableEntry(te.getCourseName(), te.getType() == null ? null : te.getType().name(),
+                    te.getDay(), te.getStartTime(), te.getDurationMinutes(), te.getLocationId(), 0, 0, faculty).validationError();
+            if (problem != null) throw new IOException("Entry " + te.getId() + ": " + problem);
+        }
+        Tx tx = new Tx();
+        Map<String, Location> byIdOrName = new HashMap<>();
+        for (Location loc : data.getLocations()) {
+            locationFor(tx, loc.getName(), loc.getX(), loc.getY());
+            byIdOrName.put(loc.getId(), loc);
+            byIdOrName.put(loc.getName(), loc);
+        }
+        for (TimetableEntry te : data.getEntries()) {
+            // A room the snapshot doesn't list is looked up as it is; only one nobody has heard of is created.
+            Location loc = byIdOrName.get(te.getLocationId());
+            String locationName = loc != null ? loc.getName() : te.getLocationId();
+            Loc l = locationByName.get(key(locationName));
+            if (l == null) l = locationFor(tx, locationName, 0, 0);
+            Course c = courseFor(tx, te.getCourseName(), faculty);
+            Entry old = entries.get(te.getId());
+            int id = old != null ? old.id() : nextEntryId;
+            int version = old != null ? old.version() + 1 : 0;
+            tx.entry(new Entry(id, version, c.id(), te.getType(), te.getDay().toUpperCase(), normalizeTime(te.getStartTime()),
+                    te.getDurationMinutes(), l.id(), tx.seq));
+        }
+        commit(tx);
+        compact();
+    }
+
+    // Runs before the transaction touches memory, so a conflict leaves nothing to undo.
+    private void checkConflicts(TimetableEntry candidate) throws ScheduleConflictException {
+        Course c = courseByName.get(key(candidate.getCourseName()));
+        Loc l = locationByName.get(key(candidate.getLocationId()));
+        int courseId = c != null ? c.id() : -1, locationId = l != null ? l.id() : -1;
+        List<TimetableEntry> sameDay = new ArrayList<>();
+        for (Entry e : entries.values()) {
+            if ((e.courseId() == courseId || e.locationId() == locationId) && e.day().equals(candidate.getDay())) {
+                sameDay.add(toEntry(e));
+            }
+        }
+        List<ConflictDetector.Conflict> conflicts = ConflictDetector.conflictsWith(candidate, sameDay);
+        if (!conflicts.isEmpty()) throw new ScheduleConflictException(conflicts);
+    }
+
+    private Course courseFor(Tx tx, String name, String faculty) {
+        Course c = courseByName.get(key(name));
+        if (c != null) return c;
+        c = new Course(nextCourseId, name, faculty);
+        tx.course(c);
+        return c;
+    }
+
+    private Loc locationFor(Tx tx, String name, int x, int y) {
+        Loc l = locationByName.get(key(name));
+        if (l != null && l.x() == x && l.y() == y) return l;
+        Loc moved = new Loc(l != null ? l.id() : nextLocationId, name, l != null ? l.code() : "GEN", x, y, tx.seq);
+        tx.location(moved);
+        return moved;
+    }
+
+    // The database returns TIME columns as HH:mm; keep the same shape whether callers pass 08:00 or 08:00:00.
+    private static String normalizeTime(String time) {
+        String t = LocalTime.parse(time).toString();
+        return t.length() > 5 ? t.substring(0, 5) : t;
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,174 @@
+package org.example;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.example.ConnectionPool.PooledConnection;
+
+/**
+ * Maps course and location names to their ids for one database.
+ * Hits cost no queries; misses are resolved with a single
+ * {@code INSERT ... ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)}, which returns the id whether the
+ * row was created now or by someone else first. This also closes the race where two admins adding
+ * the same new course both saw it missing.
+ * <p>
+ * Names are matched case-insensitively, like the {@code utf8mb4_unicode_ci} columns they come from.
+ * Callers must {@link #forgetCourse} / {@link #forgetLocation} when a name is renamed, deleted,
+ * or its insert is rolled back.
+ */
+public class IdResolver {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private static final String UPSERT_COURSE =
+            "INSERT INTO courses (name, faculty) VALUES (?, ?) ON DUPLICATE KEY UPDATE id = LAST_INSERT_ID(id)";
+    // change_seq is assigned first so it still compares against the old coordinates.
+    private static final String UPSERT_LOCATION = """
+            INSERT INTO locations (name, code, x, y, change_seq) VALUES (?, 'GEN', ?, ?, ?) AS new
+            ON DUPLICATE KEY UPDATE
+                change_seq = IF(locations.x <=> new.x AND locations.y <=> new.y, locations.change_seq, new.change_seq),
+                x = new.x, y = new.y, id = LAST_INSERT_ID(locations.id)
+            """;
+
+    private record CachedLocation(int id, int x, int y) {}
+
+    private final Map<String, Integer> courses;
+    private final Map<String, CachedLocation> locations;
+
+    public IdResolver() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public IdResolver(int maxEntries) {
+        this.courses = lru(maxEntries);
+        this.locations = lru(maxEntries);
+    }
+
+    /** Id of the named course, creating it under {@code faculty} if it doesn't exist. */
+    public int courseId(PooledConnection conn, String name, String faculty) throws SQLException {
+        Integer cached = cachedCourse(name);
+        if (cached != null) return cached;
+
+        PreparedStatement ps = conn.prepare(UPSERT_COURSE, Statement.RETURN_GENERATED_KEYS);
+        ps.setString(1, name);
+        ps.setString(2, faculty);
+        ps.executeUpdate();
+        int id = generatedKey(ps);
+        rememberCourse(name, id);
+        return id;
+    }
+
+    /** Id of the named course, or -1 if there is none. Never creates it. */
+    public int findCourseId(PooledConnection conn, String name) throws SQLException {
+        Integer cached = cachedCourse(name);
+        if (cached != null) return cached;
+
+        PreparedStatement ps = conn.prepare("SELECT id FROM courses WHERE name = ?");
+        ps.setString(1, name);
+        try (ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) return -1;
+            int id = rs.getInt(1);
+            rememberCourse(name, id);
+            return id;
+        }
+    }
+
+    /**
+     * Id of the named location after moving it to (x, y), creating it if it doesn't exist.
+     * A created or moved location is stamped with {@code changeSeq}.
+     */
+    public int locationId(PooledConnection conn, String name, int x, int y, long changeSeq) throws SQLException {
+        CachedLocation cached;
+        synchronized (locations) {
+            cached = locations.get(key(name));
+        }
+        if (cached != null) {
+            if (cached.x() == x && cached.y() == y) return cached.id();
+
+            PreparedStatement update = conn.prepare("UPDATE locations SET x = ?, y = ?, change_seq = ? WHERE id = ?");
+            update.setInt(1, x);
+            update.setInt(2, y);
+            update.setLong(3, changeSeq);
+            update.setInt(4, cached.id());
+            if (update.executeUpdate() == 1) {
+                rememberLocation(name, cached.id(), x, y);
+                return cached.id();
+            }
+            forgetLocation(name); // deleted behind our back; fall through to the upsert
+        }
+
+        PreparedStatement ps = conn.prepare(UPSERT_LOCATION, Statement.RETURN_GENERATED_KEYS);
+        ps.setString(1, name);
+        ps.setInt(2, x);
+        ps.setInt(3, y);
+        ps.setLong(4, changeSeq);
+        ps.executeUpdate();
+        int id = generatedKey(ps);
+        rememberLocation(name, id, x, y);
+        return id;
+    }
+
+    public void rememberCourse(String name, int id) {
+        synchronized (courses) {
+            courses.put(key(name), id);
+        }
+    }
+
+    public void rememberLocation(String name, int id, int x, int y) {
+        synchronized (locations) {
+            locations.put(key(name), new CachedLocation(id, x, y));
+        }
+    }
+
+    public void forgetCourse(String name) {
+        synchronized (courses) {
+            courses.remove(key(name));
+        }
+    }
+
+    public void forgetLocation(String name) {
+        synchronized (locations) {
+            locations.remove(key(name));
+        }
+    }
+
+    public void clear() {
+        synchronized (courses) {
+            courses.clear();
+        }
+        synchronized (locations) {
+            locations.clear();
+        }
+    }
+
+    private Integer cachedCourse(String name) {
+        synchronized (courses) {
+            return courses.get(key(name));
+        }
+    }
+
+    private static int generatedKey(PreparedStatement ps) throws SQLException {
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            if (!rs.next()) throw new SQLException("Upsert returned no id");
+            return rs.getInt(1);
+        }
+    }
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static <V> Map<String, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
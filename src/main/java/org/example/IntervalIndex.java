@@ -0,0 +1,177 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Timetable entries grouped by a key, such as a day or a day at one location, and ordered by
+ * start minute within each group. Overlap queries look at starts in
+ * {@code [from - longest duration in the group, to)} only, so they cost O(log n + k) instead of
+ * a scan of the group.
+ * <p>
+ * Entries are tracked by id: putting an entry whose id is already indexed moves it, so updates
+ * need no separate remove. Unsaved entries (id 0) can be added but not moved or removed.
+ * Entries are kept as given, so pass detached copies rather than {@link TimetableStore} views.
+ * <p>
+ * {@link #copy()} shares the groups between the two indexes; whichever is changed first copies
+ * the group it changes, so a copy costs in proportion to what differs. A {@link #freeze() frozen}
+ * index refuses changes and can be read from any thread.
+ */
+public class IntervalIndex<K> {
+
+    /** {@code [start, end)} in minutes after midnight. */
+    private record Interval(int start, int end, TimetableEntry entry) {}
+
+    private record Placement<K>(K key, Interval interval) {}
+
+    private static final class Bucket {
+        // The lists are replaced rather than changed, so a copied bucket can share them.
+        final TreeMap<Integer, List<Interval>> byStart;
+        final Object owner;
+        // Only grows: a removal can leave it larger than needed, which widens the scan but never misses an overlap.
+        int longest;
+
+        Bucket(Bucket from, Object owner) {
+            this.byStart = from == null ? new TreeMap<>() : new TreeMap<>(from.byStart);
+            this.longest = from == null ? 0 : from.longest;
+            this.owner = owner;
+        }
+    }
+
+    private final Function<TimetableEntry, K> keyOf;
+    private ShardedMap<K, Bucket> buckets = new ShardedMap<>();
+    private ShardedMap<Integer, Placement<K>> byId = new ShardedMap<>();
+    private Object owner = new Object(); // buckets holding this are ours to change; null once frozen
+    private int size;
+
+    public IntervalIndex(Function<TimetableEntry, K> keyOf) {
+        this.keyOf = keyOf;
+    }
+
+    private IntervalIndex(IntervalIndex<K> from) {
+        keyOf = from.keyOf;
+        buckets = from.buckets.copy();
+        byId = from.byId.copy();
+        size = from.size;
+    }
+
+    /** An index with the same entries; later changes to either one don't show in the other. */
+    public IntervalIndex<K> copy() {
+        if (owner != null) owner = new Object(); // every bucket is shared from now on
+        return new IntervalIndex<>(this);
+    }
+
+    public void freeze() {
+        owner = null;
+        buckets.freeze();
+        byId.freeze();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Adds the entry, or moves it if an entry with the same id is already indexed. */
+    public void put(TimetableEntry entry) {
+        checkNotFrozen();
+        if (entry.getId() != 0) remove(entry.getId());
+        int start = entry.getStartMinutes();
+        K key = keyOf.apply(entry);
+        if (start < 0 || key == null) return; // can't be placed in time, so can't overlap anything
+
+        Interval interval = new Interval(start, start + Math.max(entry.getDurationMinutes(), 0), entry);
+        Bucket bucket = writable(key);
+        bucket.byStart.merge(start, List.of(interval), IntervalIndex::concat);
+        bucket.longest = Math.max(bucket.longest, interval.end() - interval.start());
+        if (entry.getId() != 0) byId.put(entry.getId(), new Placement<>(key, interval));
+        size++;
+    }
+
+    public boolean remove(int entryId) {
+        checkNotFrozen();
+        Placement<K> p = byId.get(entryId);
+        if (p == null) return false;
+        Bucket bucket = writable(p.key());
+        byId.remove(entryId);
+        int start = p.interval().start();
+        List<Interval> atStart = bucket.byStart.get(start);
+        if (atStart.size() == 1) bucket.byStart.remove(start);
+        else bucket.byStart.put(start, atStart.stream().filter(i -> i != p.interval()).toList());
+        if (bucket.byStart.isEmpty()) buckets.remove(p.key());
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        checkNotFrozen();
+        buckets = new ShardedMap<>();
+        byId = new ShardedMap<>();
+        size = 0;
+    }
+
+    /** True if {@code other} holds the very same group for {@code key}, e.g. because neither changed it since a copy. */
+    public boolean sameGroup(IntervalIndex<K> other, K key) {
+        return other != null && other.buckets.get(key) == buckets.get(key);
+    }
+
+    /** Entries running at {@code minute}, i.e. started at or before it and not yet over. */
+    public List<TimetableEntry> occupying(K key, int minute) {
+        return overlapping(key, minute, minute + 1);
+    }
+
+    /** Entries sharing at least one minute with {@code [from, to)}, in start order. */
+    public List<TimetableEntry> overlapping(K key, int from, int to) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null || to <= from) return List.of();
+        List<TimetableEntry> result = new ArrayList<>();
+        // The lower bound is exclusive: a start there can at best end exactly at from.
+        for (List<Interval> atStart : bucket.byStart.subMap(from - bucket.longest, false, to, false).values()) {
+            for (Interval i : atStart) {
+                if (i.end() > from) result.add(i.entry());
+            }
+        }
+        return result;
+    }
+
+    /** The first entry starting at or after {@code minute}, or null if there is none that day. */
+    public TimetableEntry nextStarting(K key, int minute) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) return null;
+        Map.Entry<Integer, List<Interval>> next = bucket.byStart.ceilingEntry(minute);
+        return next == null ? null : next.getValue().get(0).entry();
+    }
+
+    private void checkNotFrozen() {
+        if (owner == null) throw new IllegalStateException("The index is frozen");
+    }
+
+    private Bucket writable(K key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null || bucket.owner != owner) {
+            bucket = new Bucket(bucket, owner);
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+
+    private static List<Interval> concat(List<Interval> a, List<Interval> b) {
+        List<Interval> both = new ArrayList<>(a.size() + b.size());
+        both.addAll(a);
+        both.addAll(b);
+        return both;
+    }
+
+    /** All entries of the group in start order. */
+    public List<TimetableEntry> all(K key) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) return List.of();
+        List<TimetableEntry> result = new ArrayList<>();
+        for (List<Interval> atStart : bucket.byStart.values()) {
+            for (Interval i : atStart) result.add(i.entry());
+        }
+        return result;
+    }
+}
@@ -2,32 +2,61 @@ package org.example;
 
 import java.io.IOException;
 import java.sql.*;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class JdbcStorage implements Storage {
-
-    private void initSchema(Connection conn) throws SQLException {
-        try (Statement st = conn.createStatement()) {
-            st.execute("CREATE TABLE IF NOT EXISTS locations (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) UNIQUE, code VARCHAR(255), x INT, y INT)");
-            st.execute("CREATE TABLE IF NOT EXISTS courses (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) UNIQUE, faculty VARCHAR(255))");
-            st.execute("CREATE TABLE IF NOT EXISTS students (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) UNIQUE, faculty VARCHAR(255))");
-            st.execute("CREATE TABLE IF NOT EXISTS admins (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255) UNIQUE, password VARCHAR(255), faculty VARCHAR(255))");
-
-            st.execute("""
-                CREATE TABLE IF NOT EXISTS timetable_entries (
-                    id INT AUTO_INCREMENT PRIMARY KEY,
-                    course_id INT,
-                    type VARCHAR(50),
-                    day VARCHAR(50),
-                    start_time TIME,
-                    duration_minutes INT,
-                    location_id INT,
-                    FOREIGN KEY (course_id) REFERENCES courses(id),
-                    FOREIGN KEY (location_id) REFERENCES locations(id)
-                )
-            """);
+import org.example.ConnectionPool.PooledConnection;
+
+public class JdbcStorage implements ScheduleStorage {
+
+    // Rows per JDBC batch and names per IN (...) list in bulk operations.
+    private static final int BATCH_SIZE = 500;
+
+    private final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+    private final Map<String, IdResolver> resolvers = new ConcurrentHashMap<>();
+
+    private PooledConnection connect(String dataSource) throws SQLException {
+        ConnectionPool pool = pools.get(dataSource);
+        if (pool == null) pool = openPool(dataSource);
+        return pool.borrow();
+    }
+
+    // The first connection to a data source brings its schema up to date; later ones skip straight to the pool.
+    private synchronized ConnectionPool openPool(String dataSource) throws SQLException {
+        ConnectionPool pool = pools.get(dataSource);
+        if (pool != null) return pool;
+
+        pool = new ConnectionPool(dataSource);
+        try (PooledConnection conn = pool.borrow()) {
+            new SchemaMigrator().migrate(conn.connection());
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
         }
+        pools.put(dataSource, pool);
+        return pool;
+    }
+
+    private IdResolver resolver(String dataSource) {
+        return resolvers.computeIfAbsent(dataSource, ds -> new IdResolver());
+    }
+
+    /** Pool usage for the given data source, or null if it has never been connected to. */
+    public ConnectionPool.Stats getPoolStats(String dataSource) {
+        ConnectionPool pool = pools.get(dataSource);
+        return pool == null ? null : pool.stats();
+    }
+
+    @Override
+    public void close() {
+        pools.values().forEach(ConnectionPool::close);
+        pools.clear();
     }
 
     @Override
@@ -35,43 +64,26 @@ public class JdbcStorage implements Storage {
         return loadByFaculty("History", dataSource); // Default load
     }
 
+    @Override
     public DataSnapshot loadByFaculty(String facultyName, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-            initSchema(conn);
+        try (PooledConnection conn = connect(dataSource)) {
             DataSnapshot d = new DataSnapshot();
+            // Read before the rows: a write landing in between is sent again by the next delta, never lost.
+            d.setVersion(currentChangeSeq(conn));
 
 
-            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT name, code, x, y FROM locations")) {
+            try (ResultSet rs = conn.prepare("SELECT id, name, code, x, y FROM locations").executeQuery()) {
                 while (rs.next()) {
-                    d.getLocations().add(new Location(rs.getString("name"), rs.getString("code"), rs.getInt("x"), rs.getInt("y")));
+                    d.addLocation(readLocation(rs));
                 }
             }
 
 
-            String sql = """
-                SELECT c.name AS course_name, t.type, t.day, t.start_time, t.duration_minutes, l.name AS location_name
-                FROM timetable_entries t
-                JOIN courses c ON t.course_id = c.id
-                JOIN locations l ON t.location_id = l.id
-                WHERE c.faculty = ?
-            """;
-
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, facultyName);
-                try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        String startStr = rs.getTime("start_time").toString();
-                        if (startStr.length() > 5) startStr = startStr.substring(0, 5);
-
-                        d.getEntries().add(new TimetableEntry(
-                                rs.getString("course_name"),
-                                ClassType.valueOf(rs.getString("type")),
-                                rs.getString("day"),
-                                startStr,
-                                rs.getInt("duration_minutes"),
-                                rs.getString("location_name")
-                        ));
-                    }
+            PreparedStatement ps = conn.prepare(ENTRY_QUERY + " WHERE c.faculty = ?");
+            ps.setString(1, facultyName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    d.addEntry(readEntry(rs));
                 }
             }
             return d;
@@ -80,272 +92,623 @@ public class JdbcStorage implements Storage {
         }
     }
 
+    @Override
+    public ChangeSet loadChangesSince(String facultyName, long version, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            long current = currentChangeSeq(conn);
+            if (current == version) return ChangeSet.empty(version);
+
+            List<Location> locations = new ArrayList<>();
+            PreparedStatement locs = conn.prepare("SELECT id, name, code, x, y FROM locations WHERE change_seq > ?");
+            locs.setLong(1, version);
+            try (ResultSet rs = locs.executeQuery()) {
+                while (rs.next()) locations.add(readLocation(rs));
+            }
 
-    public boolean accountExists(String name, String faculty, String dataSource) throws IOException {
-        if (faculty == null) return false;
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-            initSchema(conn);
-            String sql = "SELECT 1 FROM students WHERE name = ? AND faculty = ?";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setString(1, name);
-                ps.setString(2, faculty);
-                try (ResultSet rs = ps.executeQuery()) { return rs.next(); }
+            List<TimetableEntry> entries = new ArrayList<>();
+            PreparedStatement ps = conn.prepare(ENTRY_QUERY + " WHERE c.faculty = ? AND t.change_seq > ?");
+            ps.setString(1, facultyName);
+            ps.setLong(2, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) entries.add(readEntry(rs));
             }
-        } catch (SQLException e) { throw new IOException(e); }
+
+            List<Integer> deleted = new ArrayList<>();
+            PreparedStatement tomb = conn.prepare("SELECT entry_id FROM entry_tombstones WHERE faculty = ? AND seq > ?");
+            tomb.setString(1, facultyName);
+            tomb.setLong(2, version);
+            try (ResultSet rs = tomb.executeQuery()) {
+                while (rs.next()) deleted.add(rs.getInt(1));
+            }
+
+            return new ChangeSet(version, current, entries, deleted, locations);
+        } catch (SQLException e) {
+            throw new IOException("Database error: " + e.getMessage(), e);
+        }
     }
 
-    public boolean createAdmin(String name, String password, String faculty, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-            initSchema(conn);
-            try (PreparedStatement check = conn.prepareStatement("SELECT 1 FROM admins WHERE name = ?")) {
-                check.setString(1, name);
-                if (check.executeQuery().next()) return false;
+    private static final String STUDENT_JOIN = """
+            JOIN enrollments e ON e.course_id = t.course_id
+            JOIN students s ON s.id = e.student_id
+            WHERE s.name = ?
+            """;
+
+    @Override
+    public DataSnapshot loadForStudent(String studentName, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            DataSnapshot d = new DataSnapshot();
+            d.setVersion(currentChangeSeq(conn));
+
+            PreparedStatement locs = conn.prepare("""
+                    SELECT DISTINCT l.id, l.name, l.code, l.x, l.y
+                    FROM timetable_entries t
+                    JOIN locations l ON t.location_id = l.id
+                    """ + STUDENT_JOIN);
+            locs.setString(1, studentName);
+            try (ResultSet rs = locs.executeQuery()) {
+                while (rs.next()) d.addLocation(readLocation(rs));
             }
-            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO admins (name, password, faculty) VALUES (?, ?, ?)")) {
-                insert.setString(1, name);
-                insert.setString(2, password);
-                insert.setString(3, faculty);
-                insert.executeUpdate();
-                return true;
+
+            PreparedStatement ps = conn.prepare(ENTRY_QUERY + STUDENT_JOIN);
+            ps.setString(1, studentName);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) d.addEntry(readEntry(rs));
             }
-        } catch (SQLException e) { throw new IOException(e); }
+            return d;
+        } catch (SQLException e) {
+            throw new IOException("Database error: " + e.getMessage(), e);
+        }
     }
 
-    public boolean authenticateAdmin(String name, String password, String faculty, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-            initSchema(conn);
-            try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM admins WHERE name = ? AND password = ? AND faculty = ?")) {
-                ps.setString(1, name); ps.setString(2, password); ps.setString(3, faculty);
-                try (ResultSet rs = ps.executeQuery()) { return rs.next(); }
-            }
-        } catch (SQLException e) { throw new IOException(e); }
+    @Override
+    public void enroll(String studentName, String courseName, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            int studentId = findStudentId(conn, studentName);
+            if (studentId == -1) throw new IOException("No student named '" + studentName + "'");
+            int courseId = resolver(dataSource).findCourseId(conn, courseName);
+            if (courseId == -1) throw new IOException("No course named '" + courseName + "'");
+            PreparedStatement ps = conn.prepare("INSERT IGNORE INTO enrollments (student_id, course_id) VALUES (?, ?)");
+            ps.setInt(1, studentId);
+            ps.setInt(2, courseId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Database error: " + e.getMessage(), e);
+        }
     }
 
+    @Override
+    public void unenroll(String studentName, String courseName, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            PreparedStatement ps = conn.prepare("""
+                    DELETE e FROM enrollments e
+                    JOIN students s ON s.id = e.student_id
+                    JOIN courses c ON c.id = e.course_id
+                    WHERE s.name = ? AND c.name = ?
+                    """);
+            ps.setString(1, studentName);
+            ps.setString(2, courseName);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Database error: " + e.getMessage(), e);
+        }
+    }
 
-    public void addTimetableEntry(String courseName, String type, String day, String startTime, int duration, String locationName, int x, int y, String faculty, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-
-            int courseId;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM courses WHERE name = ?")) {
-                ps.setString(1, courseName);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    courseId = rs.getInt("id");
-                } else {
-                    try (PreparedStatement insert = conn.prepareStatement("INSERT INTO courses (name, faculty) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS)) {
-                        insert.setString(1, courseName);
-                        insert.setString(2, faculty);
-                        insert.executeUpdate();
-                        ResultSet gen = insert.getGeneratedKeys();
-                        gen.next();
-                        courseId = gen.getInt(1);
-                    }
+    private static int findStudentId(PooledConnection conn, String name) throws SQLException {
+        PreparedStatement ps = conn.prepare("SELECT id FROM students WHERE name = ? LIMIT 1");
+        ps.setString(1, name);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : -1;
+        }
+    }
+
+    @Override
+    public CampusGraph loadCampusGraph(String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            List<CampusGraph.Node> nodes = new ArrayList<>();
+            try (ResultSet rs = conn.prepare("SELECT id, name, x, y, location_id FROM walkway_nodes").executeQuery()) {
+                while (rs.next()) {
+                    int locationId = rs.getInt("location_id");
+                    nodes.add(new CampusGraph.Node(rs.getInt("id"), rs.getString("name"), rs.getInt("x"), rs.getInt("y"),
+                            rs.wasNull() ? null : String.valueOf(locationId)));
                 }
             }
+            List<CampusGraph.Edge> edges = new ArrayList<>();
+            try (ResultSet rs = conn.prepare("SELECT from_node, to_node, meters FROM walkway_edges").executeQuery()) {
+                while (rs.next()) edges.add(new CampusGraph.Edge(rs.getInt(1), rs.getInt(2), rs.getInt(3)));
+            }
+            return new CampusGraph(nodes, edges);
+        } catch (SQLException e) {
+            throw new IOException("Database error: " + e.getMessage(), e);
+        }
+    }
 
-            int locationId;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM locations WHERE name = ?")) {
-                ps.setString(1, locationName);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    locationId = rs.getInt("id");
+    @Override
+    public List<String> listFaculties(String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            List<String> faculties = new ArrayList<>();
+            try (ResultSet rs = conn.prepare("SELECT DISTINCT faculty FROM courses WHERE faculty IS NOT NULL ORDER BY faculty").executeQuery()) {
+                while (rs.next()) faculties.add(rs.getString(1));
+            }
+            return faculties;
+        } catch (SQLException e) {
+            throw new IOException("Database error: " + e.getMessage(), e);
+        }
+    }
 
+    private static final String ENTRY_QUERY = """
+            SELECT t.id, t.version, c.name AS course_name, t.type, t.day, t.start_time, t.duration_minutes, l.name AS location_name
+            FROM timetable_entries t
+            JOIN courses c ON t.course_id = c.id
+            JOIN locations l ON t.location_id = l.id
+            """;
 
-                    try (PreparedStatement updateLoc = conn.prepareStatement("UPDATE locations SET x = ?, y = ? WHERE id = ?")) {
-                        updateLoc.setInt(1, x);
-                        updateLoc.setInt(2, y);
-                        updateLoc.setInt(3, locationId);
-                        updateLoc.executeUpdate();
-                    }
+    private static TimetableEntry readEntry(ResultSet rs) throws SQLException {
+        String startStr = rs.getTime("start_time").toString();
+        if (startStr.length() > 5) startStr = startStr.substring(0, 5);
+
+        return new TimetableEntry(
+                rs.getInt("id"),
+                rs.getInt("version"),
+                rs.getString("course_name"),
+                ClassType.valueOf(rs.getString("type")),
+                rs.getString("day"),
+                startStr,
+                rs.getInt("duration_minutes"),
+                rs.getString("location_name")
+        );
+    }
 
-                } else {
-                    try (PreparedStatement insert = conn.prepareStatement("INSERT INTO locations (name, code, x, y) VALUES (?, 'GEN', ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
-                        insert.setString(1, locationName);
-                        insert.setInt(2, x);
-                        insert.setInt(3, y);
-                        insert.executeUpdate();
-                        ResultSet gen = insert.getGeneratedKeys();
-                        gen.next();
-                        locationId = gen.getInt(1);
-                    }
-                }
+    private static Location readLocation(ResultSet rs) throws SQLException {
+        return new Location(String.valueOf(rs.getInt("id")), rs.getString("name"), rs.getString("code"), rs.getInt("x"), rs.getInt("y"));
+    }
+
+    private long currentChangeSeq(PooledConnection conn) throws SQLException {
+        try (ResultSet rs = conn.prepare("SELECT seq FROM change_counter WHERE id = 1").executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /*
+     * Allocates the change sequence number stamped on every row a write transaction touches.
+     * The counter row stays locked until the transaction ends, so writers commit in sequence
+     * order and a reader that has seen sequence N can never later find an uncommitted N - 1.
+     */
+    private long nextChangeSeq(PooledConnection conn) throws SQLException {
+        PreparedStatement ps = conn.prepare("UPDATE change_counter SET seq = LAST_INSERT_ID(seq + 1) WHERE id = 1", Statement.RETURN_GENERATED_KEYS);
+        ps.executeUpdate();
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            if (!rs.next()) throw new SQLException("change_counter is missing its row");
+            return rs.getLong(1);
+        }
+    }
+
+
+    @Override
+    public boolean accountExists(String name, String faculty, String dataSource) throws IOException {
+        if (faculty == null) return false;
+        try (PooledConnection conn = connect(dataSource)) {
+            PreparedStatement ps = conn.prepare("SELECT 1 FROM students WHERE name = ? AND faculty = ?");
+            ps.setString(1, name);
+            ps.setString(2, faculty);
+            try (ResultSet rs = ps.executeQuery()) { return rs.next(); }
+        } catch (SQLException e) { throw new IOException(e); }
+    }
+
+    @Override
+    public boolean createAdmin(String name, String password, String faculty, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            PreparedStatement check = conn.prepare("SELECT 1 FROM admins WHERE name = ?");
+            check.setString(1, name);
+            try (ResultSet rs = check.executeQuery()) {
+                if (rs.next()) return false;
             }
+            PreparedStatement insert = conn.prepare("INSERT INTO admins (name, password, faculty) VALUES (?, ?, ?)");
+            insert.setString(1, name);
+            insert.setString(2, password);
+            insert.setString(3, faculty);
+            insert.executeUpdate();
+            return true;
+        } catch (SQLException e) { throw new IOException(e); }
+    }
 
+    @Override
+    public boolean authenticateAdmin(String name, String password, String faculty, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            PreparedStatement ps = conn.prepare("SELECT 1 FROM admins WHERE name = ? AND password = ? AND faculty = ?");
+            ps.setString(1, name); ps.setString(2, password); ps.setString(3, faculty);
+            try (ResultSet rs = ps.executeQuery()) { return rs.next(); }
+        } catch (SQLException e) { throw new IOException(e); }
+    }
 
-            String sql = "INSERT INTO timetable_entries (course_id, type, day, start_time, duration_minutes, location_id) VALUES (?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+
+    @Override
+    public void addTimetableEntry(String courseName, String type, String day, String startTime, int duration, String locationName, int x, int y, String faculty, String dataSource) throws IOException {
+        String problem = new NewTimetableEntry(courseName, type, day, startTime, duration, locationName, x, y, faculty).validationError();
+        if (problem != null) throw new IOException(problem);
+        IdResolver ids = resolver(dataSource);
+        try (PooledConnection conn = connect(dataSource)) {
+            inTransaction(conn, () -> {
+                long seq = nextChangeSeq(conn);
+                int courseId = ids.courseId(conn, courseName, faculty);
+                int locationId = ids.locationId(conn, locationName, x, y, seq);
+                checkConflicts(conn, new TimetableEntry(courseName, type, day, startTime, duration, locationName), courseId, locationId);
+
+                PreparedStatement ps = conn.prepare(INSERT_ENTRY);
                 ps.setInt(1, courseId);
                 ps.setString(2, type);
                 ps.setString(3, day.toUpperCase());
                 ps.setString(4, startTime);
                 ps.setInt(5, duration);
                 ps.setInt(6, locationId);
+                ps.setLong(7, seq);
                 ps.executeUpdate();
-            }
-        } catch (SQLException e) {
+                return null;
+            });
+        } catch (SQLException | ScheduleConflictException e) {
+            // Rolled back, so any id the resolver learned in this transaction may not exist.
+            ids.forgetCourse(courseName);
+            ids.forgetLocation(locationName);
+            if (e instanceof ScheduleConflictException conflict) throw conflict;
             throw new IOException("Failed to add entry: " + e.getMessage(), e);
         }
     }
 
-
-    public void updateTimetableEntry(String oldCourseName, String day, String startTime,
-                                     String newCourseName, String newType,
-                                     String locationName, int x, int y,
-                                     String faculty, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-
-            int oldCourseId = getOrInsertCourse(conn, oldCourseName, faculty);
-            int newCourseId = getOrInsertCourse(conn, newCourseName, faculty);
+    /*
+     * Rejects candidate if it overlaps another entry in the same room or of the same course. Runs
+     * inside the write transaction after nextChangeSeq, whose row lock keeps any other writer from
+     * committing a clashing entry between this check and our commit.
+     */
+    private static void checkConflicts(PooledConnection conn, TimetableEntry candidate, int courseId, int locationId)
+            throws SQLException, ScheduleConflictException {
+        int start = candidate.getStartMinutes();
+        if (start < 0) return;
+        PreparedStatement ps = conn.prepare(ENTRY_QUERY + """
+                WHERE t.day = ? AND (t.location_id = ? OR t.course_id = ?) AND t.id <> ?
+                  AND t.start_time < SEC_TO_TIME(?) AND TIME_TO_SEC(t.start_time) + t.duration_minutes * 60 > ?
+                """);
+        ps.setString(1, candidate.getDay());
+        ps.setInt(2, locationId);
+        ps.setInt(3, courseId);
+        ps.setInt(4, candidate.getId());
+        ps.setInt(5, (start + candidate.getDurationMinutes()) * 60);
+        ps.setInt(6, start * 60);
+        List<TimetableEntry> neighbours = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) neighbours.add(readEntry(rs));
+        }
+        List<ConflictDetector.Conflict> conflicts = ConflictDetector.conflictsWith(candidate, neighbours);
+        if (!conflicts.isEmpty()) throw new ScheduleConflictException(conflicts);
+    }
 
 
-            int locationId;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM locations WHERE name = ?")) {
-                ps.setString(1, locationName);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) {
-                    locationId = rs.getInt("id");
+    private static final String INSERT_ENTRY =
+            "INSERT INTO timetable_entries (course_id, type, day, start_time, duration_minutes, location_id, change_seq) VALUES (?, ?, ?, ?, ?, ?, ?)";
 
-                    try (PreparedStatement upLoc = conn.prepareStatement("UPDATE locations SET x = ?, y = ? WHERE id = ?")) {
-                        upLoc.setInt(1, x);
-                        upLoc.setInt(2, y);
-                        upLoc.setInt(3, locationId);
-                        upLoc.executeUpdate();
+    @Override
+    public BatchResult addTimetableEntries(List<NewTimetableEntry> rows, String dataSource) throws IOException {
+        List<BatchResult.RowFailure> failures = new ArrayList<>();
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            String problem = rows.get(i).validationError();
+            if (problem == null) valid.add(i);
+            else failures.add(new BatchResult.RowFailure(i, problem));
+        }
+        if (valid.isEmpty()) return new BatchResult(0, failures);
+
+        try (PooledConnection conn = connect(dataSource)) {
+            Connection c = conn.connection();
+            c.setAutoCommit(false);
+            try {
+                long seq = nextChangeSeq(conn);
+                Map<String, Integer> courseIds = resolveCourseIds(conn, valid.stream().map(rows::get).toList());
+                Map<String, Integer> locationIds = resolveLocationIds(conn, valid.stream().map(rows::get).toList(), seq);
+
+                int inserted = 0;
+                for (int from = 0; from < valid.size(); from += BATCH_SIZE) {
+                    List<Integer> chunk = valid.subList(from, Math.min(from + BATCH_SIZE, valid.size()));
+                    PreparedStatement ps = conn.prepare(INSERT_ENTRY);
+                    for (int i : chunk) {
+                        NewTimetableEntry row = rows.get(i);
+                        ps.setInt(1, courseIds.get(row.courseName()));
+                        ps.setString(2, row.type().toUpperCase());
+                        ps.setString(3, row.day().toUpperCase());
+                        ps.setString(4, row.startTime());
+                        ps.setInt(5, row.durationMinutes());
+                        ps.setInt(6, locationIds.get(row.locationName()));
+                        ps.setLong(7, seq);
+                        ps.addBatch();
                     }
-                } else {
 
-                    locationId = getOrInsertLocation(conn, locationName, x, y);
+                    int[] counts;
+                    String error = null;
+                    try {
+                        counts = ps.executeBatch();
+                    } catch (BatchUpdateException e) {
+                        // The driver keeps going after a failed row, so the counts still line up with the chunk.
+                        counts = e.getUpdateCounts();
+                        error = e.getMessage();
+                    }
+                    for (int k = 0; k < chunk.size(); k++) {
+                        if (k < counts.length && counts[k] != Statement.EXECUTE_FAILED) {
+                            inserted++;
+                        } else {
+                            failures.add(new BatchResult.RowFailure(chunk.get(k), error != null ? error : "Not executed"));
+                        }
+                    }
                 }
-            }
-
 
-            String sql = "UPDATE timetable_entries SET course_id = ?, type = ?, location_id = ? WHERE day = ? AND start_time = ? AND course_id = ?";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, newCourseId);
-                ps.setString(2, newType);
-                ps.setInt(3, locationId);
-                ps.setString(4, day);
-                ps.setString(5, startTime);
-                ps.setInt(6, oldCourseId);
-                ps.executeUpdate();
+                c.commit();
+                IdResolver ids = resolver(dataSource);
+                courseIds.forEach(ids::rememberCourse);
+                for (int i : valid) {
+                    NewTimetableEntry row = rows.get(i);
+                    ids.rememberLocation(row.locationName(), locationIds.get(row.locationName()), row.x(), row.y());
+                }
+                failures.sort(Comparator.comparingInt(BatchResult.RowFailure::index));
+                return new BatchResult(inserted, failures);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
             }
         } catch (SQLException e) {
-            throw new IOException("Update failed: " + e.getMessage(), e);
+            throw new IOException("Bulk insert failed: " + e.getMessage(), e);
         }
     }
 
+    // Course names are unique (case-insensitively, like the column's collation); missing ones are created.
+    private Map<String, Integer> resolveCourseIds(PooledConnection conn, List<NewTimetableEntry> rows) throws SQLException {
+        Map<String, String> facultyByCourse = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (NewTimetableEntry row : rows) facultyByCourse.putIfAbsent(row.courseName(), row.faculty());
 
-    public void deleteTimetableEntry(String courseName, String day, String startTime, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-
-            int courseId = -1;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM courses WHERE name = ?")) {
-                ps.setString(1, courseName);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) courseId = rs.getInt("id");
-            }
-
-            if (courseId != -1) {
-                String sql = "DELETE FROM timetable_entries WHERE course_id = ? AND day = ? AND start_time = ?";
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setInt(1, courseId);
-                    ps.setString(2, day);
-                    ps.setString(3, startTime);
-                    ps.executeUpdate();
-                }
+        Map<String, Integer> ids = selectIds(conn, "courses", facultyByCourse.keySet());
+        List<String> missing = facultyByCourse.keySet().stream().filter(n -> !ids.containsKey(n)).toList();
+        if (!missing.isEmpty()) {
+            PreparedStatement insert = conn.prepare("INSERT INTO courses (name, faculty) VALUES (?, ?) ON DUPLICATE KEY UPDATE name = name");
+            for (String name : missing) {
+                insert.setString(1, name);
+                insert.setString(2, facultyByCourse.get(name));
+                insert.addBatch();
             }
-        } catch (SQLException e) {
-            throw new IOException("Delete failed: " + e.getMessage(), e);
+            insert.executeBatch();
+            ids.putAll(selectIds(conn, "courses", missing));
         }
+        return ids;
     }
 
-
-    public void createStudentIfNotExists(String name, String faculty, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-            try (PreparedStatement check = conn.prepareStatement("SELECT 1 FROM students WHERE name = ?")) {
-                check.setString(1, name);
-                if (check.executeQuery().next()) return;
+    // Mirrors IdResolver.locationId for a whole batch: existing locations move to the coordinates of the last row naming them.
+    private Map<String, Integer> resolveLocationIds(PooledConnection conn, List<NewTimetableEntry> rows, long seq) throws SQLException {
+        Map<String, int[]> coords = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (NewTimetableEntry row : rows) coords.put(row.locationName(), new int[]{row.x(), row.y()});
+
+        Map<String, Integer> ids = selectIds(conn, "locations", coords.keySet());
+        List<String> missing = coords.keySet().stream().filter(n -> !ids.containsKey(n)).toList();
+
+        if (!ids.isEmpty()) {
+            // Only locations that actually move get the new change sequence.
+            PreparedStatement update = conn.prepare("UPDATE locations SET change_seq = IF(x <=> ? AND y <=> ?, change_seq, ?), x = ?, y = ? WHERE id = ?");
+            for (Map.Entry<String, Integer> e : ids.entrySet()) {
+                int[] xy = coords.get(e.getKey());
+                update.setInt(1, xy[0]);
+                update.setInt(2, xy[1]);
+                update.setLong(3, seq);
+                update.setInt(4, xy[0]);
+                update.setInt(5, xy[1]);
+                update.setInt(6, e.getValue());
+                update.addBatch();
             }
-            try (PreparedStatement insert = conn.prepareStatement("INSERT INTO students (name, faculty) VALUES (?, ?)")) {
+            update.executeBatch();
+        }
+        if (!missing.isEmpty()) {
+            PreparedStatement insert = conn.prepare("INSERT INTO locations (name, code, x, y, change_seq) VALUES (?, 'GEN', ?, ?, ?)");
+            for (String name : missing) {
+                int[] xy = coords.get(name);
                 insert.setString(1, name);
-                insert.setString(2, faculty);
-                insert.executeUpdate();
+                insert.setInt(2, xy[0]);
+                insert.setInt(3, xy[1]);
+                insert.setLong(4, seq);
+                insert.addBatch();
             }
-        } catch (SQLException e) {
-            throw new IOException("Auto-create failed: " + e.getMessage(), e);
+            insert.executeBatch();
+            ids.putAll(selectIds(conn, "locations", missing));
         }
+        return ids;
     }
 
-
-    private int getOrInsertCourse(Connection conn, String name, String faculty) throws SQLException {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM courses WHERE name = ?")) {
-            ps.setString(1, name);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getInt("id");
+    // SELECT id, name ... WHERE name IN (...), chunked; the lowest id wins when a name appears twice.
+    private Map<String, Integer> selectIds(PooledConnection conn, String table, Collection<String> names) throws SQLException {
+        Map<String, Integer> ids = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> all = new ArrayList<>(names);
+        for (int from = 0; from < all.size(); from += BATCH_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(from + BATCH_SIZE, all.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            PreparedStatement ps = conn.prepare("SELECT id, name FROM " + table + " WHERE name IN (" + placeholders + ") ORDER BY id");
+            for (int i = 0; i < chunk.size(); i++) ps.setString(i + 1, chunk.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.putIfAbsent(rs.getString("name"), rs.getInt("id"));
+            }
         }
+        return ids;
+    }
 
-        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO courses (name, faculty) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, name);
-            ps.setString(2, faculty);
-            ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            rs.next();
-            return rs.getInt(1);
+
+    @Override
+    public void updateTimetableEntry(int entryId, int expectedVersion,
+                                     String newCourseName, String newType,
+                                     String locationName, int x, int y,
+                                     String faculty, String dataSource) throws IOException {
+        IdResolver ids = resolver(dataSource);
+        try (PooledConnection conn = connect(dataSource)) {
+            inTransaction(conn, () -> {
+                long seq = nextChangeSeq(conn);
+                int newCourseId = ids.courseId(conn, newCourseName, faculty);
+                int locationId = ids.locationId(conn, locationName, x, y, seq);
+
+                PreparedStatement current = conn.prepare("SELECT day, start_time, duration_minutes FROM timetable_entries WHERE id = ? AND version = ?");
+                current.setInt(1, entryId);
+                current.setInt(2, expectedVersion);
+                try (ResultSet rs = current.executeQuery()) {
+                    if (!rs.next()) throw new StaleEntryException(entryId);
+                    String start = rs.getTime("start_time").toString();
+                    checkConflicts(conn, new TimetableEntry(entryId, expectedVersion, newCourseName, ClassType.valueOf(newType.toUpperCase()),
+                            rs.getString("day"), start.length() > 5 ? start.substring(0, 5) : start,
+                            rs.getInt("duration_minutes"), locationName), newCourseId, locationId);
+                }
+
+                // Moving the entry to another faculty's course removes it from the old faculty's view.
+                PreparedStatement tomb = conn.prepare("""
+                        INSERT INTO entry_tombstones (seq, entry_id, faculty)
+                        SELECT ?, t.id, c.faculty FROM timetable_entries t JOIN courses c ON t.course_id = c.id
+                        WHERE t.id = ? AND t.version = ? AND c.faculty <> (SELECT faculty FROM courses WHERE id = ?)
+                        """);
+                tomb.setLong(1, seq);
+                tomb.setInt(2, entryId);
+                tomb.setInt(3, expectedVersion);
+                tomb.setInt(4, newCourseId);
+                tomb.executeUpdate();
+
+                String sql = "UPDATE timetable_entries SET course_id = ?, type = ?, location_id = ?, version = version + 1, change_seq = ? WHERE id = ? AND version = ?";
+                PreparedStatement ps = conn.prepare(sql);
+                ps.setInt(1, newCourseId);
+                ps.setString(2, newType);
+                ps.setInt(3, locationId);
+                ps.setLong(4, seq);
+                ps.setInt(5, entryId);
+                ps.setInt(6, expectedVersion);
+                if (ps.executeUpdate() == 0) throw new StaleEntryException(entryId);
+                return null;
+            });
+        } catch (SQLException | StaleEntryException | ScheduleConflictException e) {
+            ids.forgetCourse(newCourseName);
+            ids.forgetLocation(locationName);
+            if (e instanceof StaleEntryException || e instanceof ScheduleConflictException) throw (IOException) e;
+            throw new IOException("Update failed: " + e.getMessage(), e);
         }
     }
 
-    private int getOrInsertLocation(Connection conn, String name, int x, int y) throws SQLException {
-        try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM locations WHERE name = ?")) {
-            ps.setString(1, name);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getInt("id");
+
+    @Override
+    public void deleteTimetableEntry(int entryId, int expectedVersion, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            inTransaction(conn, () -> {
+                long seq = nextChangeSeq(conn);
+                PreparedStatement tomb = conn.prepare("""
+                        INSERT INTO entry_tombstones (seq, entry_id, faculty)
+                        SELECT ?, t.id, c.faculty FROM timetable_entries t JOIN courses c ON t.course_id = c.id
+                        WHERE t.id = ? AND t.version = ?
+                        """);
+                tomb.setLong(1, seq);
+                tomb.setInt(2, entryId);
+                tomb.setInt(3, expectedVersion);
+                tomb.executeUpdate();
+
+                PreparedStatement ps = conn.prepare("DELETE FROM timetable_entries WHERE id = ? AND version = ?");
+                ps.setInt(1, entryId);
+                ps.setInt(2, expectedVersion);
+                if (ps.executeUpdate() == 0) throw new StaleEntryException(entryId);
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IOException("Delete failed: " + e.getMessage(), e);
         }
+    }
 
-        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO locations (name, code, x, y) VALUES (?, 'GEN', ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
-            ps.setString(1, name);
-            ps.setInt(2, x);
-            ps.setInt(3, y);
-            ps.executeUpdate();
-            ResultSet rs = ps.getGeneratedKeys();
-            rs.next();
-            return rs.getInt(1);
+
+    @Override
+    public void createStudentIfNotExists(String name, String faculty, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            PreparedStatement check = conn.prepare("SELECT 1 FROM students WHERE name = ?");
+            check.setString(1, name);
+            try (ResultSet rs = check.executeQuery()) {
+                if (rs.next()) return;
+            }
+            PreparedStatement insert = conn.prepare("INSERT INTO students (name, faculty) VALUES (?, ?)");
+            insert.setString(1, name);
+            insert.setString(2, faculty);
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            throw new IOException("Auto-create failed: " + e.getMessage(), e);
         }
     }
 
-    public void renameCourse(String oldName, String newName, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
 
-            try (PreparedStatement ps = conn.prepareStatement("UPDATE courses SET name = ? WHERE name = ?")) {
+    @Override
+    public void renameCourse(String oldName, String newName, String dataSource) throws IOException {
+        try (PooledConnection conn = connect(dataSource)) {
+            inTransaction(conn, () -> {
+                long seq = nextChangeSeq(conn);
+                PreparedStatement ps = conn.prepare("UPDATE courses SET name = ? WHERE name = ?");
                 ps.setString(1, newName);
                 ps.setString(2, oldName);
                 ps.executeUpdate();
-            }
-        } catch (SQLException e) { throw new IOException(e); }
+
+                // Entries show the course name, so every entry of the course counts as changed.
+                PreparedStatement touch = conn.prepare("UPDATE timetable_entries SET change_seq = ? WHERE course_id = (SELECT id FROM courses WHERE name = ?)");
+                touch.setLong(1, seq);
+                touch.setString(2, newName);
+                touch.executeUpdate();
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IOException(e);
+        } finally {
+            resolver(dataSource).forgetCourse(oldName);
+            resolver(dataSource).forgetCourse(newName);
+        }
     }
 
+    @Override
     public void deleteCourse(String courseName, String dataSource) throws IOException {
-        try (Connection conn = DriverManager.getConnection(dataSource)) {
-
-            int courseId = -1;
-            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM courses WHERE name = ?")) {
-                ps.setString(1, courseName);
-                ResultSet rs = ps.executeQuery();
-                if (rs.next()) courseId = rs.getInt("id");
-            }
+        try (PooledConnection conn = connect(dataSource)) {
 
+            int courseId = resolver(dataSource).findCourseId(conn, courseName);
             if (courseId != -1) {
+                inTransaction(conn, () -> {
+                    long seq = nextChangeSeq(conn);
+                    PreparedStatement tomb = conn.prepare("""
+                            INSERT INTO entry_tombstones (seq, entry_id, faculty)
+                            SELECT ?, t.id, c.faculty FROM timetable_entries t JOIN courses c ON t.course_id = c.id
+                            WHERE c.id = ?
+                            """);
+                    tomb.setLong(1, seq);
+                    tomb.setInt(2, courseId);
+                    tomb.executeUpdate();
+
+                    PreparedStatement entries = conn.prepare("DELETE FROM timetable_entries WHERE course_id = ?");
+                    entries.setInt(1, courseId);
+                    entries.executeUpdate();
+
+                    PreparedStatement course = conn.prepare("DELETE FROM courses WHERE id = ?");
+                    course.setInt(1, courseId);
+                    course.executeUpdate();
+                    return null;
+                });
+            }
+        } catch (SQLException e) {
+            throw new IOException(e);
+        } finally {
+            resolver(dataSource).forgetCourse(courseName);
+        }
+    }
 
-                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM timetable_entries WHERE course_id = ?")) {
-                    ps.setInt(1, courseId);
-                    ps.executeUpdate();
-                }
+    private interface SqlWork<T> {
+        T run() throws SQLException, IOException;
+    }
 
-                try (PreparedStatement ps = conn.prepareStatement("DELETE FROM courses WHERE id = ?")) {
-                    ps.setInt(1, courseId);
-                    ps.executeUpdate();
-                }
-            }
-        } catch (SQLException e) { throw new IOException(e); }
+    // Runs work as one transaction on conn: committed if it returns, rolled back if it throws.
+    private static <T> T inTransaction(PooledConnection conn, SqlWork<T> work) throws SQLException, IOException {
+        Connection c = conn.connection();
+        c.setAutoCommit(false);
+        try {
+            T result = work.run();
+            c.commit();
+            return result;
+        } catch (SQLException | IOException | RuntimeException e) {
+            c.rollback();
+            throw e;
+        } finally {
+            c.setAutoCommit(true);
+        }
     }
 
     @Override public void save(DataSnapshot data, String ds) throws IOException {}
-}
\ No newline at end of file
+}
@@ -0,0 +1,183 @@
+package org.example;
+
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs background loads on virtual threads and hands their results to the FX thread.
+ * <p>
+ * Loads go through a {@link Lane}, one per thing being shown. A lane is latest-wins: a new load
+ * cancels the one before it, and the result of a cancelled load is never delivered, so loads that
+ * finish out of order can't put older data on screen. A load waits {@code coalesceMillis} before
+ * it starts, and loads submitted in that time replace it, so a burst of refreshes costs one load.
+ * <p>
+ * Cancellation is cooperative: a running load stops at its next {@link Ticket#checkCancelled()}
+ * rather than being interrupted, which would close the database connection it is reading from.
+ */
+public final class LoadExecutor implements AutoCloseable {
+
+    public static final long DEFAULT_COALESCE_MILLIS = 50;
+
+    private static final LoadExecutor SHARED = new LoadExecutor(DEFAULT_COALESCE_MILLIS, Platform::runLater);
+
+    /** A load; it should call {@link Ticket#checkCancelled()} between its steps. */
+    @FunctionalInterface
+    public interface Load<T> {
+        T run(Ticket ticket) throws IOException;
+    }
+
+    /** Load counts and latencies; latency runs from submitting a load to its result being delivered. */
+    public record Stats(long submitted, long coalesced, long cancelled, long delivered, long failed,
+                        double avgLatencyMillis, double maxLatencyMillis) {}
+
+    private final long coalesceMillis;
+    private final Executor deliver;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService workers;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /** @param deliver runs results and errors; {@code Platform::runLater} for anything that touches nodes */
+    public LoadExecutor(long coalesceMillis, Executor deliver) {
+        this.coalesceMillis = coalesceMillis;
+        this.deliver = deliver;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("load-", 0).factory());
+    }
+
+    /** The executor the views share, delivering on the FX thread. */
+    public static LoadExecutor shared() {
+        return SHARED;
+    }
+
+    public Lane lane(String name) {
+        return new Lane(name);
+    }
+
+    public Stats stats() {
+        long n = delivered.get();
+        return new Stats(submitted.get(), coalesced.get(), cancelled.get(), n, failed.get(),
+                n == 0 ? 0 : totalLatencyNanos.get() / 1e6 / n, maxLatencyNanos.get() / 1e6);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void recordLatency(long nanos) {
+        delivered.incrementAndGet();
+        totalLatencyNanos.addAndGet(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /** Handed to a load so it can tell that a newer one has replaced it. */
+    public static final class Ticket {
+        private final long submittedAt = System.nanoTime();
+        private volatile boolean cancelled;
+        private volatile boolean finished;
+        private boolean started; // guarded by the lane
+        private ScheduledFuture<?> start; // guarded by the lane
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void checkCancelled() {
+            if (cancelled) throw new CancellationException();
+        }
+    }
+
+    /** A latest-wins sequence of loads. Thread-safe. */
+    public final class Lane {
+        private final String name;
+        private Ticket current; // guarded by this
+
+        private Lane(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Replaces whatever this lane was loading with {@code load}. Unless a newer load replaces it
+         * in turn, its result goes to {@code onResult}, or its failure to {@code onError}.
+         */
+        public synchronized <T> void submit(Load<T> load, Consumer<T> onResult, Consumer<IOException> onError) {
+            submitted.incrementAndGet();
+            cancelCurrent();
+            Ticket ticket = new Ticket();
+            current = ticket;
+            ticket.start = timer.schedule(() -> start(ticket, load, onResult, onError), coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /** Cancels the pending or running load, e.g. when the view showing its result goes away. */
+        public synchronized void cancel() {
+            cancelCurrent();
+            current = null;
+        }
+
+        private void cancelCurrent() {
+            if (current == null || current.cancelled || current.finished) return;
+            current.cancelled = true;
+            if (current.started) {
+                cancelled.incrementAndGet();
+            } else {
+                current.start.cancel(false);
+                coalesced.incrementAndGet();
+            }
+        }
+
+        private synchronized <T> void start(Ticket ticket, Load<T> load, Consumer<T> onResult, Consumer<IOException> onError) {
+            if (ticket.cancelled) return;
+            ticket.started = true;
+            workers.execute(() -> run(ticket, load, onResult, onError));
+        }
+
+        private <T> void run(Ticket ticket, Load<T> load, Consumer<T> onResult, Consumer<IOException> onError) {
+            try {
+                T result = load.run(ticket);
+                // Checked again where the result is used: a newer load may have been submitted meanwhile.
+                deliver.execute(() -> {
+                    if (ticket.cancelled) return;
+                    recordLatency(System.nanoTime() - ticket.submittedAt);
+                    onResult.accept(result);
+                });
+            } catch (CancellationException ignored) {
+                // Superseded; the load that replaced it delivers instead.
+            } catch (IOException e) {
+                fail(ticket, e, onError);
+            } catch (RuntimeException e) {
+                fail(ticket, new IOException("Load '" + name + "' failed: " + e.getMessage(), e), onError);
+            } finally {
+                ticket.finished = true;
+            }
+        }
+
+        private void fail(Ticket ticket, IOException e, Consumer<IOException> onError) {
+            failed.incrementAndGet();
+            deliver.execute(() -> {
+                if (!ticket.cancelled) onError.accept(e);
+            });
+        }
+    }
+}
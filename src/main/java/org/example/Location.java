@@ -5,6 +5,9 @@ import java.util.Objects;
 import java.util.UUID;
 
 public class Location implements Serializable {
+    // What the class had before its id constructor was added, so locations saved then still read back.
+    private static final long serialVersionUID = 1096670503607585981L;
+
     private String id;
     private String name;
     private String building;
@@ -21,6 +24,15 @@ public class Location implements Serializable {
         this.y = y;
     }
 
+    // used in JdbcStorage.java, where the id is the database row id
+    public Location(String id, String name, String building, int x, int y) {
+        this.id = Objects.requireNonNull(id);
+        this.name = Objects.requireNonNull(name);
+        this.building = building;
+        this.x = x;
+        this.y = y;
+    }
+
     public Location(int id, String name, int x, int y) {
         this.id = String.valueOf(id);
         this.name = name;
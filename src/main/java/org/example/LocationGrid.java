@@ -0,0 +1,213 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Locations bucketed into square cells of their coordinates, for nearest, radius and box queries
+ * that look at a handful of cells instead of every room. Locations are tracked by id, so putting a
+ * location again after it moved simply re-files it.
+ * <p>
+ * A query that would walk more cells than are occupied walks the occupied ones instead, so a few
+ * far-away outliers can't make queries slow.
+ * <p>
+ * {@link #copy()} shares the cells between the two grids, and a change copies only the cell it
+ * touches. A {@link #freeze() frozen} grid refuses changes and can be read from any thread.
+ */
+public class LocationGrid {
+
+    private static final int DEFAULT_CELL_SIZE = 50;
+
+    private final int cellSize;
+    private final ShardedMap<Long, List<Location>> cells; // the lists are replaced rather than changed
+    private final ShardedMap<String, Location> byId;
+    // Bounds of the cells ever used; not shrunk on removal, which only makes queries look further.
+    private int minCx = Integer.MAX_VALUE, maxCx = Integer.MIN_VALUE, minCy = Integer.MAX_VALUE, maxCy = Integer.MIN_VALUE;
+
+    public LocationGrid(int cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("Cell size must be positive");
+        this.cellSize = cellSize;
+        this.cells = new ShardedMap<>();
+        this.byId = new ShardedMap<>();
+    }
+
+    private LocationGrid(LocationGrid from) {
+        cellSize = from.cellSize;
+        cells = from.cells.copy();
+        byId = from.byId.copy();
+        minCx = from.minCx;
+        maxCx = from.maxCx;
+        minCy = from.minCy;
+        maxCy = from.maxCy;
+    }
+
+    /**
+     * A grid sized so that a typical cell holds a few of {@code locations}. The size comes from the
+     * box holding the middle 80% of the coordinates, so a few outliers don't make every cell huge.
+     */
+    public static LocationGrid of(Collection<Location> locations) {
+        int cellSize = DEFAULT_CELL_SIZE;
+        int n = locations.size();
+        if (n > 1) {
+            int[] xs = locations.stream().mapToInt(Location::getX).sorted().toArray();
+            int[] ys = locations.stream().mapToInt(Location::getY).sorted().toArray();
+            int lo = n / 10, hi = n - 1 - n / 10;
+            double area = Math.max(1.0, (double) (xs[hi] - xs[lo]) * (ys[hi] - ys[lo]));
+            double inBox = (double) (hi - lo + 1) * (hi - lo + 1) / n; // points in both ranges if x and y are independent
+            cellSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 4, 2 * Math.sqrt(area / inBox)));
+        }
+        LocationGrid grid = new LocationGrid(cellSize);
+        locations.forEach(grid::put);
+        return grid;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    /** A grid with the same locations; later changes to either one don't show in the other. */
+    public LocationGrid copy() {
+        return new LocationGrid(this);
+    }
+
+    public void freeze() {
+        cells.freeze();
+        byId.freeze();
+    }
+
+    /** Adds the location, or moves it if a location with the same id is already in the grid. */
+    public void put(Location location) {
+        remove(location.getId());
+        int cx = cellOf(location.getX()), cy = cellOf(location.getY());
+        long key = key(cx, cy);
+        List<Location> cell = cells.get(key);
+        List<Location> grown = new ArrayList<>(cell == null ? 1 : cell.size() + 1);
+        if (cell != null) grown.addAll(cell);
+        grown.add(location);
+        cells.put(key, grown);
+        byId.put(location.getId(), location);
+        minCx = Math.min(minCx, cx);
+        maxCx = Math.max(maxCx, cx);
+        minCy = Math.min(minCy, cy);
+        maxCy = Math.max(maxCy, cy);
+    }
+
+    public boolean remove(String id) {
+        Location old = byId.remove(id);
+        if (old == null) return false;
+        long key = key(cellOf(old.getX()), cellOf(old.getY()));
+        List<Location> cell = cells.get(key);
+        if (cell.size() == 1) cells.remove(key);
+        else cells.put(key, cell.stream().filter(l -> l != old).toList());
+        return true;
+    }
+
+    /** Up to {@code k} locations closest to {@code (x, y)}, closest first. */
+    public List<Location> nearest(int x, int y, int k) {
+        if (k <= 0 || byId.size() == 0) return List.of();
+        Comparator<Location> byDistance = Comparator.comparingLong(l -> distanceSquared(l, x, y));
+        PriorityQueue<Location> best = new PriorityQueue<>(k + 1, byDistance.reversed());
+        Consumer<Location> offer = l -> {
+            best.add(l);
+            if (best.size() > k) best.poll();
+        };
+
+        int cx = cellOf(x), cy = cellOf(y);
+        int lastRing = Math.max(Math.max(cx - minCx, maxCx - cx), Math.max(cy - minCy, maxCy - cy));
+        for (int ring = 0; ring <= lastRing; ring++) {
+            // Cells from this ring outwards are at least (ring - 1) * cellSize away.
+            if (best.size() == k && ring > 0 && distanceSquared(best.peek(), x, y) <= square((long) (ring - 1) * cellSize)) break;
+            if (8L * ring > cells.size()) {
+                // Cheaper to visit every occupied cell not yet seen.
+                final int seen = ring;
+                cells.forEach((key, list) -> {
+                    if (Math.max(Math.abs((int) (key >> 32) - cx), Math.abs((int) (long) key - cy)) >= seen) list.forEach(offer);
+                });
+                break;
+            }
+            forRing(cx, cy, ring, offer);
+        }
+
+        List<Location> result = new ArrayList<>(best);
+        result.sort(byDistance);
+        return result;
+    }
+
+    /** Locations at most {@code radius} from {@code (x, y)}, closest first. */
+    public List<Location> within(int x, int y, double radius) {
+        List<Location> result = new ArrayList<>();
+        if (radius < 0) return result;
+        double r2 = radius * radius;
+        int r = (int) Math.ceil(radius);
+        forBox(x - r, y - r, x + r, y + r, l -> {
+            if (distanceSquared(l, x, y) <= r2) result.add(l);
+        });
+        result.sort(Comparator.comparingLong(l -> distanceSquared(l, x, y)));
+        return result;
+    }
+
+    /** Locations with {@code minX <= x <= maxX} and {@code minY <= y <= maxY}, in no particular order. */
+    public List<Location> inBox(int minX, int minY, int maxX, int maxY) {
+        List<Location> result = new ArrayList<>();
+        forBox(minX, minY, maxX, maxY, l -> {
+            if (l.getX() >= minX && l.getX() <= maxX && l.getY() >= minY && l.getY() <= maxY) result.add(l);
+        });
+        return result;
+    }
+
+    // Visits every location in the cells overlapping the box, and possibly some others.
+    private void forBox(int minX, int minY, int maxX, int maxY, Consumer<Location> visit) {
+        if (minX > maxX || minY > maxY) return;
+        int x0 = Math.max(cellOf(minX), minCx), x1 = Math.min(cellOf(maxX), maxCx);
+        int y0 = Math.max(cellOf(minY), minCy), y1 = Math.min(cellOf(maxY), maxCy);
+        if (x0 > x1 || y0 > y1) return;
+        if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > cells.size()) {
+            cells.forEach((key, list) -> list.forEach(visit));
+            return;
+        }
+        for (int i = x0; i <= x1; i++) {
+            for (int j = y0; j <= y1; j++) visitCell(i, j, visit);
+        }
+    }
+
+    private void forRing(int cx, int cy, int ring, Consumer<Location> visit) {
+        if (ring == 0) {
+            visitCell(cx, cy, visit);
+            return;
+        }
+        for (int i = -ring; i <= ring; i++) {
+            visitCell(cx + i, cy - ring, visit);
+            visitCell(cx + i, cy + ring, visit);
+        }
+        for (int j = -ring + 1; j <= ring - 1; j++) {
+            visitCell(cx - ring, cy + j, visit);
+            visitCell(cx + ring, cy + j, visit);
+        }
+    }
+
+    private void visitCell(int cx, int cy, Consumer<Location> visit) {
+        List<Location> cell = cells.get(key(cx, cy));
+        if (cell != null) cell.forEach(visit);
+    }
+
+    private int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return (long) cx << 32 | (cy & 0xffffffffL);
+    }
+
+    private static long distanceSquared(Location l, int x, int y) {
+        long dx = l.getX() - (long) x, dy = l.getY() - (long) y;
+        return dx * dx + dy * dy;
+    }
+
+    private static long square(long v) {
+        return v * v;
+    }
+}
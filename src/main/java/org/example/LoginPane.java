@@ -9,15 +9,15 @@ public class LoginPane extends VBox {
 
 
     public interface LoginCallback {
-        void onLogin(boolean success, boolean isAdmin, String faculty);
+        void onLogin(boolean success, boolean isAdmin, String faculty, String name);
     }
 
 
-    private final JdbcStorage storage;
+    private final ScheduleStorage storage;
     private final String dataSource;
     private final LoginCallback callback;
 
-    public LoginPane(JdbcStorage storage, String dataSource, LoginCallback onResult) {
+    public LoginPane(ScheduleStorage storage, String dataSource, LoginCallback onResult) {
         this.storage = storage;
         this.dataSource = dataSource;
         this.callback = onResult;
@@ -69,7 +69,7 @@ public class LoginPane extends VBox {
                         status.setText("Admins must specify a Faculty.");
                         return;
                     }
-                    callback.onLogin(true, true, faculty);
+                    callback.onLogin(true, true, faculty, name);
                 } else {
                     status.setText("Invalid admin password.");
                 }
@@ -83,7 +83,7 @@ public class LoginPane extends VBox {
 
                 if (exists) {
 
-                    callback.onLogin(true, false, faculty);
+                    callback.onLogin(true, false, faculty, name);
                 } else {
 
                     showCreateAccountDialog(name, faculty);
@@ -144,7 +144,7 @@ public class LoginPane extends VBox {
                 try {
 
                     storage.createStudentIfNotExists(newName, newFaculty, dataSource);
-                    callback.onLogin(true, false, newFaculty);
+                    callback.onLogin(true, false, newFaculty, newName);
                     return true;
                 } catch (IOException e) {
                     new Alert(Alert.AlertType.ERROR, "Failed to create account: " + e.getMessage()).show();
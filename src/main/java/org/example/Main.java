@@ -5,23 +5,31 @@ import javafx.stage.Stage;
 
 public class Main extends Application {
 
+    private ScheduleStorage storage;
+
     @Override
     public void start(Stage primaryStage) {
         String envUrl = System.getenv("JDBC_URL");
-        String dataSource = envUrl != null && !envUrl.isBlank()
-                ? envUrl
-                : "jdbc:mysql://localhost:3306/university_schedule?user=root&password=root";
-
-        JdbcStorage storage = new JdbcStorage();
+        String dataDir = System.getenv("SCHEDULE_DATA_DIR");
+        String dataSource;
+        if (dataDir != null && !dataDir.isBlank()) {
+            dataSource = dataDir;
+            storage = new FileStorage();
+        } else {
+            dataSource = envUrl != null && !envUrl.isBlank()
+                    ? envUrl
+                    : "jdbc:mysql://localhost:3306/university_schedule?user=root&password=root";
+            storage = new CachingStorage(new JdbcStorage());
+        }
 
         showLoginScreen(primaryStage, storage, dataSource);
     }
 
-    private void showLoginScreen(Stage stage, JdbcStorage storage, String dataSource) {
+    private void showLoginScreen(Stage stage, ScheduleStorage storage, String dataSource) {
 
-        LoginPane login = new LoginPane(storage, dataSource, (success, isAdmin, userFaculty) -> {
+        LoginPane login = new LoginPane(storage, dataSource, (success, isAdmin, userFaculty, name) -> {
             if (success) {
-                ScheduleView sv = new ScheduleView(storage, dataSource, isAdmin, userFaculty, () -> {
+                ScheduleView sv = new ScheduleView(storage, dataSource, isAdmin, userFaculty, isAdmin ? null : name, () -> {
                     showLoginScreen(stage, storage, dataSource);
                 });
 
@@ -42,6 +50,11 @@ public class Main extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (storage != null) storage.close();
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
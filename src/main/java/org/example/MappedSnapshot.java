@@ -0,0 +1,146 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Read-only view of a file written by {@link BinarySnapshotStorage}. Opening it only checks the
+ * header; rows and strings are decoded when they are asked for, straight out of the buffer, and
+ * each string is decoded at most once. Safe to share between threads.
+ */
+public class MappedSnapshot {
+
+    private static final DayOfWeek[] DAYS = DayOfWeek.values();
+    private static final ClassType[] TYPES = ClassType.values();
+
+    private final ByteBuffer buf;
+    private final long version;
+    private final int studentCount;
+    private final int locationCount;
+    private final int entryCount;
+
+    // Start of each column.
+    private final int stringOffsets;
+    private final int studentNames, studentFaculties;
+    private final int locationIds, locationNames, locationBuildings, locationXs, locationYs;
+    private final int entryIds, entryVersions, entryCourses, entryLocations, entryStarts, entryDurations, entryDays, entryTypes;
+    private final int stringBytes;
+
+    private final String[] strings;
+
+    /** Maps the file; the mapping lives as long as this object does. */
+    public static MappedSnapshot open(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedSnapshot(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public MappedSnapshot(ByteBuffer buffer) throws IOException {
+        buf = buffer.slice();
+        if (buf.capacity() < BinarySnapshotStorage.HEADER_BYTES || buf.getInt(0) != BinarySnapshotStorage.MAGIC) {
+            throw new IOException("Not a binary schedule snapshot");
+        }
+        short format = buf.getShort(4);
+        if (format != BinarySnapshotStorage.FORMAT_VERSION) throw new IOException("Unsupported snapshot format " + format);
+        version = buf.getLong(8);
+        int stringCount = buf.getInt(16);
+        studentCount = buf.getInt(20);
+        locationCount = buf.getInt(24);
+        entryCount = buf.getInt(28);
+        int blobLength = buf.getInt(32);
+
+        stringOffsets = BinarySnapshotStorage.HEADER_BYTES;
+        studentNames = stringOffsets + 4 * (stringCount + 1);
+        studentFaculties = studentNames + 4 * studentCount;
+        locationIds = studentFaculties + 4 * studentCount;
+        locationNames = locationIds + 4 * locationCount;
+        locationBuildings = locationNames + 4 * locationCount;
+        locationXs = locationBuildings + 4 * locationCount;
+        locationYs = locationXs + 4 * locationCount;
+        entryIds = locationYs + 4 * locationCount;
+        entryVersions = entryIds + 4 * entryCount;
+        entryCourses = entryVersions + 4 * entryCount;
+        entryLocations = entryCourses + 4 * entryCount;
+        entryStarts = entryLocations + 4 * entryCount;
+        entryDurations = entryStarts + 2 * entryCount;
+        entryDays = entryDurations + 2 * entryCount;
+        entryTypes = entryDays + entryCount;
+        stringBytes = entryTypes + entryCount;
+        if ((long) stringBytes + blobLength != buf.capacity()) throw new IOException("Truncated or corrupt snapshot");
+
+        strings = new String[stringCount];
+    }
+
+    public long getVersion() { return version; }
+    public int studentCount() { return studentCount; }
+    public int locationCount() { return locationCount; }
+    public int entryCount() { return entryCount; }
+
+    public Student student(int i) {
+        return new Student(string(buf.getInt(studentNames + 4 * i)), string(buf.getInt(studentFaculties + 4 * i)));
+    }
+
+    public Location location(int i) {
+        return new Location(string(buf.getInt(locationIds + 4 * i)), string(buf.getInt(locationNames + 4 * i)),
+                string(buf.getInt(locationBuildings + 4 * i)), buf.getInt(locationXs + 4 * i), buf.getInt(locationYs + 4 * i));
+    }
+
+    public TimetableEntry entry(int i) {
+        return new TimetableEntry(buf.getInt(entryIds + 4 * i), buf.getInt(entryVersions + 4 * i),
+                string(buf.getInt(entryCourses + 4 * i)), TYPES[buf.get(entryTypes + i)],
+                day(i).name(), TimetableStore.formatMinutes(startMinutes(i)),
+                durationMinutes(i), string(buf.getInt(entryLocations + 4 * i)));
+    }
+
+    // Single columns, for scans that shouldn't build whole entries.
+    public int entryId(int i) { return buf.getInt(entryIds + 4 * i); }
+    public DayOfWeek day(int i) { return DAYS[buf.get(entryDays + i)]; }
+    public int startMinutes(int i) { return buf.getShort(entryStarts + 2 * i); }
+    public int durationMinutes(int i) { return buf.getShort(entryDurations + 2 * i); }
+    public String courseName(int i) { return string(buf.getInt(entryCourses + 4 * i)); }
+
+    /** Entries decoded one by one as the list is read; nothing is cached. */
+    public List<TimetableEntry> entries() {
+        return new AbstractList<>() {
+            @Override public TimetableEntry get(int index) {
+                if (index < 0 || index >= entryCount) throw new IndexOutOfBoundsException(index);
+                return entry(index);
+            }
+            @Override public int size() { return entryCount; }
+        };
+    }
+
+    public DataSnapshot toDataSnapshot() {
+        DataSnapshot d = new DataSnapshot();
+        d.setVersion(version);
+        for (int i = 0; i < studentCount; i++) d.getStudents().add(student(i));
+        for (int i = 0; i < locationCount; i++) d.addLocation(location(i));
+        TimetableStore store = d.getTimetable();
+        for (int i = 0; i < entryCount; i++) {
+            store.add(entryId(i), buf.getInt(entryVersions + 4 * i), courseName(i), TYPES[buf.get(entryTypes + i)],
+                    day(i), startMinutes(i), durationMinutes(i), string(buf.getInt(entryLocations + 4 * i)));
+        }
+        return d;
+    }
+
+    private String string(int ref) {
+        if (ref < 0) return null;
+        String s = strings[ref];
+        if (s == null) {
+            int from = buf.getInt(stringOffsets + 4 * ref);
+            int to = buf.getInt(stringOffsets + 4 * ref + 4);
+            byte[] b = new byte[to - from];
+            buf.get(stringBytes + from, b);
+            s = new String(b, StandardCharsets.UTF_8);
+            strings[ref] = s; // racing threads decode the same value, so a lost write is harmless
+        }
+        return s;
+    }
+}
@@ -0,0 +1,277 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * An admin's adds, edits and deletes, shown at once and saved in the background.
+ * <p>
+ * Each change is queued and laid over the schedule by {@link #overlay}, so the grid shows it before
+ * it is saved. One writer saves the queue in order, taking in rounds whatever queued up while the
+ * previous round was saved; changes to an entry that is still queued are merged into one write.
+ * Consecutive adds go to {@link ScheduleStorage#addTimetableEntries} as one batch, which like any
+ * batch is not checked for clashes, so callers check the room before adding; every other change is
+ * one storage call. A change that fails to save leaves the overlay, which puts the grid back, and
+ * is reported to {@code onSettled} at the end of its round. A saved one stays in the overlay until
+ * {@link #retire} is called with it once a schedule loaded after the save is shown.
+ * <p>
+ * Added classes carry negative ids until the schedule is reloaded and can't be edited before then.
+ * Thread-safe.
+ */
+final class MutationPipeline {
+
+    /** A change that could not be saved; {@code action} says what it was, e.g. "Adding Algorithms". */
+    record Failure(String action, IOException error) {}
+
+    private enum Kind { ADD, UPDATE, DELETE }
+
+    private enum State { QUEUED, WRITING, SAVED }
+
+    /** One change: the entry as loaded ({@code before}) and as it should be shown ({@code after}). */
+    private static final class Edit {
+        Kind kind;
+        TimetableEntry before; // null for ADD
+        TimetableEntry after; // null for DELETE
+        int x, y;
+        String faculty;
+        boolean shown; // false for a class added to a faculty other than the one on screen
+        State state = State.QUEUED;
+        long seq;
+
+        int entryId() {
+            return after != null ? after.getId() : before.getId();
+        }
+
+        String action() {
+            String name = (after != null ? after : before).getCourseName();
+            return switch (kind) {
+                case ADD -> "Adding " + name;
+                case UPDATE -> "Saving " + name;
+                case DELETE -> "Deleting " + name;
+            };
+        }
+    }
+
+    private final ScheduleStorage storage;
+    private final String dataSource;
+    private final String shownFaculty;
+    private final Executor deliver;
+    private final Consumer<List<Failure>> onSettled;
+    private final List<Edit> edits = new ArrayList<>(); // guarded by this, oldest first
+    private int nextTempId = -1; // guarded by this
+    private long nextSeq; // guarded by this
+    private boolean writing; // guarded by this
+
+    /** @param onSettled run through {@code deliver} after each round of writes, with the changes that failed */
+    MutationPipeline(ScheduleStorage storage, String dataSource, String shownFaculty,
+                     Executor deliver, Consumer<List<Failure>> onSettled) {
+        this.storage = storage;
+        this.dataSource = dataSource;
+        this.shownFaculty = shownFaculty;
+        this.deliver = deliver;
+        this.onSettled = onSettled;
+    }
+
+    synchronized void add(String courseName, ClassType type, String day, String startTime, int duration,
+                          String locationName, int x, int y, String faculty) {
+        Edit e = new Edit();
+        e.kind = Kind.ADD;
+        e.after = new TimetableEntry(nextTempId--, 0, courseName, type, day, startTime, duration, locationName);
+        e.x = x;
+        e.y = y;
+        e.faculty = faculty;
+        e.shown = faculty != null && faculty.equalsIgnoreCase(shownFaculty);
+        enqueue(e);
+    }
+
+    /** @return false if {@code before} is a class added here that hasn't been reloaded yet */
+    synchronized boolean update(TimetableEntry before, String courseName, ClassType type,
+                                String locationName, int x, int y, String faculty) {
+        Edit queued = queuedEdit(before.getId());
+        if (queued != null && queued.kind == Kind.DELETE) return true; // edited in a dialog opened before the delete
+        // Both storages bump the version by one on update, so that is the version a later edit expects.
+        // Merged edits are still one write from the version first loaded; an added class has none yet.
+        int version = queued == null ? before.getVersion() + 1
+                : queued.kind == Kind.ADD ? 0 : queued.before.getVersion() + 1;
+        TimetableEntry after = new TimetableEntry(before.getId(), version, courseName, type,
+                before.getDay(), before.getStartTime(), before.getDurationMinutes(), locationName);
+        if (queued != null) {
+            queued.after = after;
+            queued.x = x;
+            queued.y = y;
+            if (queued.kind == Kind.UPDATE) queued.faculty = faculty;
+            return true;
+        }
+        if (before.getId() < 0) return false;
+        Edit e = new Edit();
+        e.kind = Kind.UPDATE;
+        e.before = before;
+        e.after = after;
+        e.x = x;
+        e.y = y;
+        e.faculty = faculty;
+        e.shown = true;
+        enqueue(e);
+        return true;
+    }
+
+    /** @return false if {@code before} is a class added here that hasn't been reloaded yet */
+    synchronized boolean delete(TimetableEntry before) {
+        Edit queued = queuedEdit(before.getId());
+        if (queued != null && queued.kind == Kind.ADD) {
+            edits.remove(queued);
+            return true;
+        }
+        if (queued != null && queued.kind == Kind.UPDATE) {
+            queued.kind = Kind.DELETE;
+            queued.after = null;
+            return true;
+        }
+        if (queued != null) return true;
+        if (before.getId() < 0) return false;
+        Edit e = new Edit();
+        e.kind = Kind.DELETE;
+        e.before = before;
+        e.shown = true;
+        enqueue(e);
+        return true;
+    }
+
+    /** {@code base} with every change not yet retired applied; {@code base} itself if there are none. */
+    synchronized ScheduleSnapshot overlay(ScheduleSnapshot base) {
+        if (edits.isEmpty()) return base;
+        Map<Integer, TimetableEntry> upserted = new LinkedHashMap<>();
+        Set<Integer> deleted = new LinkedHashSet<>();
+        for (Edit e : edits) {
+            if (!e.shown) continue;
+            if (e.after != null) {
+                upserted.put(e.after.getId(), e.after);
+                deleted.remove(e.after.getId());
+            } else {
+                upserted.remove(e.before.getId());
+                deleted.add(e.before.getId());
+            }
+        }
+        if (upserted.isEmpty() && deleted.isEmpty()) return base;
+        long v = base.getVersion();
+        return base.apply(new ChangeSet(v, v, new ArrayList<>(upserted.values()), new ArrayList<>(deleted), List.of()));
+    }
+
+    /** Marks the changes saved so far; pass it to {@link #retire} once a schedule loaded after now is shown. */
+    synchronized long savedMark() {
+        long mark = -1;
+        for (Edit e : edits) {
+            if (e.state == State.SAVED) mark = e.seq;
+        }
+        return mark;
+    }
+
+    /** Drops the changes saved up to {@code mark} from the overlay; the loaded schedule shows them now. */
+    synchronized void retire(long mark) {
+        edits.removeIf(e -> e.state == State.SAVED && e.seq <= mark);
+    }
+
+    // Only a change the writer hasn't taken yet can still be merged into.
+    private Edit queuedEdit(int entryId) {
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            Edit e = edits.get(i);
+            if (e.entryId() == entryId) return e.state == State.QUEUED ? e : null;
+        }
+        return null;
+    }
+
+    private void enqueue(Edit e) {
+        e.seq = nextSeq++;
+        edits.add(e);
+        if (writing) return;
+        writing = true;
+        Thread.ofVirtual().name("schedule-writer").start(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            List<Edit> round = new ArrayList<>();
+            synchronized (this) {
+                for (Edit e : edits) {
+                    if (e.state == State.QUEUED) round.add(e);
+                }
+                if (round.isEmpty()) {
+                    writing = false;
+                    return;
+                }
+                round.forEach(e -> e.state = State.WRITING);
+            }
+
+            List<Failure> failures = new ArrayList<>();
+            List<Edit> failed = new ArrayList<>();
+            List<Edit> adds = new ArrayList<>();
+            for (Edit e : round) {
+                if (e.kind == Kind.ADD) {
+                    adds.add(e);
+                    continue;
+                }
+                writeAdds(adds, failures, failed);
+                try {
+                    write(e);
+                } catch (IOException ex) {
+                    failures.add(new Failure(e.action(), ex));
+                    failed.add(e);
+                } catch (RuntimeException ex) {
+                    failures.add(new Failure(e.action(), new IOException(ex.getMessage(), ex)));
+                    failed.add(e);
+                }
+            }
+            writeAdds(adds, failures, failed);
+            synchronized (this) {
+                for (Iterator<Edit> it = edits.iterator(); it.hasNext(); ) {
+                    Edit e = it.next();
+                    if (failed.contains(e)) it.remove();
+                    else if (e.state == State.WRITING) e.state = State.SAVED;
+                }
+            }
+            deliver.execute(() -> onSettled.accept(failures));
+        }
+    }
+
+    // Saves a run of adds in one batch and empties it; rows the storage rejects fail on their own.
+    private void writeAdds(List<Edit> adds, List<Failure> failures, List<Edit> failed) {
+        if (adds.isEmpty()) return;
+        List<NewTimetableEntry> rows = new ArrayList<>(adds.size());
+        for (Edit e : adds) {
+            rows.add(new NewTimetableEntry(e.after.getCourseName(), e.after.getType().name(), e.after.getDay(),
+                    e.after.getStartTime(), e.after.getDurationMinutes(), e.after.getLocationId(), e.x, e.y, e.faculty));
+        }
+        try {
+            BatchResult result = storage.addTimetableEntries(rows, dataSource);
+            for (BatchResult.RowFailure f : result.failures()) {
+                Edit e = adds.get(f.index());
+                failures.add(new Failure(e.action(), new IOException(f.reason())));
+                failed.add(e);
+            }
+        } catch (IOException ex) {
+            for (Edit e : adds) failures.add(new Failure(e.action(), ex));
+            failed.addAll(adds);
+        } catch (RuntimeException ex) {
+            for (Edit e : adds) failures.add(new Failure(e.action(), new IOException(ex.getMessage(), ex)));
+            failed.addAll(adds);
+        }
+        adds.clear();
+    }
+
+    // Adds never get here; see writeAdds.
+    private void write(Edit e) throws IOException {
+        switch (e.kind) {
+            case UPDATE -> storage.updateTimetableEntry(e.before.getId(), e.before.getVersion(), e.after.getCourseName(),
+                    e.after.getType().name(), e.after.getLocationId(), e.x, e.y, e.faculty, dataSource);
+            case DELETE -> storage.deleteTimetableEntry(e.before.getId(), e.before.getVersion(), dataSource);
+        }
+    }
+}
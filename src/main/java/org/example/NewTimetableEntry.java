@@ -0,0 +1,44 @@
+package org.example;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+
+/**
+ * One row for {@link ScheduleStorage#addTimetableEntries}: the same values
+ * {@link ScheduleStorage#addTimetableEntry} takes, minus the data source.
+ */
+public record NewTimetableEntry(String courseName, String type, String day, String startTime,
+                                int durationMinutes, String locationName, int x, int y, String faculty) {
+
+    /** Longest class accepted; also keeps every duration within the binary format's 16-bit columns. */
+    public static final int MAX_DURATION_MINUTES = 12 * 60;
+
+    /** Why this row can't be stored, or null if it can. */
+    public String validationError() {
+        if (courseName == null || courseName.isBlank()) return "Course name is required";
+        if (locationName == null || locationName.isBlank()) return "Location name is required";
+        if (faculty == null || faculty.isBlank()) return "Faculty is required";
+        if (durationMinutes <= 0) return "Duration must be positive";
+        if (durationMinutes > MAX_DURATION_MINUTES) return "Duration can be at most " + MAX_DURATION_MINUTES + " minutes";
+        try {
+            ClassType.valueOf(type.toUpperCase());
+        } catch (RuntimeException e) {
+            return "Unknown class type: " + type;
+        }
+        try {
+            DayOfWeek d = DayOfWeek.valueOf(day.toUpperCase());
+            if (d == DayOfWeek.SATURDAY || d == DayOfWeek.SUNDAY) return "Classes are only held Monday to Friday";
+        } catch (RuntimeException e) {
+            return "Unknown day: " + day;
+        }
+        LocalTime start;
+        try {
+            start = LocalTime.parse(startTime);
+        } catch (RuntimeException e) {
+            return "Invalid start time: " + startTime;
+        }
+        // Availability bitmaps and conflict checks work within one day.
+        if (start.toSecondOfDay() / 60 + durationMinutes > 24 * 60) return "Class would run past midnight";
+        return null;
+    }
+}
@@ -0,0 +1,192 @@
+package org.example;
+
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which rooms are booked when, across every faculty, in five-minute steps.
+ * <p>
+ * For each day and five-minute step there is one bitmap with a bit per room, set while the room
+ * is booked. The rooms free for a whole period are then the complement of the OR of the period's
+ * bitmaps, which takes a few dozen word operations for hundreds of rooms.
+ * <p>
+ * {@link #load} reads every faculty; {@link #refresh} then catches up through
+ * {@link ScheduleStorage#loadChangesSince}, so after the first load only what changed is read.
+ * Thread-safe.
+ */
+public class RoomAvailability {
+
+    private static final int UNIT_MINUTES = 5;
+    private static final int DAY_UNITS = 24 * 60 / UNIT_MINUTES;
+    private static final int DAYS = 7;
+
+    private record Booking(int entryId, int room, int day, int from, int to) {}
+
+    private final List<Location> rooms = new ArrayList<>();
+    private final Map<String, Integer> roomIndex = new HashMap<>(); // by id and by lower-cased name
+    private final Map<Integer, Booking> byEntry = new HashMap<>();
+    private final List<List<Booking>> byRoom = new ArrayList<>();
+    private final Map<String, Long> versions = new HashMap<>(); // faculty -> change version seen
+    private int roomWords;
+    private long[] busy = new long[0]; // [day][unit][room word]
+
+    public RoomAvailability(List<Location> locations) {
+        locations.forEach(this::addRoom);
+    }
+
+    /** Every room and every faculty's entries of {@code dataSource}. */
+    public static RoomAvailability load(ScheduleStorage storage, String dataSource) throws IOException {
+        RoomAvailability availability = new RoomAvailability(List.of());
+        availability.refresh(storage, dataSource);
+        return availability;
+    }
+
+    /**
+     * Brings the bitmaps up to date with {@code dataSource}: faculties seen before are caught up by
+     * delta, new ones are loaded in full.
+     */
+    public void refresh(ScheduleStorage storage, String dataSource) throws IOException {
+        Map<String, Long> seen;
+        synchronized (this) {
+            seen = new HashMap<>(versions);
+        }
+        // Deletions go first: an entry moved between faculties is deleted from one and upserted in the other.
+        List<Integer> deleted = new ArrayList<>();
+        List<TimetableEntry> upserted = new ArrayList<>();
+        List<Location> locations = new ArrayList<>();
+        Map<String, Long> reached = new HashMap<>();
+        // A faculty whose last course was deleted is no longer listed but still has deletions to report.
+        Set<String> faculties = new LinkedHashSet<>(storage.listFaculties(dataSource));
+        faculties.addAll(seen.keySet());
+        for (String faculty : faculties) {
+            Long version = seen.get(faculty);
+            if (version == null) {
+                DataSnapshot s = storage.loadByFaculty(faculty, dataSource);
+                locations.addAll(s.getLocations());
+                upserted.addAll(s.getEntries());
+                reached.put(faculty, s.getVersion());
+            } else {
+                ChangeSet changes = storage.loadChangesSince(faculty, version, dataSource);
+                locations.addAll(changes.upsertedLocations());
+                upserted.addAll(changes.upsertedEntries());
+                deleted.addAll(changes.deletedEntryIds());
+                reached.put(faculty, changes.toVersion());
+            }
+        }
+
+        synchronized (this) {
+            locations.forEach(this::addRoom);
+            deleted.forEach(this::remove);
+            upserted.forEach(this::put);
+            versions.putAll(reached);
+        }
+    }
+
+    /** Books the entry's room for its time, or moves the booking if the entry is already known. */
+    public synchronized void put(TimetableEntry entry) {
+        remove(entry.getId());
+        Integer room = roomOf(entry.getLocationId());
+        DayOfWeek day = entry.getDayOfWeek();
+        int start = entry.getStartMinutes();
+        if (room == null || day == null || start < 0) return;
+        Booking b = new Booking(entry.getId(), room, day.ordinal(), start / UNIT_MINUTES, endUnit(start, entry.getDurationMinutes()));
+        if (b.entryId() != 0) byEntry.put(b.entryId(), b);
+        byRoom.get(room).add(b);
+        setBits(b, true);
+    }
+
+    public synchronized boolean remove(int entryId) {
+        Booking b = byEntry.remove(entryId);
+        if (b == null) return false;
+        List<Booking> bookings = byRoom.get(b.room());
+        bookings.remove(b);
+        // Another booking may overlap this one (a clash imported in bulk), so rebuild the room's day.
+        setBits(new Booking(0, b.room(), b.day(), 0, DAY_UNITS), false);
+        for (Booking other : bookings) {
+            if (other.day() == b.day()) setBits(other, true);
+        }
+        return true;
+    }
+
+    /** Rooms with no booking in {@code [start, start + duration)} on {@code day}, in the order they were added. */
+    public synchronized List<Location> freeRooms(DayOfWeek day, int startMinutes, int durationMinutes) {
+        List<Location> free = new ArrayList<>();
+        if (rooms.isEmpty()) return free;
+        long[] taken = takenDuring(day, startMinutes, durationMinutes);
+        for (int w = 0; w < roomWords; w++) {
+            long bits = ~taken[w];
+            if (w == roomWords - 1 && rooms.size() % 64 != 0) bits &= (1L << rooms.size() % 64) - 1;
+            while (bits != 0) {
+                free.add(rooms.get(w * 64 + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+        return free;
+    }
+
+    /** False if the room is booked at any time in the period or is unknown. */
+    public synchronized boolean isFree(Location room, DayOfWeek day, int startMinutes, int durationMinutes) {
+        Integer r = roomOf(room.getId());
+        if (r == null) r = roomOf(room.getName());
+        if (r == null) return false;
+        return (takenDuring(day, startMinutes, durationMinutes)[r >>> 6] & 1L << r) == 0;
+    }
+
+    private long[] takenDuring(DayOfWeek day, int startMinutes, int durationMinutes) {
+        long[] taken = new long[roomWords];
+        int from = Math.max(0, startMinutes / UNIT_MINUTES), to = endUnit(startMinutes, durationMinutes);
+        for (int u = from; u < to; u++) {
+            int base = (day.ordinal() * DAY_UNITS + u) * roomWords;
+            for (int w = 0; w < roomWords; w++) taken[w] |= busy[base + w];
+        }
+        return taken;
+    }
+
+    private void setBits(Booking b, boolean on) {
+        int w = b.room() >>> 6;
+        long bit = 1L << b.room();
+        for (int u = b.from(); u < b.to(); u++) {
+            int i = (b.day() * DAY_UNITS + u) * roomWords + w;
+            busy[i] = on ? busy[i] | bit : busy[i] & ~bit;
+        }
+    }
+
+    private synchronized void addRoom(Location location) {
+        Integer known = roomIndex.get(location.getId());
+        if (known != null) {
+            // Moved or renamed: same room, so the bookings stay.
+            rooms.set(known, location);
+            roomIndex.putIfAbsent(location.getName().toLowerCase(Locale.ROOT), known);
+            return;
+        }
+        int r = rooms.size();
+        rooms.add(location);
+        byRoom.add(new ArrayList<>());
+        roomIndex.put(location.getId(), r);
+        roomIndex.putIfAbsent(location.getName().toLowerCase(Locale.ROOT), r);
+        if (rooms.size() > roomWords * 64) widen(roomWords == 0 ? 1 : roomWords * 2);
+    }
+
+    private void widen(int words) {
+        long[] wider = new long[DAYS * DAY_UNITS * words];
+        for (int i = 0; i < DAYS * DAY_UNITS; i++) System.arraycopy(busy, i * roomWords, wider, i * words, roomWords);
+        busy = wider;
+        roomWords = words;
+    }
+
+    private Integer roomOf(String idOrName) {
+        Integer r = roomIndex.get(idOrName);
+        return r != null ? r : roomIndex.get(idOrName.toLowerCase(Locale.ROOT));
+    }
+
+    private static int endUnit(int startMinutes, int durationMinutes) {
+        return Math.min(DAY_UNITS, (startMinutes + Math.max(durationMinutes, 0) + UNIT_MINUTES - 1) / UNIT_MINUTES);
+    }
+}
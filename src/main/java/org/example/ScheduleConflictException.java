@@ -0,0 +1,25 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Thrown when a new or edited timetable entry would double-book a room or overlap another class of
+ * the same course. Nothing was written.
+ */
+public class ScheduleConflictException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    @SuppressWarnings("serial") // always a List.copyOf, which is serializable
+    private final List<ConflictDetector.Conflict> conflicts;
+
+    public ScheduleConflictException(List<ConflictDetector.Conflict> conflicts) {
+        super(conflicts.get(0).describe() + (conflicts.size() > 1 ? " (and " + (conflicts.size() - 1) + " more)" : ""));
+        this.conflicts = List.copyOf(conflicts);
+    }
+
+    public List<ConflictDetector.Conflict> getConflicts() {
+        return conflicts;
+    }
+}
@@ -0,0 +1,17 @@
+package org.example;
+
+import java.util.Arrays;
+
+/** The days and start times of the weekly grid, shared by {@link ScheduleView} and code that runs without a UI. */
+public final class ScheduleGrid {
+
+    public static final String[] DAYS = {"MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY"};
+    public static final String[] TIME_SLOTS = {
+            "08:00", "09:40", "11:20", "13:00",
+            "14:40", "16:20", "18:00", "19:40", "21:10"
+    };
+    /** {@link #TIME_SLOTS} in minutes after midnight. */
+    public static final int[] SLOT_MINUTES = Arrays.stream(TIME_SLOTS).mapToInt(TimetableStore::parseMinutes).toArray();
+
+    private ScheduleGrid() {}
+}
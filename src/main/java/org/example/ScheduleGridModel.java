@@ -0,0 +1,86 @@
+package org.example;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which class each cell of the day × time-slot grid shows: the first class, in start order, that
+ * starts within the cell's slot. {@link #update} moves the model to a new snapshot and returns
+ * only the cells that now look different, so the view can patch those and keep every other node.
+ * <p>
+ * Days that a {@link ScheduleSnapshot} shares with the one shown before are skipped without looking
+ * at their entries; the others cost one next-class lookup per slot. Not thread-safe;
+ * {@link ScheduleView} uses it on the FX thread only.
+ */
+final class ScheduleGridModel {
+
+    /** A class block: the entry plus the location name it displays. */
+    record Block(TimetableEntry entry, String locationName) {
+
+        String text() {
+            return entry.getCourseName() + "\n" + locationName + "\n(" + entry.getType() + ")";
+        }
+
+        // Blocks that look alike need no node update even if the entry's version moved on.
+        static boolean looksAlike(Block a, Block b) {
+            if (a == null || b == null) return a == b;
+            return a.text().equals(b.text());
+        }
+    }
+
+    private final int days;
+    private final int[] slotMinutes;
+    private final Block[] cells; // day * slots + slot
+    private ScheduleSnapshot shown;
+
+    ScheduleGridModel(int days, int[] slotMinutes) {
+        this.days = days;
+        this.slotMinutes = slotMinutes.clone(); // ascending
+        this.cells = new Block[days * slotMinutes.length];
+    }
+
+    int slots() {
+        return slotMinutes.length;
+    }
+
+    int cell(int day, int slot) {
+        return day * slotMinutes.length + slot;
+    }
+
+    /** The block shown in the cell, or null if it is empty. */
+    Block blockAt(int cell) {
+        return cells[cell];
+    }
+
+    ScheduleSnapshot shown() {
+        return shown;
+    }
+
+    /** Shows {@code data} and returns the cells whose block appeared, disappeared or looks different. */
+    List<Integer> update(ScheduleSnapshot data) {
+        List<Integer> changed = new ArrayList<>();
+        boolean sameLocations = data.sameLocations(shown);
+        for (int d = 0; d < days; d++) {
+            DayOfWeek day = DayOfWeek.of(d + 1);
+            if (sameLocations && data.sameDay(shown, day)) continue;
+
+            // Each slot shows the first class starting at or after its start, if that is before the next slot's.
+            Block[] next = new Block[slotMinutes.length];
+            for (int slot = 0; slot < next.length; slot++) {
+                TimetableEntry entry = data.nextEntryStarting(day, slotMinutes[slot]);
+                if (entry != null && (slot + 1 == next.length || entry.getStartMinutes() < slotMinutes[slot + 1])) {
+                    String location = data.findLocation(entry.getLocationId()).map(Location::getName).orElse(entry.getLocationId());
+                    next[slot] = new Block(entry, location);
+                }
+            }
+            for (int slot = 0; slot < next.length; slot++) {
+                int cell = cell(d, slot);
+                if (!Block.looksAlike(cells[cell], next[slot])) changed.add(cell);
+                cells[cell] = next[slot];
+            }
+        }
+        shown = data;
+        return changed;
+    }
+}
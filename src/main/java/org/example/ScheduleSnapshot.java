@@ -0,0 +1,214 @@
+package org.example;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+import org.example.DataSnapshot.LocationDay;
+
+/**
+ * A schedule frozen at one change version: the entries grouped by day in start order, plus the
+ * locations. Unlike {@link DataSnapshot} nothing in it changes after construction, so once it has
+ * been handed over through a volatile field or an {@link java.util.concurrent.atomic.AtomicReference}
+ * any number of threads can read it without locking.
+ * <p>
+ * It is made of the same indexes as {@link DataSnapshot}, frozen. {@link #of} and {@link #apply}
+ * copy them copy-on-write, so a day the changes don't touch, and a grid cell no location moved in
+ * or out of, is shared between the versions rather than copied.
+ */
+public final class ScheduleSnapshot {
+
+    public static final ScheduleSnapshot EMPTY = of(new DataSnapshot());
+
+    private final long version;
+    private final IntervalIndex<DayOfWeek> byDay;
+    private final IntervalIndex<LocationDay> byLocation;
+    private final List<TimetableEntry> unplaced; // entries without a valid day or start time
+    private final Locations locations;
+
+    private ScheduleSnapshot(long version, IntervalIndex<DayOfWeek> byDay, IntervalIndex<LocationDay> byLocation,
+                             List<TimetableEntry> unplaced, Locations locations) {
+        byDay.freeze();
+        byLocation.freeze();
+        this.version = version;
+        this.byDay = byDay;
+        this.byLocation = byLocation;
+        this.unplaced = unplaced;
+        this.locations = locations;
+    }
+
+    /** Copies the entries and locations of {@code data}, which may keep changing afterwards. */
+    public static ScheduleSnapshot of(DataSnapshot data) {
+        // Rows of a TimetableStore always have a day and a start, so none are left unplaced.
+        return new ScheduleSnapshot(data.getVersion(), data.copyOfDayIndex(), data.copyOfLocationIndex(), List.of(), Locations.of(data));
+    }
+
+    /**
+     * The version {@code changes} leads to from this one. Only the days holding a changed entry are
+     * copied; the others are the same objects as in this snapshot.
+     */
+    public ScheduleSnapshot apply(ChangeSet changes) {
+        if (changes.isEmpty()) {
+            return changes.toVersion() == version ? this : new ScheduleSnapshot(changes.toVersion(), byDay, byLocation, unplaced, locations);
+        }
+        IntervalIndex<DayOfWeek> days = byDay.copy();
+        IntervalIndex<LocationDay> rooms = byLocation.copy();
+        Set<Integer> touched = new HashSet<>(changes.deletedEntryIds());
+        List<TimetableEntry> newlyUnplaced = new ArrayList<>();
+        for (int id : changes.deletedEntryIds()) {
+            days.remove(id);
+            rooms.remove(id);
+        }
+        for (TimetableEntry e : changes.upsertedEntries()) {
+            TimetableEntry stable = e instanceof TimetableStore.EntryView view ? view.detach() : e;
+            touched.add(stable.getId());
+            days.put(stable);
+            rooms.put(stable);
+            if (stable.getDayOfWeek() == null || stable.getStartMinutes() < 0) newlyUnplaced.add(stable);
+        }
+        List<TimetableEntry> stillUnplaced = unplaced;
+        if (!newlyUnplaced.isEmpty() || unplaced.stream().anyMatch(e -> touched.contains(e.getId()))) {
+            List<TimetableEntry> list = new ArrayList<>();
+            for (TimetableEntry e : unplaced) {
+                if (!touched.contains(e.getId())) list.add(e);
+            }
+            list.addAll(newlyUnplaced);
+            stillUnplaced = List.copyOf(list);
+        }
+        Locations locs = changes.upsertedLocations().isEmpty() ? locations : locations.with(changes.upsertedLocations());
+        return new ScheduleSnapshot(changes.toVersion(), days, rooms, stillUnplaced, locs);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return byDay.size() + unplaced.size();
+    }
+
+    /** Every entry, day by day in start order. */
+    public List<TimetableEntry> getEntries() {
+        List<TimetableEntry> all = new ArrayList<>(size());
+        for (DayOfWeek day : DayOfWeek.values()) all.addAll(byDay.all(day));
+        all.addAll(unplaced);
+        return Collections.unmodifiableList(all);
+    }
+
+    /** The day's entries in start order. */
+    public List<TimetableEntry> entriesOn(DayOfWeek day) {
+        return Collections.unmodifiableList(byDay.all(day));
+    }
+
+    /** Entries running at {@code minute} on {@code day}. */
+    public List<TimetableEntry> entriesOccupying(DayOfWeek day, int minute) {
+        return byDay.occupying(day, minute);
+    }
+
+    /** Entries on {@code day} sharing at least one minute with {@code [from, to)}, in start order. */
+    public List<TimetableEntry> entriesOverlapping(DayOfWeek day, int from, int to) {
+        return byDay.overlapping(day, from, to);
+    }
+
+    /** Like {@link #entriesOverlapping}, limited to entries held at the location, whether by id or by name. */
+    public List<TimetableEntry> entriesOverlappingAt(Location location, DayOfWeek day, int from, int to) {
+        return LocationDay.overlapping(byLocation, location, day, from, to);
+    }
+
+    /** The first entry on {@code day} starting at or after {@code minute}, or null. */
+    public TimetableEntry nextEntryStarting(DayOfWeek day, int minute) {
+        return byDay.nextStarting(day, minute);
+    }
+
+    /** True if {@code other} holds the very same entries on {@code day}, e.g. because one was derived from the other. */
+    public boolean sameDay(ScheduleSnapshot other, DayOfWeek day) {
+        return other != null && byDay.sameGroup(other.byDay, day);
+    }
+
+    /** True if {@code other} holds the very same locations, so names and positions can't have changed. */
+    public boolean sameLocations(ScheduleSnapshot other) {
+        return other != null && other.locations == locations;
+    }
+
+    public List<Location> getLocations() {
+        return locations.list;
+    }
+
+    /** Entries point at their location by id or by name depending on the backend; this accepts either. */
+    public Optional<Location> findLocation(String idOrName) {
+        if (idOrName == null) return Optional.empty();
+        Location l = locations.byId.get(idOrName);
+        return Optional.ofNullable(l != null ? l : locations.byName.get(key(idOrName)));
+    }
+
+    /** Up to {@code k} locations closest to {@code (x, y)}, closest first. */
+    public List<Location> nearestLocations(int x, int y, int k) {
+        return locations.grid.nearest(x, y, k);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /** The locations with their lookups; a location change copies only the shards and cells it touches. */
+    private static final class Locations {
+        final List<Location> list;
+        final ShardedMap<String, Location> byId;
+        final ShardedMap<String, Location> byName; // lower-cased name, first location wins
+        final LocationGrid grid;
+
+        private Locations(List<Location> list, ShardedMap<String, Location> byId, ShardedMap<String, Location> byName, LocationGrid grid) {
+            byId.freeze();
+            byName.freeze();
+            grid.freeze();
+            this.list = list;
+            this.byId = byId;
+            this.byName = byName;
+            this.grid = grid;
+        }
+
+        static Locations of(DataSnapshot data) {
+            return new Locations(List.copyOf(data.getLocations()), data.copyOfLocationsById(),
+                    data.copyOfLocationsByName(), data.copyOfLocationGrid());
+        }
+
+        Locations with(List<Location> upserted) {
+            List<Location> next = new ArrayList<>(list);
+            ShardedMap<String, Location> ids = byId.copy(), names = byName.copy();
+            LocationGrid cells = grid.copy();
+            for (Location l : upserted) {
+                Location old = ids.get(l.getId());
+                int i = old == null ? -1 : indexOf(next, old);
+                if (i < 0) {
+                    next.add(l);
+                    ids.putIfAbsent(l.getId(), l);
+                } else {
+                    next.set(i, l);
+                    ids.put(l.getId(), l);
+                    String oldName = key(old.getName());
+                    // Another location with the old name takes it over.
+                    if (names.remove(oldName, old) && !oldName.equals(key(l.getName()))) {
+                        for (Location other : next) {
+                            if (key(other.getName()).equals(oldName)) names.putIfAbsent(oldName, other);
+                        }
+                    }
+                }
+                names.putIfAbsent(key(l.getName()), l);
+                cells.put(l);
+            }
+            return new Locations(List.copyOf(next), ids, names, cells);
+        }
+
+        private static int indexOf(List<Location> list, Location l) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) == l) return i;
+            }
+            return -1;
+        }
+    }
+}
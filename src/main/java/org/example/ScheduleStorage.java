@@ -0,0 +1,81 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Everything the UI needs from a schedule backend.
+ * {@link JdbcStorage} talks to MySQL and {@link FileStorage} to a local directory; wrappers such as
+ * {@link CachingStorage} decorate either.
+ */
+public interface ScheduleStorage extends Storage, AutoCloseable {
+
+    /** The faculty's entries plus every location; {@link DataSnapshot#getVersion()} is the change version read. */
+    DataSnapshot loadByFaculty(String facultyName, String dataSource) throws IOException;
+
+    /**
+     * Entries and locations inserted, updated or deleted after {@code version}, for a client holding a
+     * snapshot of the faculty at that version. Apply the result with {@link DataSnapshot#apply(ChangeSet)}.
+     */
+    ChangeSet loadChangesSince(String facultyName, long version, String dataSource) throws IOException;
+
+    /**
+     * Entries of the courses the student is enrolled in, plus only the locations those entries use;
+     * empty if the student has no enrollments.
+     */
+    DataSnapshot loadForStudent(String studentName, String dataSource) throws IOException;
+
+    /** Enrolls the student in the course; does nothing if already enrolled. @throws IOException if either is unknown */
+    void enroll(String studentName, String courseName, String dataSource) throws IOException;
+
+    void unenroll(String studentName, String courseName, String dataSource) throws IOException;
+
+    /** The campus walkways for {@link CampusRouter}; empty if none have been mapped. */
+    CampusGraph loadCampusGraph(String dataSource) throws IOException;
+
+    /** Every faculty that has at least one course, in name order. */
+    List<String> listFaculties(String dataSource) throws IOException;
+
+    boolean accountExists(String name, String faculty, String dataSource) throws IOException;
+
+    boolean createAdmin(String name, String password, String faculty, String dataSource) throws IOException;
+
+    boolean authenticateAdmin(String name, String password, String faculty, String dataSource) throws IOException;
+
+    void createStudentIfNotExists(String name, String faculty, String dataSource) throws IOException;
+
+    /** @throws ScheduleConflictException if the entry would double-book its room or overlap its course */
+    void addTimetableEntry(String courseName, String type, String day, String startTime, int duration,
+                           String locationName, int x, int y, String faculty, String dataSource) throws IOException;
+
+    /**
+     * Inserts many entries in one transaction, creating missing courses and locations along the way.
+     * Invalid rows are reported in the result instead of failing the whole batch.
+     */
+    BatchResult addTimetableEntries(List<NewTimetableEntry> rows, String dataSource) throws IOException;
+
+    /**
+     * Updates the entry only if it is still at {@code expectedVersion}.
+     *
+     * @throws StaleEntryException if it was changed or deleted since it was loaded
+     * @throws ScheduleConflictException if the new course or location clashes with another entry
+     */
+    void updateTimetableEntry(int entryId, int expectedVersion,
+                              String newCourseName, String newType,
+                              String locationName, int x, int y,
+                              String faculty, String dataSource) throws IOException;
+
+    /**
+     * Deletes the entry only if it is still at {@code expectedVersion}.
+     *
+     * @throws StaleEntryException if it was changed or deleted since it was loaded
+     */
+    void deleteTimetableEntry(int entryId, int expectedVersion, String dataSource) throws IOException;
+
+    void renameCourse(String oldName, String newName, String dataSource) throws IOException;
+
+    void deleteCourse(String courseName, String dataSource) throws IOException;
+
+    @Override
+    void close();
+}
@@ -3,46 +3,81 @@ package org.example;
 import javafx.geometry.HPos;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 import javafx.scene.text.TextAlignment;
+import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.time.LocalTime;
+import java.time.DayOfWeek;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 public class ScheduleView extends ScrollPane {
 
-    private final JdbcStorage storage;
+    private final ScheduleStorage storage;
     private final String dataSource;
     private final boolean isAdmin;
     private final String userFaculty;
+    private final String studentName; // null for admins
     private final Runnable onLogout;
 
-    private final String[] DAYS = {"MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY"};
-    private final String[] TIME_SLOTS = {
-            "08:00", "09:40", "11:20", "13:00",
-            "14:40", "16:20", "18:00", "19:40", "21:10"
-    };
-
-    public ScheduleView(JdbcStorage storage, String dataSource, boolean isAdmin, String userFaculty, Runnable onLogout) {
+    private static final String[] DAYS = ScheduleGrid.DAYS;
+    private static final String[] TIME_SLOTS = ScheduleGrid.TIME_SLOTS;
+    private static final int[] SLOT_MINUTES = ScheduleGrid.SLOT_MINUTES;
+    private static final int FREQUENT_ROUTES = 50;
+    private static final int NEARBY_ROOMS = 5;
+    private static final int NEARBY_CANDIDATES = 50; // nearest rooms checked for being free
+
+    private volatile CampusRouter router; // loaded with the first schedule
+    private volatile RoomAvailability availability; // every faculty's bookings, caught up on each refresh
+    // Students see their own courses; the faculty timetable is where they pick courses to enroll in.
+    private volatile boolean showFacultyTimetable;
+    private volatile Set<String> enrolledCourses = Set.of();
+    private Button btnTimetable;
+    // The latest faculty timetable; each refresh publishes the next version built from it by delta.
+    private final AtomicReference<ScheduleSnapshot> facultyTimetable = new AtomicReference<>();
+    // What the grid shows; refreshes patch only the cells it reports as changed. FX thread only.
+    private final ScheduleGridModel model = new ScheduleGridModel(DAYS.length, SLOT_MINUTES);
+    private final StackPane[] cellPanes = new StackPane[DAYS.length * TIME_SLOTS.length]; // by model.cell(day, slot)
+    // Nodes taken out of cells, rebound to the next cell that needs one instead of allocating another.
+    private final ArrayDeque<Button> spareBlocks = new ArrayDeque<>();
+    private final ArrayDeque<StackPane> spareSlots = new ArrayDeque<>();
+    // Latest-wins: a refresh supersedes the one before it, so a slower older load never overwrites the grid.
+    private final LoadExecutor.Lane loads = LoadExecutor.shared().lane("schedule");
+    private final LoadExecutor.Lane solves = LoadExecutor.shared().lane("generate");
+    // Admin changes are shown at once and saved in the background; the grid shows them laid over this.
+    private final MutationPipeline edits;
+    private ScheduleSnapshot confirmed = ScheduleSnapshot.EMPTY; // as last loaded; FX thread only
+
+    public ScheduleView(ScheduleStorage storage, String dataSource, boolean isAdmin, String userFaculty,
+                        String studentName, Runnable onLogout) {
         this.storage = storage;
         this.dataSource = dataSource;
         this.isAdmin = isAdmin;
         this.userFaculty = userFaculty;
+        this.studentName = studentName;
         this.onLogout = onLogout;
+        this.edits = new MutationPipeline(storage, dataSource, userFaculty, javafx.application.Platform::runLater, this::onEditsSettled);
 
         setFitToWidth(true);
         setPadding(new Insets(20));
+        buildLayout();
         refreshSchedule();
     }
 
-    private void refreshSchedule() {
+    // Built once; refreshes only swap the contents of the cells that changed, so scrolling and headers stay put.
+    private void buildLayout() {
         VBox mainLayout = new VBox(10);
         mainLayout.setAlignment(Pos.CENTER);
 
@@ -52,8 +87,32 @@ public class ScheduleView extends ScrollPane {
 
         Button btnLogout = new Button("← Logout / Go Back");
         btnLogout.setStyle("-fx-background-color: #f44336; -fx-text-fill: white; -fx-font-weight: bold; -fx-cursor: hand;");
-        btnLogout.setOnAction(e -> onLogout.run());
+        btnLogout.setOnAction(e -> {
+            loads.cancel();
+            solves.cancel();
+            onLogout.run();
+        });
 
+        if (isAdmin) {
+            Button btnGenerate = new Button("Generate Timetable…");
+            btnGenerate.setStyle("-fx-cursor: hand;");
+            btnGenerate.setOnAction(e -> showGenerateDialog());
+            HBox.setMargin(btnGenerate, new Insets(0, 10, 0, 0));
+            Button btnCampus = new Button("Campus View…");
+            btnCampus.setStyle("-fx-cursor: hand;");
+            btnCampus.setOnAction(e -> showCampusView());
+            HBox.setMargin(btnCampus, new Insets(0, 10, 0, 0));
+            topBar.getChildren().addAll(btnGenerate, btnCampus);
+        } else if (studentName != null) {
+            btnTimetable = new Button(showFacultyTimetable ? "My Timetable" : "Faculty Timetable");
+            btnTimetable.setStyle("-fx-cursor: hand;");
+            btnTimetable.setOnAction(e -> {
+                showFacultyTimetable = !showFacultyTimetable;
+                refreshSchedule();
+            });
+            HBox.setMargin(btnTimetable, new Insets(0, 10, 0, 0));
+            topBar.getChildren().add(btnTimetable);
+        }
         topBar.getChildren().add(btnLogout);
         mainLayout.getChildren().add(topBar);
 
@@ -63,12 +122,22 @@ public class ScheduleView extends ScrollPane {
         grid.setAlignment(Pos.CENTER);
 
         setupGridStructure(grid);
-        loadAndPlaceClasses(grid);
+        for (int d = 0; d < DAYS.length; d++) {
+            for (int slot = 0; slot < TIME_SLOTS.length; slot++) {
+                int cell = model.cell(d, slot);
+                cellPanes[cell] = new StackPane(bindEmptySlot(createEmptySlot(), cell));
+                grid.add(cellPanes[cell], d + 1, slot + 1);
+            }
+        }
 
         mainLayout.getChildren().add(grid);
         setContent(mainLayout);
     }
 
+    private void refreshSchedule() {
+        loadAndPlaceClasses();
+    }
+
     private void setupGridStructure(GridPane grid) {
 
         ColumnConstraints timeCol = new ColumnConstraints();
@@ -104,125 +173,82 @@ public class ScheduleView extends ScrollPane {
         }
     }
 
-    // Inside ScheduleView.java
-
-    private int getDayColumn(String day) {
-        if (day == null) return -1;
-        for (int i = 0; i < DAYS.length; i++) {
-            if (DAYS[i].equalsIgnoreCase(day.trim())) {
-                return i + 1; // +1 because Col 0 is the Time Header
+    private void loadAndPlaceClasses() {
+        // Changes saved before this load starts are in what it reads, so it can take over showing them.
+        long saved = edits.savedMark();
+        loads.submit(ticket -> {
+            ScheduleSnapshot mine = null;
+            if (studentName != null) {
+                mine = ScheduleSnapshot.of(storage.loadForStudent(studentName, dataSource));
+                enrolledCourses = mine.getEntries().stream().map(TimetableEntry::getCourseName).collect(Collectors.toSet());
+                // Nothing to show until the student enrolls, so start them on the faculty timetable.
+                if (mine.size() == 0) showFacultyTimetable = true;
             }
-        }
-        return -1;
-    }
-
-    private int getTimeRow(String timeStr) {
-        if (timeStr == null) return -1;
-
-        // Standardize the time string from the DB (e.g., "08:00:00" -> "08:00")
-        String cleanTime = timeStr.trim();
-        if (cleanTime.length() > 5) {
-            cleanTime = cleanTime.substring(0, 5);
-        }
-
-        for (int i = 0; i < TIME_SLOTS.length; i++) {
-            if (TIME_SLOTS[i].equals(cleanTime)) {
-                return i + 1; // +1 because Row 0 is the Day Header
+            ticket.checkCancelled();
+            ScheduleSnapshot data = mine != null && !showFacultyTimetable ? mine : refreshFacultyTimetable();
+            ticket.checkCancelled();
+            if (router == null) router = new CampusRouter(storage.loadCampusGraph(dataSource));
+            router.precomputeFrequentPairs(data, FREQUENT_ROUTES);
+            if (isAdmin) {
+                ticket.checkCancelled();
+                if (availability == null) availability = RoomAvailability.load(storage, dataSource);
+                else availability.refresh(storage, dataSource);
             }
-        }
-
-        // DEBUG: If a row isn't found, print why
-        System.out.println("DEBUG: Could not find row for time: [" + cleanTime + "]");
-        return -1;
+            return data;
+        }, data -> {
+            if (btnTimetable != null) btnTimetable.setText(showFacultyTimetable ? "My Timetable" : "Faculty Timetable");
+            edits.retire(saved);
+            confirmed = data;
+            showSchedule();
+        }, ex -> new Alert(Alert.AlertType.ERROR, "Could not load the timetable: " + ex.getMessage()).show());
     }
 
-    private void fillRemainingEmptySlots(GridPane grid) {
-        for (int col = 1; col <= DAYS.length; col++) {
-            for (int row = 1; row <= TIME_SLOTS.length; row++) {
-                // Check if this specific cell is empty
-                if (getNodeFromGridPane(grid, col, row) == null) {
-                    grid.add(createEmptySlot(DAYS[col - 1], TIME_SLOTS[row - 1]), col, row);
-                }
-            }
-        }
+    private void showSchedule() {
+        for (int cell : model.update(edits.overlay(confirmed))) patchCell(cell);
     }
 
-    // Helper to check if a cell is occupied
-    private javafx.scene.Node getNodeFromGridPane(GridPane gridPane, int col, int row) {
-        for (javafx.scene.Node node : gridPane.getChildren()) {
-            if (GridPane.getColumnIndex(node) == col && GridPane.getRowIndex(node) == row) {
-                return node;
-            }
+    // A round of changes has been written: failed ones already dropped out of the overlay, so redraw to roll them back.
+    private void onEditsSettled(List<MutationPipeline.Failure> failures) {
+        showSchedule();
+        for (MutationPipeline.Failure f : failures) {
+            if (f.error() instanceof StaleEntryException) showConflict();
+            else if (f.error() instanceof ScheduleConflictException ex) showClash(ex);
+            else new Alert(Alert.AlertType.ERROR, f.action() + " failed: " + f.error().getMessage()).show();
         }
-        return null;
+        refreshSchedule();
     }
 
-
-    private void loadAndPlaceClasses(GridPane grid) {
-        Thread loadThread = new Thread(() -> {
-            try {
-                // 1. Fetch data in background (Requirement 3)
-                DataSnapshot data = storage.loadByFaculty(userFaculty, dataSource);
-
-                javafx.application.Platform.runLater(() -> {
-                    // 2. CLEAR ONLY DATA (Keep the Time/Day headers)
-                    grid.getChildren().removeIf(node -> {
-                        Integer row = GridPane.getRowIndex(node);
-                        Integer col = GridPane.getColumnIndex(node);
-                        return row != null && col != null && row > 0 && col > 0;
-                    });
-
-                    // 3. Place the courses
-                    for (TimetableEntry entry : data.getEntries()) {
-                        // Use trim() and toUpperCase() to ensure exact matching
-                        int col = getDayColumn(entry.getDay().trim().toUpperCase());
-                        int row = getTimeRow(entry.getStartTime().trim());
-
-                        if (col != -1 && row != -1) {
-                            Location loc = findLocation(data.getLocations(), entry.getLocationId());
-                            grid.add(createClassBlock(entry, loc), col, row);
-                        } else {
-                            // This will tell you exactly which course is failing and why
-                            System.out.println("MISSING FROM UI: " + entry.getCourseName() +
-                                    " at " + entry.getDay() + " " + entry.getStartTime());
-                        }
-                    }
-
-                    // 4. Fill empty slots so they remain clickable
-                    fillRemainingEmptySlots(grid);
-                });
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
-        loadThread.setDaemon(true);
-        loadThread.start();
+    // Racing refreshes each publish what they built; the one that saw the later change version wins.
+    private ScheduleSnapshot refreshFacultyTimetable() throws IOException {
+        ScheduleSnapshot base = facultyTimetable.get();
+        ScheduleSnapshot next = base == null
+                ? ScheduleSnapshot.of(storage.loadByFaculty(userFaculty, dataSource))
+                : base.apply(storage.loadChangesSince(userFaculty, base.getVersion(), dataSource));
+        return facultyTimetable.accumulateAndGet(next,
+                (current, fresh) -> current == null || fresh.getVersion() >= current.getVersion() ? fresh : current);
     }
 
-    private TimetableEntry findEntryForSlot(List<TimetableEntry> entries, String day, String timeStr) {
-        LocalTime slotTime = LocalTime.parse(timeStr);
-        for (TimetableEntry entry : entries) {
-            if (!entry.getDay().equalsIgnoreCase(day)) continue;
-
-            String entryTimeStr = entry.getStartTime();
-            if (entryTimeStr.length() > 5) entryTimeStr = entryTimeStr.substring(0, 5);
-
-            LocalTime entryTime = LocalTime.parse(entryTimeStr);
-
-            if (!entryTime.isBefore(slotTime) && entryTime.isBefore(slotTime.plusMinutes(90))) {
-                return entry;
-            }
+    // Rebinds the node already in the cell if it is of the right kind, otherwise swaps it for a pooled one.
+    private void patchCell(int cell) {
+        StackPane holder = cellPanes[cell];
+        javafx.scene.Node old = holder.getChildren().get(0);
+        ScheduleGridModel.Block block = model.blockAt(cell);
+        javafx.scene.Node content;
+        if (block != null) {
+            Button btn = old instanceof Button b ? b : spareBlocks.isEmpty() ? createClassBlock() : spareBlocks.pop();
+            content = bindClassBlock(btn, cell, block);
+        } else {
+            StackPane pane = old instanceof StackPane p ? p : spareSlots.isEmpty() ? createEmptySlot() : spareSlots.pop();
+            content = bindEmptySlot(pane, cell);
         }
-        return null;
-    }
-
-    private Location findLocation(List<Location> locations, String locIdOrName) {
-        return locations.stream()
-                .filter(l -> l.getName().equals(locIdOrName) || l.getId().equals(locIdOrName))
-                .findFirst().orElse(null);
+        if (content == old) return;
+        if (old instanceof Button b) spareBlocks.push(b);
+        else spareSlots.push((StackPane) old);
+        holder.getChildren().set(0, content);
     }
 
-    private StackPane createEmptySlot(String day, String startTime) {
+    // The slot a pooled node is showing is kept in its user data, so handlers are attached once per node.
+    private StackPane createEmptySlot() {
         StackPane pane = new StackPane();
         pane.setPrefSize(120, 80);
 
@@ -230,46 +256,82 @@ public class ScheduleView extends ScrollPane {
             pane.setStyle("-fx-background-color: transparent; -fx-border-color: #eee; -fx-border-width: 1; -fx-cursor: hand;");
             pane.setOnMouseEntered(e -> pane.setStyle("-fx-background-color: #e8f5e9; -fx-border-color: #4CAF50;"));
             pane.setOnMouseExited(e -> pane.setStyle("-fx-background-color: transparent; -fx-border-color: #eee;"));
-            pane.setOnMouseClicked(e -> showAddDialog(day, startTime));
+            pane.setOnMouseClicked(e -> {
+                int cell = (Integer) pane.getUserData();
+                showAddDialog(DAYS[cell / model.slots()], TIME_SLOTS[cell % model.slots()]);
+            });
         } else {
             pane.setStyle("-fx-border-color: #f4f4f4;");
         }
         return pane;
     }
 
+    private StackPane bindEmptySlot(StackPane pane, int cell) {
+        pane.setUserData(cell);
+        if (isAdmin) pane.setStyle("-fx-background-color: transparent; -fx-border-color: #eee; -fx-border-width: 1; -fx-cursor: hand;");
+        return pane;
+    }
+
     // Inside ScheduleView.java
 
     // 1. Update createClassBlock to open Edit Dialog on click
-    private Button createClassBlock(TimetableEntry entry, Location location) {
-        String locationDisplay = (location != null) ? location.getName() : entry.getLocationId();
-        Button btn = new Button(entry.getCourseName() + "\n" + locationDisplay + "\n(" + entry.getType() + ")");
+    private Button createClassBlock() {
+        Button btn = new Button();
         btn.setTextAlignment(TextAlignment.CENTER);
         btn.setWrapText(true);
         btn.setMaxSize(Double.MAX_VALUE, Double.MAX_VALUE);
         btn.setMinHeight(80);
         btn.setMinWidth(120);
 
-        String colorStyle = switch (entry.getType().name()) {
-            case "LECTURE" -> "-fx-background-color: #4CAF50; -fx-text-fill: white;";
-            case "LAB" -> "-fx-background-color: #2196F3; -fx-text-fill: white;";
-            case "SEMINAR" -> "-fx-background-color: #FF9800; -fx-text-fill: white;";
-            default -> "-fx-background-color: #9E9E9E; -fx-text-fill: white;";
-        };
-        btn.setStyle(colorStyle + "-fx-background-radius: 10; -fx-cursor: hand;");
-
+        // The block is only rebound when its text changes, so look up the entry and snapshot as they are now.
         btn.setOnAction(e -> {
+            ScheduleGridModel.Block block = model.blockAt((Integer) btn.getUserData());
+            if (block == null) return;
+            TimetableEntry entry = block.entry();
+            ScheduleSnapshot data = model.shown();
+            Location location = data.findLocation(entry.getLocationId()).orElse(null);
             if (isAdmin) {
                 // OPEN EDIT DIALOG (Feature 1)
-                showEditDialog(entry, location);
+                showEditDialog(entry, location, data);
             } else {
                 // Show Directions
                 String msg = (location != null) ? location.getDirectionsFromEntrance() : "No location data";
-                new Alert(Alert.AlertType.INFORMATION, msg).show();
+                CampusRouter.Route walk = router.routeFromPreviousClass(data, entry).orElse(null);
+                if (walk != null) msg = "From your previous class:\n" + walk.describe() + "\n\nFrom the entrance:\n" + msg;
+                if (studentName == null) {
+                    new Alert(Alert.AlertType.INFORMATION, msg).show();
+                    return;
+                }
+                boolean enrolled = enrolledCourses.contains(entry.getCourseName());
+                ButtonType toggle = new ButtonType(enrolled ? "Drop Course" : "Enroll", ButtonBar.ButtonData.OTHER);
+                Alert alert = new Alert(Alert.AlertType.INFORMATION, msg, ButtonType.OK, toggle);
+                if (alert.showAndWait().orElse(ButtonType.OK) != toggle) return;
+                // Saved off the FX thread, on a lane of its own so that toggling another course doesn't replace it.
+                String course = entry.getCourseName();
+                LoadExecutor.shared().lane("enrollment").<Void>submit(ticket -> {
+                    if (enrolled) storage.unenroll(studentName, course, dataSource);
+                    else storage.enroll(studentName, course, dataSource);
+                    return null;
+                }, done -> refreshSchedule(),
+                        ex -> new Alert(Alert.AlertType.ERROR, "Could not update enrollment: " + ex.getMessage()).show());
             }
         });
         return btn;
     }
 
+    private Button bindClassBlock(Button btn, int cell, ScheduleGridModel.Block block) {
+        btn.setUserData(cell);
+        btn.setText(block.text());
+        String colorStyle = switch (block.entry().getType().name()) {
+            case "LECTURE" -> "-fx-background-color: #4CAF50; -fx-text-fill: white;";
+            case "LAB" -> "-fx-background-color: #2196F3; -fx-text-fill: white;";
+            case "SEMINAR" -> "-fx-background-color: #FF9800; -fx-text-fill: white;";
+            default -> "-fx-background-color: #9E9E9E; -fx-text-fill: white;";
+        };
+        btn.setStyle(colorStyle + "-fx-background-radius: 10; -fx-cursor: hand;");
+        return btn;
+    }
+
     // 2. Update Add Dialog to include Directions (X/Y)
     private void showAddDialog(String day, String startTime) {
         Dialog<Boolean> dialog = new Dialog<>();
@@ -292,6 +354,15 @@ public class ScheduleView extends ScrollPane {
         TextField yField = new TextField("0");
         yField.setPromptText("Y Coord (North/South)");
 
+        // Rooms no faculty has booked at this time; picking one fills in the location.
+        ComboBox<Location> freeRoomBox = new ComboBox<>();
+        freeRoomBox.setPromptText("Pick a free room");
+        if (availability != null) {
+            freeRoomBox.getItems().addAll(availability.freeRooms(DayOfWeek.valueOf(day), TimetableStore.parseMinutes(startTime), 90));
+        }
+        freeRoomBox.setConverter(roomConverter(null));
+        freeRoomBox.setOnAction(e -> fillLocation(freeRoomBox.getValue(), locField, xField, yField));
+
         ComboBox<String> facultyBox = new ComboBox<>();
         facultyBox.getItems().addAll(
                 "Computer Science", "History", "Math", "Psychology", "General",
@@ -306,6 +377,7 @@ public class ScheduleView extends ScrollPane {
                 new Label("Name:"), nameField,
                 new Label("Type:"), typeBox,
                 new Label("Location:"), locField,
+                new Label("Free Rooms:"), freeRoomBox,
                 new Label("Directions (Coordinates):"),
                 new HBox(5, new Label("X:"), xField, new Label("Y:"), yField),
                 new Label("Faculty:"), facultyBox
@@ -320,11 +392,19 @@ public class ScheduleView extends ScrollPane {
                     int x = Integer.parseInt(xField.getText());
                     int y = Integer.parseInt(yField.getText());
 
-                    storage.addTimetableEntry(
-                            nameField.getText(), typeBox.getValue(), day, startTime + ":00", 90,
-                            locField.getText(), x, y,
-                            facultyBox.getValue(), dataSource
-                    );
+                    // Catch a clash with the timetable on screen before it goes to storage.
+                    ScheduleSnapshot shown = model.shown();
+                    int start = TimetableStore.parseMinutes(startTime);
+                    Location room = shown == null ? null : shown.findLocation(locField.getText()).orElse(null);
+                    if (room != null) {
+                        List<TimetableEntry> booked = shown.entriesOverlappingAt(room, DayOfWeek.valueOf(day), start, start + 90);
+                        if (!booked.isEmpty()) {
+                            new Alert(Alert.AlertType.WARNING, room.getName() + " is taken then by " + booked.get(0).getCourseName() + ".").show();
+                            return false;
+                        }
+                    }
+                    edits.add(nameField.getText(), ClassType.valueOf(typeBox.getValue()), day, startTime + ":00", 90,
+                            locField.getText(), x, y, facultyBox.getValue());
                     return true;
                 } catch (Exception ex) {
                     new Alert(Alert.AlertType.ERROR, "Error: " + ex.getMessage()).show();
@@ -333,12 +413,61 @@ public class ScheduleView extends ScrollPane {
             return false;
         });
         dialog.showAndWait().ifPresent(success -> {
-            if (success) refreshSchedule();
+            if (success) showSchedule();
+        });
+    }
+
+    private void showCampusView() {
+        CampusTimetableView campus = new CampusTimetableView(storage, dataSource);
+        Stage stage = new Stage();
+        stage.setTitle("Campus Timetable");
+        stage.setScene(new Scene(campus, 1200, 700));
+        stage.setOnHidden(e -> campus.stop());
+        stage.show();
+    }
+
+    // Places whole courses at once: one line per course, solved and saved in the background.
+    private void showGenerateDialog() {
+        Dialog<String> dialog = new Dialog<>();
+        dialog.setTitle("Generate Timetable");
+        dialog.setHeaderText("Courses to place for " + userFaculty);
+        ButtonType generateButton = new ButtonType("Generate", ButtonBar.ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(generateButton, ButtonType.CANCEL);
+
+        TextArea requestsArea = new TextArea();
+        requestsArea.setPromptText("Algorithms, LECTURE, 90, 2, MONDAY WEDNESDAY\nAlgorithms, LAB, 90, 1");
+        requestsArea.setPrefRowCount(10);
+        VBox layout = new VBox(10,
+                new Label("One course per line: name, type, minutes, sessions per week, preferred days (optional)"),
+                requestsArea);
+        layout.setPadding(new Insets(20));
+        dialog.getDialogPane().setContent(layout);
+        dialog.setResultConverter(btn -> btn == generateButton ? requestsArea.getText() : null);
+
+        dialog.showAndWait().ifPresent(text -> {
+            List<TimetableSolver.CourseRequest> requests = new ArrayList<>();
+            String[] lines = text.split("\\R");
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].isBlank()) continue;
+                try {
+                    requests.add(TimetableSolver.CourseRequest.parse(lines[i]));
+                } catch (IllegalArgumentException ex) {
+                    new Alert(Alert.AlertType.ERROR, "Line " + (i + 1) + ": " + ex.getMessage()).show();
+                    return;
+                }
+            }
+            // A newer run replaces this one; a replaced run stops before it stores anything.
+            solves.submit(ticket -> TimetableSolver.schedule(storage, userFaculty, requests, dataSource, ticket::checkCancelled),
+                    solution -> {
+                        new Alert(Alert.AlertType.INFORMATION, solution.placements().size() + " classes placed.").show();
+                        refreshSchedule();
+                    },
+                    ex -> new Alert(Alert.AlertType.ERROR, "Error: " + ex.getMessage()).show());
         });
     }
 
     // 3. NEW: Edit Dialog (Feature 1)
-    private void showEditDialog(TimetableEntry entry, Location currentLocation) {
+    private void showEditDialog(TimetableEntry entry, Location currentLocation, ScheduleSnapshot data) {
         Dialog<ButtonType> dialog = new Dialog<>();
         dialog.setTitle("Edit Class");
         dialog.setHeaderText("Editing: " + entry.getCourseName());
@@ -365,10 +494,26 @@ public class ScheduleView extends ScrollPane {
         TextField yField = new TextField(currentY);
         yField.setPromptText("Y");
 
+        // Closest other rooms free at the class's time, to move it somewhere nearby in one click.
+        ComboBox<Location> nearbyBox = new ComboBox<>();
+        nearbyBox.setPromptText("Pick a nearby room");
+        if (currentLocation != null) {
+            for (Location l : data.nearestLocations(currentLocation.getX(), currentLocation.getY(), NEARBY_CANDIDATES)) {
+                if (nearbyBox.getItems().size() == NEARBY_ROOMS) break;
+                if (l.getId().equals(currentLocation.getId())) continue;
+                if (availability == null || availability.isFree(l, entry.getDayOfWeek(), entry.getStartMinutes(), entry.getDurationMinutes())) {
+                    nearbyBox.getItems().add(l);
+                }
+            }
+        }
+        nearbyBox.setConverter(roomConverter(currentLocation));
+        nearbyBox.setOnAction(e -> fillLocation(nearbyBox.getValue(), locField, xField, yField));
+
         VBox layout = new VBox(10,
                 new Label("Edit Name:"), nameField,
                 new Label("Edit Type:"), typeBox,
                 new Label("Edit Location:"), locField,
+                new Label("Nearby Free Rooms:"), nearbyBox,
                 new Label("Edit Coordinates (Directions):"),
                 new HBox(5, new Label("X:"), xField, new Label("Y:"), yField)
         );
@@ -383,39 +528,25 @@ public class ScheduleView extends ScrollPane {
 
         dialog.showAndWait().ifPresent(btn -> {
             try {
-                // Formatting time for DB
-                String fullStartTime = entry.getStartTime().length() == 5 ? entry.getStartTime() + ":00" : entry.getStartTime();
-
                 if (btn == updateButtonType) {
                     // --- THE FIX IS HERE: Parse X and Y and pass them ---
                     int newX = Integer.parseInt(xField.getText());
                     int newY = Integer.parseInt(yField.getText());
 
-                    storage.updateTimetableEntry(
-                            entry.getCourseName(),      // 1. oldCourseName
-                            entry.getDay(),             // 2. day
-                            fullStartTime,              // 3. startTime
-                            nameField.getText(),        // 4. newCourseName
-                            typeBox.getValue(),         // 5. newType
-                            locField.getText(),         // 6. locationName
-                            newX,                       // 7. X (Added)
-                            newY,                       // 8. Y (Added)
-                            userFaculty,                // 9. faculty
-                            dataSource                  // 10. dataSource
-                    );
-                    refreshSchedule();
+                    if (!edits.update(entry, nameField.getText(), ClassType.valueOf(typeBox.getValue()),
+                            locField.getText(), newX, newY, userFaculty)) {
+                        showStillSaving();
+                        return;
+                    }
+                    showSchedule();
 
                 } else if (btn == deleteButtonType) {
                     // Delete Logic
                     Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, "Delete " + entry.getCourseName() + "?", ButtonType.YES, ButtonType.NO);
                     confirm.showAndWait().ifPresent(resp -> {
                         if (resp == ButtonType.YES) {
-                            try {
-                                storage.deleteTimetableEntry(entry.getCourseName(), entry.getDay(), fullStartTime, dataSource);
-                                refreshSchedule();
-                            } catch (IOException e) {
-                                new Alert(Alert.AlertType.ERROR, "Delete failed: " + e.getMessage()).show();
-                            }
+                            if (edits.delete(entry)) showSchedule();
+                            else showStillSaving();
                         }
                     });
                 }
@@ -424,4 +555,42 @@ public class ScheduleView extends ScrollPane {
             }
         });
     }
-}
\ No newline at end of file
+
+    private void showStillSaving() {
+        new Alert(Alert.AlertType.INFORMATION, "This class is still being saved; try again in a moment.").show();
+    }
+
+    // Someone else edited or deleted the class since this grid was loaded; show their version instead.
+    private void showConflict() {
+        new Alert(Alert.AlertType.WARNING,
+                "This class was changed by another administrator while you were editing it.\n" +
+                "The schedule has been reloaded so you can see their changes.").show();
+        refreshSchedule();
+    }
+
+    // Shows a room's name, plus its distance when there is a room to measure from.
+    private static javafx.util.StringConverter<Location> roomConverter(Location from) {
+        return new javafx.util.StringConverter<>() {
+            @Override public String toString(Location l) {
+                if (l == null) return "";
+                if (from == null) return l.getName();
+                long meters = Math.round(Math.hypot(l.getX() - from.getX(), l.getY() - from.getY()));
+                return l.getName() + " (" + meters + " m away)";
+            }
+            @Override public Location fromString(String s) { return null; }
+        };
+    }
+
+    private static void fillLocation(Location l, TextField locField, TextField xField, TextField yField) {
+        if (l == null) return;
+        locField.setText(l.getName());
+        xField.setText(String.valueOf(l.getX()));
+        yField.setText(String.valueOf(l.getY()));
+    }
+
+    private void showClash(ScheduleConflictException ex) {
+        StringBuilder text = new StringBuilder("The class was not saved because it clashes with the schedule:\n");
+        for (ConflictDetector.Conflict c : ex.getConflicts()) text.append("\n").append(c.describe());
+        new Alert(Alert.AlertType.WARNING, text.toString()).show();
+    }
+}
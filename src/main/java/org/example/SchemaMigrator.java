@@ -0,0 +1,228 @@
+package org.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Brings a database up to the latest schema version.
+ * Applied versions are recorded in {@code schema_version}, so each migration runs once per
+ * database no matter how many processes start against it. The baseline matches
+ * {@code db/init.sql}, which means databases seeded from that script migrate cleanly.
+ */
+public class SchemaMigrator {
+
+    private static final String LOCK_NAME = "university_schedule.schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    // MySQL error codes that mean "already there", raised when DDL is re-run after a partial migration.
+    private static final int ER_DUP_FIELDNAME = 1060;
+    private static final int ER_DUP_KEYNAME = 1061;
+
+    record Migration(int version, String description, String... statements) {}
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "baseline schema",
+                    """
+                    CREATE TABLE IF NOT EXISTS locations (
+                        id INT AUTO_INCREMENT PRIMARY KEY,
+                        name VARCHAR(255) NOT NULL,
+                        code VARCHAR(10),
+                        x INT,
+                        y INT
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS courses (
+                        id INT AUTO_INCREMENT PRIMARY KEY,
+                        name VARCHAR(255) NOT NULL UNIQUE,
+                        faculty VARCHAR(255) NOT NULL
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS timetable_entries (
+                        id INT AUTO_INCREMENT PRIMARY KEY,
+                        course_id INT NOT NULL,
+                        type ENUM('LECTURE','LAB','SEMINAR') NOT NULL,
+                        day ENUM('MONDAY','TUESDAY','WEDNESDAY','THURSDAY','FRIDAY') NOT NULL,
+                        start_time TIME NOT NULL,
+                        duration_minutes INT NOT NULL,
+                        location_id INT NOT NULL,
+                        FOREIGN KEY (course_id) REFERENCES courses(id) ON DELETE RESTRICT ON UPDATE CASCADE,
+                        FOREIGN KEY (location_id) REFERENCES locations(id) ON DELETE RESTRICT ON UPDATE CASCADE
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS students (
+                        id INT AUTO_INCREMENT PRIMARY KEY,
+                        name VARCHAR(255) NOT NULL,
+                        faculty VARCHAR(255) NOT NULL
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS admins (
+                        id INT AUTO_INCREMENT PRIMARY KEY,
+                        name VARCHAR(255) NOT NULL UNIQUE,
+                        password VARCHAR(255) NOT NULL,
+                        faculty VARCHAR(255)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """),
+
+            // courses(name) is already covered by its UNIQUE key.
+            new Migration(2, "indexes for hot queries",
+                    "CREATE INDEX idx_courses_faculty ON courses (faculty)",
+                    "CREATE INDEX idx_entries_course_slot ON timetable_entries (course_id, day, start_time)",
+                    "CREATE INDEX idx_students_name_faculty ON students (name, faculty)",
+                    "CREATE INDEX idx_admins_name_faculty ON admins (name, faculty)"),
+
+            // Lets IdResolver upsert locations by name; fails if the table already holds duplicate names.
+            new Migration(3, "unique location names",
+                    "ALTER TABLE locations ADD UNIQUE INDEX uq_locations_name (name)"),
+
+            new Migration(4, "optimistic locking version on timetable entries",
+                    "ALTER TABLE timetable_entries ADD COLUMN version INT NOT NULL DEFAULT 0"),
+
+            // Every write stamps the rows it touches with the next change_counter value; deletes leave a tombstone.
+            new Migration(5, "change tracking for delta loads",
+                    """
+                    CREATE TABLE IF NOT EXISTS change_counter (
+                        id TINYINT PRIMARY KEY,
+                        seq BIGINT NOT NULL
+                    ) ENGINE=InnoDB
+                    """,
+                    "INSERT IGNORE INTO change_counter (id, seq) VALUES (1, 0)",
+                    "ALTER TABLE timetable_entries ADD COLUMN change_seq BIGINT NOT NULL DEFAULT 0",
+                    "CREATE INDEX idx_entries_change_seq ON timetable_entries (change_seq)",
+                    "ALTER TABLE locations ADD COLUMN change_seq BIGINT NOT NULL DEFAULT 0",
+                    "CREATE INDEX idx_locations_change_seq ON locations (change_seq)",
+                    """
+                    CREATE TABLE IF NOT EXISTS entry_tombstones (
+                        seq BIGINT NOT NULL,
+                        entry_id INT NOT NULL,
+                        faculty VARCHAR(255) NOT NULL,
+                        INDEX idx_tombstones_faculty_seq (faculty, seq)
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """),
+
+            // Room conflict checks look up one room's entries on one day; courses are covered by idx_entries_course_slot.
+            new Migration(6, "index for room conflict checks",
+                    "CREATE INDEX idx_entries_location_slot ON timetable_entries (location_id, day, start_time)"),
+
+            // Walkable paths for CampusRouter; a node with a location_id is that room's door.
+            new Migration(7, "campus walkway graph",
+                    """
+                    CREATE TABLE IF NOT EXISTS walkway_nodes (
+                        id INT AUTO_INCREMENT PRIMARY KEY,
+                        name VARCHAR(255),
+                        x INT NOT NULL,
+                        y INT NOT NULL,
+                        location_id INT NULL,
+                        FOREIGN KEY (location_id) REFERENCES locations(id) ON DELETE SET NULL
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """,
+                    """
+                    CREATE TABLE IF NOT EXISTS walkway_edges (
+                        from_node INT NOT NULL,
+                        to_node INT NOT NULL,
+                        meters INT NOT NULL DEFAULT 0,
+                        PRIMARY KEY (from_node, to_node),
+                        FOREIGN KEY (from_node) REFERENCES walkway_nodes(id) ON DELETE CASCADE,
+                        FOREIGN KEY (to_node) REFERENCES walkway_nodes(id) ON DELETE CASCADE
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """),
+
+            // A student's timetable joins students -> enrollments (by primary key) -> timetable_entries (by idx_entries_course_slot).
+            new Migration(8, "student enrollments",
+                    """
+                    CREATE TABLE IF NOT EXISTS enrollments (
+                        student_id INT NOT NULL,
+                        course_id INT NOT NULL,
+                        PRIMARY KEY (student_id, course_id),
+                        INDEX idx_enrollments_course (course_id),
+                        FOREIGN KEY (student_id) REFERENCES students(id) ON DELETE CASCADE,
+                        FOREIGN KEY (course_id) REFERENCES courses(id) ON DELETE CASCADE
+                    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+                    """)
+    );
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    /** Applies every pending migration and returns the schema version the database is now at. */
+    public int migrate(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INT PRIMARY KEY,
+                    description VARCHAR(255) NOT NULL,
+                    applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+                ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+            """);
+        }
+
+        // Serialize concurrent app instances starting against the same database.
+        acquireLock(conn);
+        try {
+            int current = currentVersion(conn);
+            for (Migration m : MIGRATIONS) {
+                if (m.version() <= current) continue;
+                apply(conn, m);
+                current = m.version();
+            }
+            return current;
+        } finally {
+            releaseLock(conn);
+        }
+    }
+
+    private int currentVersion(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void apply(Connection conn, Migration m) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            for (String sql : m.statements()) {
+                try {
+                    st.execute(sql);
+                } catch (SQLException e) {
+                    // MySQL DDL commits implicitly, so a migration interrupted halfway is retried from the top.
+                    if (e.getErrorCode() != ER_DUP_KEYNAME && e.getErrorCode() != ER_DUP_FIELDNAME) {
+                        throw new SQLException("Migration " + m.version() + " (" + m.description() + ") failed: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+            ps.setInt(1, m.version());
+            ps.setString(2, m.description());
+            ps.executeUpdate();
+        }
+    }
+
+    private void acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Could not acquire schema migration lock within " + LOCK_TIMEOUT_SECONDS + " s");
+                }
+            }
+        }
+    }
+
+    private void releaseLock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * A hash map split into shards that copies share until one of them writes. {@link #copy()} costs
+ * one small array copy, and a write after it copies only the shard the key falls in, so an index
+ * can be copied for every version of a snapshot without copying all of its contents.
+ * <p>
+ * Null keys and values are not allowed. Not thread-safe while being written; once
+ * {@link #freeze() frozen} it refuses writes and can be read from any thread.
+ */
+final class ShardedMap<K, V> {
+
+    private static final int SHARD_BITS = 6;
+
+    private record Shard<K, V>(HashMap<K, V> map, Object owner) {}
+
+    private Shard<K, V>[] shards;
+    private Object owner = new Object(); // shards holding this are ours to change; null once frozen
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    ShardedMap() {
+        shards = new Shard[1 << SHARD_BITS];
+    }
+
+    private ShardedMap(ShardedMap<K, V> from) {
+        shards = from.shards.clone();
+        size = from.size;
+    }
+
+    /** A map with the same contents; later writes to either one don't show in the other. */
+    ShardedMap<K, V> copy() {
+        if (owner != null) owner = new Object(); // every shard is shared from now on
+        return new ShardedMap<>(this);
+    }
+
+    void freeze() {
+        owner = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    V get(Object key) {
+        Shard<K, V> shard = shards[shardOf(key)];
+        return shard == null ? null : shard.map().get(key);
+    }
+
+    V put(K key, V value) {
+        V old = writable(key).put(key, Objects.requireNonNull(value));
+        if (old == null) size++;
+        return old;
+    }
+
+    V putIfAbsent(K key, V value) {
+        V old = get(key);
+        return old != null ? old : put(key, value);
+    }
+
+    V remove(Object key) {
+        if (get(key) == null) return null;
+        V old = writable(key).remove(key);
+        size--;
+        return old;
+    }
+
+    /** Removes the key only while it maps to {@code value}. */
+    boolean remove(Object key, Object value) {
+        V current = get(key);
+        if (current == null || !current.equals(value)) return false;
+        remove(key);
+        return true;
+    }
+
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Shard<K, V> shard : shards) {
+            if (shard != null) shard.map().forEach(action);
+        }
+    }
+
+    private HashMap<K, V> writable(Object key) {
+        if (owner == null) throw new IllegalStateException("The map is frozen");
+        int i = shardOf(key);
+        Shard<K, V> shard = shards[i];
+        if (shard == null || shard.owner() != owner) {
+            shard = new Shard<>(shard == null ? new HashMap<>() : new HashMap<>(shard.map()), owner);
+            shards[i] = shard;
+        }
+        return shard.map();
+    }
+
+    // The top bits of a multiplicative hash, so keys within a shard still spread over its HashMap's buckets.
+    private static int shardOf(Object key) {
+        return (key.hashCode() * 0x9E3779B9) >>> (32 - SHARD_BITS);
+    }
+}
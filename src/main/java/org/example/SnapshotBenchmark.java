@@ -0,0 +1,124 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Compares {@link BinarySnapshotStorage} with the object-stream and pretty-printed Gson formats
+ * of {@code backup/ObjectStreamStorage} and {@code backup/JsonStorage} on one generated campus.
+ * Everything runs in memory so disk speed doesn't blur the numbers.
+ * <p>
+ * Usage: {@code SnapshotBenchmark [entries] [rounds]}
+ */
+public class SnapshotBenchmark {
+
+    private interface Codec {
+        byte[] encode(DataSnapshot data) throws Exception;
+        DataSnapshot decode(byte[] bytes) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        DataSnapshot data = generate(entries, new Random(42));
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Codec objectStream = new Codec() {
+            public byte[] encode(DataSnapshot d) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) { out.writeObject(d); }
+                return bytes.toByteArray();
+            }
+            public DataSnapshot decode(byte[] b) throws Exception {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b))) { return (DataSnapshot) in.readObject(); }
+            }
+        };
+        Codec json = new Codec() {
+            public byte[] encode(DataSnapshot d) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (Writer w = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) { gson.toJson(d, w); }
+                return bytes.toByteArray();
+            }
+            public DataSnapshot decode(byte[] b) throws IOException {
+                try (Reader r = new InputStreamReader(new ByteArrayInputStream(b), StandardCharsets.UTF_8)) { return gson.fromJson(r, DataSnapshot.class); }
+            }
+        };
+        Codec binary = new Codec() {
+            public byte[] encode(DataSnapshot d) throws IOException {
+                ByteBuffer buf = BinarySnapshotStorage.encode(d);
+                byte[] b = new byte[buf.remaining()];
+                buf.get(b);
+                return b;
+            }
+            public DataSnapshot decode(byte[] b) throws IOException {
+                return new MappedSnapshot(ByteBuffer.wrap(b)).toDataSnapshot();
+            }
+        };
+
+        System.out.printf("%,d entries, %,d locations, best of %d rounds%n", entries, data.getLocations().size(), rounds);
+        System.out.printf("%-14s %12s %12s %12s%n", "format", "bytes", "encode ms", "decode ms");
+        run("ObjectStream", objectStream, data, rounds);
+        run("Gson (pretty)", json, data, rounds);
+        run("Binary", binary, data, rounds);
+
+        // Lazy access: open the snapshot and read one entry, which is all a cold-start UI needs first.
+        byte[] b = binary.encode(data);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            MappedSnapshot view = new MappedSnapshot(ByteBuffer.wrap(b));
+            view.entry(view.entryCount() / 2);
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        System.out.printf("%-14s %12s %12s %12.3f%n", "Binary (lazy)", "", "", best / 1e6);
+    }
+
+    private static void run(String name, Codec codec, DataSnapshot data, int rounds) throws Exception {
+        byte[] bytes = null;
+        long bestEncode = Long.MAX_VALUE, bestDecode = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            bytes = codec.encode(data);
+            long t1 = System.nanoTime();
+            DataSnapshot back = codec.decode(bytes);
+            long t2 = System.nanoTime();
+            if (back.getEntries().size() != data.getEntries().size()) throw new IllegalStateException(name + " lost entries");
+            bestEncode = Math.min(bestEncode, t1 - t0);
+            bestDecode = Math.min(bestDecode, t2 - t1);
+        }
+        System.out.printf("%-14s %,12d %12.1f %12.1f%n", name, bytes.length, bestEncode / 1e6, bestDecode / 1e6);
+    }
+
+    static DataSnapshot generate(int entryCount, Random rnd) {
+        DataSnapshot d = new DataSnapshot();
+        int locations = Math.max(10, entryCount / 300);
+        int courses = Math.max(10, entryCount / 40);
+        for (int i = 0; i < locations; i++) {
+            d.addLocation(new Location("Room " + i, "B" + (i % 12), rnd.nextInt(2000) - 1000, rnd.nextInt(2000) - 1000));
+        }
+        String[] days = {"MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY"};
+        ClassType[] types = ClassType.values();
+        for (int i = 0; i < entryCount; i++) {
+            Location loc = d.getLocations().get(rnd.nextInt(locations));
+            int start = 8 * 60 + 15 * rnd.nextInt(40);
+            d.addEntry(new TimetableEntry(i + 1, rnd.nextInt(3), "Course " + rnd.nextInt(courses),
+                    types[rnd.nextInt(types.length)], days[rnd.nextInt(days.length)],
+                    String.format("%02d:%02d", start / 60, start % 60), 45 + 15 * rnd.nextInt(8), loc.getId()));
+        }
+        for (int i = 0; i < entryCount / 20; i++) d.getStudents().add(new Student("Student " + i, "Faculty " + (i % 8)));
+        return d;
+    }
+}
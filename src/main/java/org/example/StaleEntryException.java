@@ -0,0 +1,23 @@
+package org.example;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a timetable entry was changed or deleted by someone else since it was loaded,
+ * so applying the edit would silently overwrite their change.
+ */
+public class StaleEntryException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int entryId;
+
+    public StaleEntryException(int entryId) {
+        super("Timetable entry " + entryId + " was changed or deleted by someone else");
+        this.entryId = entryId;
+    }
+
+    public int getEntryId() {
+        return entryId;
+    }
+}
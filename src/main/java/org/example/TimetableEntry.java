@@ -1,10 +1,16 @@
 package org.example;
 
 import java.io.Serializable;
+import java.time.DayOfWeek;
 import java.util.Objects;
 
 
 public class TimetableEntry implements Serializable {
+    // What the class had before ids and versions were added, so entries saved then still read back.
+    private static final long serialVersionUID = 4522527583129008642L;
+
+    private int id;        // timetable_entries.id; 0 until the entry has been stored
+    private int version;   // bumped by every update, checked by updates and deletes
     private String courseName;
     private ClassType type;
     private String day;
@@ -26,6 +32,14 @@ public class TimetableEntry implements Serializable {
         this.locationId = Objects.requireNonNull(locationId);
     }
 
+    // used in JdbcStorage.java for rows read back from the database
+    public TimetableEntry(int id, int version, String courseName, ClassType type, String day,
+                          String startTime, int durationMinutes, String locationId) {
+        this(courseName, type, day, startTime, durationMinutes, locationId);
+        this.id = id;
+        this.version = version;
+    }
+
     //used in UniversityScheduleTest.java
     public TimetableEntry(String courseName, String typeStr, String day,
                           String startTime, int durationMinutes, String locationId) {
@@ -33,12 +47,26 @@ public class TimetableEntry implements Serializable {
     }
 
 
+    public int getId() { return id; }
+    public int getVersion() { return version; }
     public String getCourseName() { return courseName; }
 
     public ClassType getType() { return type; } // Returns ClassType (Required by ScheduleView)
 
     public String getDay() { return day; }
     public String getStartTime() { return startTime; }
+
+    /** The day as an enum, or null if {@link #getDay()} isn't a day name. */
+    public DayOfWeek getDayOfWeek() {
+        try {
+            return DayOfWeek.valueOf(day);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Start as minutes after midnight, or -1 if {@link #getStartTime()} isn't a time. */
+    public int getStartMinutes() { return TimetableStore.parseMinutes(startTime); }
     public int getDurationMinutes() { return durationMinutes; }
     public String getLocationId() { return locationId; }
 }
\ No newline at end of file
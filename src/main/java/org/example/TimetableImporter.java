@@ -0,0 +1,332 @@
+package org.example;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Streams timetable dumps into a {@link ScheduleStorage} through {@link ScheduleStorage#addTimetableEntries}.
+ * <p>
+ * JSON files use the {@code backup/schedule.json} layout written by {@code JsonStorage}. They are read
+ * token by token in two passes, first the locations and then the entries, so memory use depends on the
+ * number of locations and the batch size, never on the number of entries. A value of the wrong kind, such
+ * as text where a number belongs, fails just its entry; entries at a location with bad coordinates fail
+ * too. Only JSON that can't be parsed at all stops the import. CSV files need a header row
+ * with the columns {@code courseName,type,day,startTime,durationMinutes,location,x,y}, plus an optional
+ * {@code faculty} column.
+ */
+public class TimetableImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    // Failures beyond this are counted but not kept, so a bad file can't exhaust the heap either.
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    private final ScheduleStorage storage;
+    private final String dataSource;
+    private final int batchSize;
+    private final Consumer<Progress> progressListener;
+
+    public TimetableImporter(ScheduleStorage storage, String dataSource) {
+        this(storage, dataSource, DEFAULT_BATCH_SIZE, p -> {});
+    }
+
+    public TimetableImporter(ScheduleStorage storage, String dataSource, int batchSize, Consumer<Progress> progressListener) {
+        this.storage = storage;
+        this.dataSource = dataSource;
+        this.batchSize = batchSize;
+        this.progressListener = progressListener;
+    }
+
+    /** Reported after every batch; {@code rowsRead} counts data rows, not lines or tokens. */
+    public record Progress(long rowsRead, long imported, long failed, long elapsedMillis) {
+        public double rowsPerSecond() {
+            return elapsedMillis == 0 ? 0 : rowsRead * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /** {@code row} is the 1-based data row in the file. */
+    public record Failure(long row, String reason) {}
+
+    public record Report(Progress progress, List<Failure> failures) {}
+
+    public Report importFile(Path file, String faculty) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") ? importCsv(file, faculty) : importJson(file, faculty);
+    }
+
+    public Report importJson(Path file, String faculty) throws IOException {
+        Map<String, Object> locations = readLocations(file);
+        Session session = new Session(faculty);
+
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("entries")) {
+                    in.skipValue();
+                    continue;
+                }
+                in.beginArray();
+                while (in.hasNext()) {
+                    session.accept(readEntry(in, locations, faculty));
+                }
+                in.endArray();
+            }
+            in.endObject();
+        }
+        return session.finish();
+    }
+
+    public Report importCsv(Path file, String defaultFaculty) throws IOException {
+        Session session = new Session(defaultFaculty);
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (header == null) return session.finish();
+            Map<String, Integer> columns = new HashMap<>();
+            List<String> names = parseCsvLine(header);
+            for (int i = 0; i < names.size(); i++) columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+            for (String required : List.of("coursename", "type", "day", "starttime", "durationminutes", "location", "x", "y")) {
+                if (!columns.containsKey(required)) throw new IOException("CSV header is missing column '" + required + "'");
+            }
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                session.accept(readCsvRow(parseCsvLine(line), columns, defaultFaculty));
+            }
+        }
+        return session.finish();
+    }
+
+    // First pass over a JSON dump: only the locations array is materialized. Maps each id and name to
+    // a Location, or to a String saying why the location was rejected.
+    private Map<String, Object> readLocations(Path file) throws IOException {
+        Map<String, Object> byIdOrName = new HashMap<>();
+        try (JsonReader in = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("locations")) {
+                    in.skipValue();
+                    continue;
+                }
+                in.beginArray();
+                while (in.hasNext()) {
+                    String id = null, name = null, building = "GEN", problem = null;
+                    int x = 0, y = 0;
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        String field = in.nextName();
+                        try {
+                            switch (field) {
+                                case "id" -> id = nextStringOrNull(in);
+                                case "name" -> name = nextStringOrNull(in);
+                                case "building" -> building = nextStringOrNull(in);
+                                case "x" -> x = in.nextInt();
+                                case "y" -> y = in.nextInt();
+                                default -> in.skipValue();
+                            }
+                        } catch (IllegalStateException | NumberFormatException e) {
+                            problem = skipBadValue(in, field, e, problem);
+                        }
+                    }
+                    in.endObject();
+                    if (name == null) continue;
+                    Object loc = problem != null ? "Location " + name + ": " + problem
+                            : new Location(name, building == null ? "GEN" : building, x, y);
+                    if (id != null) byIdOrName.put(id, loc);
+                    byIdOrName.putIfAbsent(name, loc);
+                }
+                in.endArray();
+            }
+            in.endObject();
+        }
+        return byIdOrName;
+    }
+
+    // Returns either a NewTimetableEntry or a String describing why the row was rejected.
+    private Object readEntry(JsonReader in, Map<String, Object> locations, String faculty) throws IOException {
+        String courseName = null, type = null, day = null, startTime = null, locationId = null, problem = null;
+        int duration = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            String field = in.nextName();
+            try {
+                switch (field) {
+                    case "courseName" -> courseName = nextStringOrNull(in);
+                    case "type" -> type = nextStringOrNull(in);
+                    case "day" -> day = nextStringOrNull(in);
+                    case "startTime" -> startTime = nextStringOrNull(in);
+                    case "durationMinutes" -> duration = in.nextInt();
+                    case "locationId" -> locationId = nextStringOrNull(in);
+                    default -> in.skipValue();
+                }
+            } catch (IllegalStateException | NumberFormatException e) {
+                problem = skipBadValue(in, field, e, problem);
+            }
+        }
+        in.endObject();
+
+        if (problem != null) return problem;
+        if (courseName == null || type == null || day == null || startTime == null || locationId == null) {
+            return "Missing required field";
+        }
+        Object loc = locations.get(locationId);
+        if (loc == null) return "Unknown location: " + locationId;
+        if (!(loc instanceof Location l)) return (String) loc;
+        return new NewTimetableEntry(courseName, type, day, startTime, duration, l.getName(), l.getX(), l.getY(), faculty);
+    }
+
+    // The reader is left on the bad value, so skipping it keeps the rest of the object readable; the first problem is kept.
+    private static String skipBadValue(JsonReader in, String field, RuntimeException e, String problem) throws IOException {
+        in.skipValue();
+        return problem != null ? problem : "Bad " + field + ": " + e.getMessage();
+    }
+
+    private Object readCsvRow(List<String> cells, Map<String, Integer> columns, String defaultFaculty) {
+        try {
+            Integer facultyCol = columns.get("faculty");
+            String faculty = facultyCol != null && facultyCol < cells.size() && !cells.get(facultyCol).isBlank()
+                    ? cells.get(facultyCol).trim() : defaultFaculty;
+            return new NewTimetableEntry(
+                    cell(cells, columns, "coursename"),
+                    cell(cells, columns, "type"),
+                    cell(cells, columns, "day"),
+                    cell(cells, columns, "starttime"),
+                    Integer.parseInt(cell(cells, columns, "durationminutes")),
+                    cell(cells, columns, "location"),
+                    Integer.parseInt(cell(cells, columns, "x")),
+                    Integer.parseInt(cell(cells, columns, "y")),
+                    faculty);
+        } catch (NumberFormatException e) {
+            return "Not a number: " + e.getMessage();
+        } catch (IndexOutOfBoundsException e) {
+            return "Too few columns";
+        }
+    }
+
+    private static String cell(List<String> cells, Map<String, Integer> columns, String name) {
+        return cells.get(columns.get(name)).trim();
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    // RFC 4180 style: commas inside double quotes are kept, "" is an escaped quote.
+    static List<String> parseCsvLine(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else if (ch == '"') {
+                    quoted = false;
+                } else {
+                    cur.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                cells.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        cells.add(cur.toString());
+        return cells;
+    }
+
+    /** Buffers at most one batch of rows and tracks counts for a single import. */
+    private class Session {
+        private final long startNanos = System.nanoTime();
+        private final List<NewTimetableEntry> batch = new ArrayList<>(batchSize);
+        private final List<Long> batchRows = new ArrayList<>(batchSize);
+        private final List<Failure> failures = new ArrayList<>();
+        private final String faculty;
+        private long rowsRead;
+        private long imported;
+        private long failed;
+
+        Session(String faculty) {
+            this.faculty = faculty;
+        }
+
+        void accept(Object parsed) throws IOException {
+            rowsRead++;
+            if (parsed instanceof NewTimetableEntry row) {
+                if (row.faculty() == null) {
+                    fail(rowsRead, "No faculty given");
+                    return;
+                }
+                batch.add(row);
+                batchRows.add(rowsRead);
+                if (batch.size() >= batchSize) flush();
+            } else {
+                fail(rowsRead, (String) parsed);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (batch.isEmpty()) return;
+            BatchResult result = storage.addTimetableEntries(batch, dataSource);
+            imported += result.inserted();
+            for (BatchResult.RowFailure f : result.failures()) fail(batchRows.get(f.index()), f.reason());
+            batch.clear();
+            batchRows.clear();
+            progressListener.accept(progress());
+        }
+
+        private void fail(long row, String reason) {
+            failed++;
+            if (failures.size() < MAX_REPORTED_FAILURES) failures.add(new Failure(row, reason));
+        }
+
+        private Progress progress() {
+            return new Progress(rowsRead, imported, failed, (System.nanoTime() - startNanos) / 1_000_000);
+        }
+
+        Report finish() throws IOException {
+            flush();
+            return new Report(progress(), List.copyOf(failures));
+        }
+    }
+
+    /** Usage: {@code TimetableImporter <file.json|file.csv> <faculty> [jdbcUrl]} */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TimetableImporter <file.json|file.csv> <faculty> [jdbcUrl]");
+            System.exit(2);
+        }
+        String dataSource = args.length > 2 ? args[2] : System.getenv().getOrDefault("JDBC_URL",
+                "jdbc:mysql://localhost:3306/university_schedule?user=root&password=root");
+
+        try (JdbcStorage storage = new JdbcStorage()) {
+            TimetableImporter importer = new TimetableImporter(storage, dataSource, DEFAULT_BATCH_SIZE, p ->
+                    System.out.printf("%,d rows read, %,d imported, %,d failed (%.0f rows/s)%n",
+                            p.rowsRead(), p.imported(), p.failed(), p.rowsPerSecond()));
+            Report report = importer.importFile(Path.of(args[0]), args[1]);
+            report.failures().forEach(f -> System.out.println("Row " + f.row() + ": " + f.reason()));
+            System.out.printf("Done in %,d ms%n", report.progress().elapsedMillis());
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a timetable: every session of every requested course gets a day from
+ * {@link ScheduleGrid#DAYS}, a start from {@link ScheduleGrid#TIME_SLOTS} and a room, so that no room
+ * is double-booked and no two sessions of a course overlap, counting the classes already in the
+ * timetable of every faculty.
+ * <p>
+ * Among the valid timetables it looks for one with the fewest penalty points: a session outside
+ * the course's preferred days, a second session of a course on the same day, and an evening start
+ * each cost points. The search is depth-first branch and bound over the sessions, longest first.
+ * Several attempts, each with its own tie-breaking order, run on the fork-join pool and share the
+ * best score found so far, so a good timetable found by one attempt prunes all the others. Each
+ * attempt gives up after a fixed number of search nodes, which bounds the running time even when
+ * no valid timetable exists.
+ */
+public class TimetableSolver {
+
+    private static final int OFF_PREFERRED_DAY = 10;
+    private static final int SAME_DAY_REPEAT = 4;
+    private static final int EVENING_START = 2;
+    private static final int EVENING_MINUTES = 18 * 60;
+
+    private static final int NODE_BUDGET = 200_000;
+    // Rooms have no capacity or equipment yet, so they are interchangeable: trying more than a few
+    // free rooms for the same day and slot only repeats the same dead end.
+    private static final int ROOMS_PER_SLOT = 3;
+
+    // Occupancy bitmaps hold one bit per five minutes of a day.
+    private static final int UNIT_MINUTES = 5;
+    private static final int DAY_UNITS = 24 * 60 / UNIT_MINUTES;
+    private static final int WORDS = (DAY_UNITS + 63) / 64;
+
+    /** One course to place; an empty {@code preferredDays} means any day is fine. */
+    public record CourseRequest(String courseName, ClassType type, int durationMinutes, int sessions,
+                                Set<DayOfWeek> preferredDays) {
+
+        /**
+         * {@code courseName,type,durationMinutes,sessions[,preferred days separated by spaces]}
+         *
+         * @throws IllegalArgumentException with a message fit to show the user if the line is not valid
+         */
+        public static CourseRequest parse(String line) {
+            List<String> cells = TimetableImporter.parseCsvLine(line);
+            if (cells.size() < 4 || cells.get(0).isBlank()) {
+                throw new IllegalArgumentException("Expected courseName,type,durationMinutes,sessions[,days]: " + line);
+            }
+            String name = cells.get(0).trim();
+            Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+            if (cells.size() > 4) {
+                for (String d : cells.get(4).trim().split("\\s+")) {
+                    if (!d.isEmpty()) days.add(parseCell(DayOfWeek.class, d, name + ": unknown day"));
+                }
+            }
+            int duration = parseNumber(cells.get(2), name + ": duration must be a number of minutes");
+            int sessions = parseNumber(cells.get(3), name + ": sessions must be a number");
+            if (duration <= 0 || duration > NewTimetableEntry.MAX_DURATION_MINUTES) {
+                throw new IllegalArgumentException(name + ": duration must be 1 to " + NewTimetableEntry.MAX_DURATION_MINUTES + " minutes");
+            }
+            if (sessions <= 0) throw new IllegalArgumentException(name + ": sessions must be positive");
+            return new CourseRequest(name, parseCell(ClassType.class, cells.get(1), name + ": unknown class type"), duration, sessions, days);
+        }
+
+        private static <E extends Enum<E>> E parseCell(Class<E> type, String cell, String problem) {
+            try {
+                return Enum.valueOf(type, cell.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(problem + " '" + cell.trim() + "'");
+            }
+        }
+
+        private static int parseNumber(String cell, String problem) {
+            try {
+                return Integer.parseInt(cell.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(problem + ", not '" + cell.trim() + "'");
+            }
+        }
+    }
+
+    public record Placement(CourseRequest course, DayOfWeek day, String startTime, Location room) {
+        public NewTimetableEntry toRow(String faculty) {
+            return new NewTimetableEntry(course.courseName(), course.type().name(), day.name(), startTime,
+                    course.durationMinutes(), room.getName(), room.getX(), room.getY(), faculty);
+        }
+    }
+
+    /** Placements in request order; {@code penalty} is the sum of the soft preference points. */
+    public record Solution(List<Placement> placements, int penalty) {}
+
+    private final List<Location> rooms;
+    private final List<? extends TimetableEntry> existing;
+    private final DayOfWeek[] days = Arrays.stream(ScheduleGrid.DAYS).map(DayOfWeek::valueOf).toArray(DayOfWeek[]::new);
+    private final int[] slotStarts = ScheduleGrid.SLOT_MINUTES;
+    private final long[] roomBusy; // [room][day][word]
+
+    /** {@code existing} are classes that stay where they are; their rooms and courses are taken. */
+    public TimetableSolver(List<Location> rooms, Collection<? extends TimetableEntry> existing) {
+        this.rooms = List.copyOf(rooms);
+        this.existing = List.copyOf(existing);
+        this.roomBusy = new long[rooms.size() * days.length * WORDS];
+
+        Map<String, Integer> roomIndex = new HashMap<>();
+        for (int r = 0; r < rooms.size(); r++) {
+            roomIndex.putIfAbsent(rooms.get(r).getId(), r);
+            roomIndex.putIfAbsent(rooms.get(r).getName().toLowerCase(Locale.ROOT), r);
+        }
+        for (TimetableEntry e : this.existing) {
+            Integer r = roomIndex.get(e.getLocationId());
+            if (r == null) r = roomIndex.get(e.getLocationId().toLowerCase(Locale.ROOT));
+            int d = dayIndex(e.getDayOfWeek());
+            if (r != null && d >= 0 && e.getStartMinutes() >= 0) {
+                mark(roomBusy, (r * days.length + d) * WORDS, firstUnit(e.getStartMinutes()),
+                        endUnit(e.getStartMinutes(), e.getDurationMinutes()), true);
+            }
+        }
+    }
+
+    public Optional<Solution> solve(List<CourseRequest> requests) {
+        return solve(requests, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /** The best timetable any of the {@code attempts} found, or empty if none found a valid one. */
+    public Optional<Solution> solve(List<CourseRequest> requests, int attempts) {
+        for (CourseRequest c : requests) {
+            if (c.courseName() == null || c.courseName().isBlank()) throw new IllegalArgumentException("Course name is required");
+            if (c.durationMinutes() <= 0 || c.sessions() <= 0) {
+                throw new IllegalArgumentException(c.courseName() + ": duration and sessions must be positive");
+            }
+        }
+        if (requests.isEmpty()) return Optional.of(new Solution(List.of(), 0));
+        if (rooms.isEmpty()) return Optional.empty();
+
+        Problem problem = new Problem(requests);
+        AtomicInteger best = new AtomicInteger(Integer.MAX_VALUE);
+        return IntStream.range(0, attempts).parallel()
+                .mapToObj(seed -> new Search(problem, seed, best).run())
+                .filter(Objects::nonNull)
+                .min(Comparator.comparingInt(Solution::penalty));
+    }
+
+    /**
+     * Solves {@code requests} against everything already stored and writes the result through
+     * {@link ScheduleStorage#addTimetableEntries} as one batch.
+     *
+     * @throws IOException if a request is invalid, no valid timetable was found or the batch was not stored in full
+     */
+    public static Solution schedule(ScheduleStorage storage, String faculty, List<CourseRequest> requests,
+                                    String dataSource) throws IOException {
+        return schedule(storage, faculty, requests, dataSource, () -> {});
+    }
+
+    /**
+     * Like {@link #schedule(ScheduleStorage, String, List, String)}, calling {@code checkpoint} after
+     * loading and after solving; it can throw to give up before anything is stored.
+     */
+    public static Solution schedule(ScheduleStorage storage, String faculty, List<CourseRequest> requests,
+                                    String dataSource, Runnable checkpoint) throws IOException {
+        List<Location> rooms = storage.loadByFaculty(faculty, dataSource).getLocations();
+        List<TimetableEntry> existing = ConflictDetector.campusEntries(storage, dataSource);
+        checkpoint.run();
+        Solution solution;
+        try {
+            solution = new TimetableSolver(rooms, existing).solve(requests)
+                    .orElseThrow(() -> new IOException("No conflict-free timetable found; add rooms or reduce the sessions requested"));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        checkpoint.run();
+
+        List<NewTimetableEntry> rows = solution.placements().stream().map(p -> p.toRow(faculty)).toList();
+        BatchResult result = storage.addTimetableEntries(rows, dataSource);
+        if (result.hasFailures()) {
+            throw new IOException(result.failures().size() + " of " + rows.size() + " sessions were not stored: "
+                    + result.failures().get(0).reason());
+        }
+        return solution;
+    }
+
+    private int dayIndex(DayOfWeek day) {
+        for (int d = 0; d < days.length; d++) {
+            if (days[d] == day) return d;
+        }
+        return -1;
+    }
+
+    private static int firstUnit(int startMinutes) {
+        return startMinutes / UNIT_MINUTES;
+    }
+
+    private static int endUnit(int startMinutes, int durationMinutes) {
+        return Math.min(DAY_UNITS, (startMinutes + durationMinutes + UNIT_MINUTES - 1) / UNIT_MINUTES);
+    }
+
+    private static long mask(int word, int from, int to) {
+        int lo = Math.max(from - (word << 6), 0);
+        int hi = Math.min(to - (word << 6), 64);
+        long below = hi == 64 ? -1L : (1L << hi) - 1;
+        return below & (-1L << lo);
+    }
+
+    private static boolean isFree(long[] bits, int base, int from, int to) {
+        for (int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+            if ((bits[base + w] & mask(w, from, to)) != 0) return false;
+        }
+        return true;
+    }
+
+    private static void mark(long[] bits, int base, int from, int to, boolean busy) {
+        for (int w = from >>> 6; w <= (to - 1) >>> 6; w++) {
+            if (busy) bits[base + w] |= mask(w, from, to);
+            else bits[base + w] &= ~mask(w, from, to);
+        }
+    }
+
+    /** The sessions to place and the state every attempt starts from; read-only once built. */
+    private final class Problem {
+        final List<CourseRequest> requests;
+        final int[] request, course, minutes; // per session
+        final int courseCount;
+        final long[] courseBusy; // [course][day][word]
+
+        Problem(List<CourseRequest> requests) {
+            this.requests = requests;
+            Map<String, Integer> courseIndex = new HashMap<>();
+            int sessions = requests.stream().mapToInt(CourseRequest::sessions).sum();
+            request = new int[sessions];
+            course = new int[sessions];
+            minutes = new int[sessions];
+            int s = 0;
+            for (int i = 0; i < requests.size(); i++) {
+                CourseRequest c = requests.get(i);
+                int ci = courseIndex.computeIfAbsent(c.courseName().toLowerCase(Locale.ROOT), k -> courseIndex.size());
+                for (int k = 0; k < c.sessions(); k++, s++) {
+                    request[s] = i;
+                    course[s] = ci;
+                    minutes[s] = c.durationMinutes();
+                }
+            }
+            courseCount = courseIndex.size();
+
+            courseBusy = new long[courseCount * days.length * WORDS];
+            for (TimetableEntry e : existing) {
+                Integer ci = courseIndex.get(e.getCourseName().toLowerCase(Locale.ROOT));
+                int d = dayIndex(e.getDayOfWeek());
+                if (ci != null && d >= 0 && e.getStartMinutes() >= 0) {
+                    mark(courseBusy, (ci * days.length + d) * WORDS, firstUnit(e.getStartMinutes()),
+                            endUnit(e.getStartMinutes(), e.getDurationMinutes()), true);
+                }
+            }
+        }
+    }
+
+    /** One depth-first attempt with its own copy of the occupancy bitmaps. */
+    private final class Search {
+        private final Problem p;
+        private final AtomicInteger best;
+        private final Random random;
+        private final boolean shuffle;
+        private final long[] roomBits = roomBusy.clone();
+        private final long[] courseBits;
+        private final int[] sessionsOnDay; // [course][day]
+        private final int[] placed;        // per session: (day * slots + slot) * rooms + room
+        private final Integer[] order;
+        private int nodes;
+        private Solution found;
+
+        Search(Problem p, int seed, AtomicInteger best) {
+            this.p = p;
+            this.best = best;
+            this.random = new Random(seed);
+            this.shuffle = seed > 0;
+            this.courseBits = p.courseBusy.clone();
+            this.sessionsOnDay = new int[p.courseCount * days.length];
+            this.placed = new int[p.minutes.length];
+
+            int[] sessionsOfCourse = new int[p.courseCount];
+            for (int c : p.course) sessionsOfCourse[c]++;
+            order = new Integer[p.minutes.length];
+            for (int s = 0; s < order.length; s++) order[s] = s;
+            if (shuffle) Collections.shuffle(Arrays.asList(order), random);
+            Arrays.sort(order, Comparator.<Integer>comparingInt(s -> -p.minutes[s])
+                    .thenComparingInt(s -> -sessionsOfCourse[p.course[s]]));
+        }
+
+        Solution run() {
+            search(0, 0);
+            return found;
+        }
+
+        private boolean search(int depth, int penalty) {
+            if (++nodes > NODE_BUDGET || best.get() == 0) return false;
+            if (depth == order.length) {
+                record(penalty);
+                return true;
+            }
+
+            int s = order[depth];
+            int c = p.course[s];
+            CourseRequest req = p.requests.get(p.request[s]);
+            int roomCount = rooms.size();
+            long[] candidates = new long[days.length * slotStarts.length * Math.min(roomCount, ROOMS_PER_SLOT)];
+            int n = 0;
+            for (int d = 0; d < days.length; d++) {
+                for (int slot = 0; slot < slotStarts.length; slot++) {
+                    int from = firstUnit(slotStarts[slot]);
+                    int to = endUnit(slotStarts[slot], p.minutes[s]);
+                    if (slotStarts[slot] + p.minutes[s] > 24 * 60) continue;
+                    if (!isFree(courseBits, (c * days.length + d) * WORDS, from, to)) continue;
+
+                    int cost = penaltyOf(req, c, d, slot);
+                    if (penalty + cost >= best.get()) continue;
+                    int firstRoom = shuffle ? random.nextInt(roomCount) : 0;
+                    for (int i = 0, tried = 0; i < roomCount && tried < ROOMS_PER_SLOT; i++) {
+                        int r = (firstRoom + i) % roomCount;
+                        if (!isFree(roomBits, (r * days.length + d) * WORDS, from, to)) continue;
+                        tried++;
+                        long jitter = shuffle ? random.nextInt(1 << 16) : 0;
+                        int value = (d * slotStarts.length + slot) * roomCount + r;
+                        candidates[n++] = (long) cost << 44 | jitter << 28 | value;
+                    }
+                }
+            }
+            Arrays.sort(candidates, 0, n);
+
+            for (int i = 0; i < n; i++) {
+                int cost = (int) (candidates[i] >>> 44);
+                if (penalty + cost >= best.get()) break; // sorted by cost, so the rest are no better
+                int value = (int) (candidates[i] & ((1 << 28) - 1));
+                int r = value % roomCount, slot = value / roomCount % slotStarts.length, d = value / roomCount / slotStarts.length;
+                int from = firstUnit(slotStarts[slot]), to = endUnit(slotStarts[slot], p.minutes[s]);
+
+                place(s, c, d, r, from, to, true);
+                placed[s] = value;
+                boolean more = search(depth + 1, penalty + cost);
+                place(s, c, d, r, from, to, false);
+                if (!more) return false;
+            }
+            return true;
+        }
+
+        private int penaltyOf(CourseRequest req, int c, int d, int slot) {
+            int cost = SAME_DAY_REPEAT * sessionsOnDay[c * days.length + d];
+            if (!req.preferredDays().isEmpty() && !req.preferredDays().contains(days[d])) cost += OFF_PREFERRED_DAY;
+            if (slotStarts[slot] >= EVENING_MINUTES) cost += EVENING_START;
+            return cost;
+        }
+
+        private void place(int s, int c, int d, int r, int from, int to, boolean on) {
+            mark(roomBits, (r * days.length + d) * WORDS, from, to, on);
+            mark(courseBits, (c * days.length + d) * WORDS, from, to, on);
+            sessionsOnDay[c * days.length + d] += on ? 1 : -1;
+        }
+
+        private void record(int penalty) {
+            int current = best.get();
+            while (penalty < current) {
+                if (best.compareAndSet(current, penalty)) {
+                    List<Placement> placements = new ArrayList<>(placed.length);
+                    int roomCount = rooms.size();
+                    for (int s = 0; s < placed.length; s++) {
+                        int value = placed[s];
+                        int slot = value / roomCount % slotStarts.length;
+                        placements.add(new Placement(p.requests.get(p.request[s]), days[value / roomCount / slotStarts.length],
+                                ScheduleGrid.TIME_SLOTS[slot], rooms.get(value % roomCount)));
+                    }
+                    found = new Solution(placements, penalty);
+                    return;
+                }
+                current = best.get();
+            }
+        }
+    }
+
+    /** Usage: {@code TimetableSolver <requests.csv> <faculty> [jdbcUrl]}, one {@link CourseRequest#parse} line per course. */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: TimetableSolver <requests.csv> <faculty> [jdbcUrl]");
+            System.exit(2);
+        }
+        String dataSource = args.length > 2 ? args[2] : System.getenv().getOrDefault("JDBC_URL",
+                "jdbc:mysql://localhost:3306/university_schedule?user=root&password=root");
+        List<CourseRequest> requests = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Path.of(args[0]), StandardCharsets.UTF_8);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank() || line.startsWith("courseName")) continue;
+            try {
+                requests.add(CourseRequest.parse(line));
+            } catch (IllegalArgumentException e) {
+                System.err.println(args[0] + ":" + (i + 1) + ": " + e.getMessage());
+                System.exit(2);
+            }
+        }
+
+        try (JdbcStorage storage = new JdbcStorage()) {
+            long start = System.nanoTime();
+            Solution solution = schedule(storage, args[1], requests, dataSource);
+            solution.placements().forEach(pl -> System.out.println(pl.course().courseName() + " " + pl.course().type()
+                    + ": " + pl.day() + " " + pl.startTime() + " in " + pl.room().getName()));
+            System.out.printf("%,d sessions placed, penalty %d, in %,d ms%n", solution.placements().size(),
+                    solution.penalty(), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+}
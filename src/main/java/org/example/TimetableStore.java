@@ -0,0 +1,445 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Timetable entries kept column by column in primitive arrays: the day as a {@link DayOfWeek}
+ * ordinal, start and duration in minutes, the type as a {@link ClassType} ordinal, and the course
+ * and location as indexes into pools holding each distinct name once. An entry costs 22 bytes
+ * instead of an object plus four strings.
+ * <p>
+ * {@link #get} returns a view that reads the row on every call, so views must not be kept across
+ * a removal that shifts the rows after them. Code that only needs a few fields can read the
+ * columns directly with {@link #day}, {@link #startMinutes} and friends without allocating.
+ * <p>
+ * {@link #freeze()} makes the store read-only, after which any number of threads can read it.
+ * <p>
+ * Object streams get a plain {@link ArrayList} of entries, which is what {@link DataSnapshot} held
+ * before this class existed, so files written by either version read back in the other.
+ */
+public final class TimetableStore extends AbstractList<TimetableEntry> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DayOfWeek[] DAYS = DayOfWeek.values();
+    private static final ClassType[] TYPES = ClassType.values();
+    private static final String[] TIMES = new String[24 * 60];
+
+    static {
+        for (int m = 0; m < TIMES.length; m++) TIMES[m] = String.format("%02d:%02d", m / 60, m % 60);
+    }
+
+    private int size;
+    private int[] ids;
+    private int[] versions;
+    private int[] courses;
+    private int[] locations;
+    private short[] starts;
+    private short[] durations;
+    private byte[] days;
+    private byte[] types;
+
+    private long writes; // every change to a row, including set(); see writeCount()
+    private transient boolean frozen;
+
+    private final ArrayList<String> courseNames;
+    private final ArrayList<String> locationKeys;
+    private transient Map<String, Integer> courseIndex;
+    private transient Map<String, Integer> locationIndex;
+
+    public TimetableStore() {
+        this(16);
+    }
+
+    public TimetableStore(int capacity) {
+        allocate(Math.max(capacity, 4));
+        courseNames = new ArrayList<>();
+        locationKeys = new ArrayList<>();
+    }
+
+    public TimetableStore(TimetableStore other) {
+        size = other.size;
+        ids = Arrays.copyOf(other.ids, Math.max(size, 4));
+        versions = Arrays.copyOf(other.versions, ids.length);
+        courses = Arrays.copyOf(other.courses, ids.length);
+        locations = Arrays.copyOf(other.locations, ids.length);
+        starts = Arrays.copyOf(other.starts, ids.length);
+        durations = Arrays.copyOf(other.durations, ids.length);
+        days = Arrays.copyOf(other.days, ids.length);
+        types = Arrays.copyOf(other.types, ids.length);
+        courseNames = new ArrayList<>(other.courseNames);
+        locationKeys = new ArrayList<>(other.locationKeys);
+    }
+
+    public TimetableStore(Collection<? extends TimetableEntry> entries) {
+        this(entries.size());
+        addAll(entries);
+    }
+
+    // ---- columns -------------------------------------------------------------------------
+
+    public int id(int row) { return ids[check(row)]; }
+    public int version(int row) { return versions[check(row)]; }
+    public DayOfWeek day(int row) { return DAYS[days[check(row)]]; }
+    public int startMinutes(int row) { return starts[check(row)]; }
+    public int durationMinutes(int row) { return durations[check(row)]; }
+    public ClassType type(int row) { return TYPES[types[check(row)]]; }
+    public int courseId(int row) { return courses[check(row)]; }
+    public int locationRef(int row) { return locations[check(row)]; }
+    public String courseName(int row) { return courseNames.get(courses[check(row)]); }
+    public String locationId(int row) { return locationKeys.get(locations[check(row)]); }
+
+    /** Pool index of the location id or name, or -1 if no entry has ever used it. */
+    public int locationRefOf(String locationId) {
+        Integer i = locationIndex().get(locationId);
+        return i == null ? -1 : i;
+    }
+
+    /** Makes the store read-only: every change from now on throws {@link UnsupportedOperationException}. */
+    public void freeze() {
+        courseIndex();
+        locationIndex();
+        frozen = true;
+    }
+
+    /** Bumped by every change, so derived indexes can tell whether they are still current. */
+    public long writeCount() {
+        return writes;
+    }
+
+    /** Pool index of the course name, or -1 if no entry has ever used it; lets scans compare ints instead of strings. */
+    public int courseIdOf(String courseName) {
+        Integer i = courseIndex().get(courseName);
+        return i == null ? -1 : i;
+    }
+
+    // ---- List ----------------------------------------------------------------------------
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public TimetableEntry get(int row) {
+        return new EntryView(this, check(row));
+    }
+
+    @Override
+    public boolean add(TimetableEntry e) {
+        add(size, e);
+        return true;
+    }
+
+    @Override
+    public void add(int row, TimetableEntry e) {
+        checkNotFrozen();
+        if (row < 0 || row > size) throw new IndexOutOfBoundsException(row);
+        ClassType type = typeOf(e);
+        DayOfWeek day = dayOf(e);
+        int start = startOf(e);
+        checkRange(start, e.getDurationMinutes());
+        Objects.requireNonNull(e.getCourseName());
+        Objects.requireNonNull(e.getLocationId());
+        if (size == ids.length) grow();
+        if (row < size) shift(row, row + 1, size - row);
+        size++;
+        write(row, e.getId(), e.getVersion(), e.getCourseName(), type, day, start, e.getDurationMinutes(), e.getLocationId());
+        modCount++;
+        writes++;
+    }
+
+    /** Appends a row without building an entry first. */
+    public void add(int id, int version, String courseName, ClassType type, DayOfWeek day,
+                    int startMinutes, int durationMinutes, String locationId) {
+        checkNotFrozen();
+        if (size == ids.length) grow();
+        write(size, id, version, courseName, type, day, startMinutes, durationMinutes, locationId);
+        size++;
+        modCount++;
+        writes++;
+    }
+
+    @Override
+    public TimetableEntry set(int row, TimetableEntry e) {
+        checkNotFrozen();
+        TimetableEntry old = detach(check(row));
+        write(row, e);
+        writes++;
+        return old;
+    }
+
+    @Override
+    public TimetableEntry remove(int row) {
+        checkNotFrozen();
+        TimetableEntry old = detach(check(row));
+        shift(row + 1, row, size - row - 1);
+        size--;
+        modCount++;
+        writes++;
+        return old;
+    }
+
+    /** Removes the row by moving the last row into its place: O(1), but the last row changes its number. */
+    public TimetableEntry swapRemove(int row) {
+        checkNotFrozen();
+        TimetableEntry old = detach(check(row));
+        if (row != size - 1) shift(size - 1, row, 1);
+        size--;
+        modCount++;
+        writes++;
+        return old;
+    }
+
+    // One compacting pass instead of a shift per removed row.
+    @Override
+    public boolean removeIf(Predicate<? super TimetableEntry> filter) {
+        checkNotFrozen();
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (filter.test(new EntryView(this, row))) continue;
+            if (kept != row) shift(row, kept, 1);
+            kept++;
+        }
+        if (kept == size) return false;
+        size = kept;
+        modCount++;
+        writes++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        checkNotFrozen();
+        size = 0;
+        modCount++;
+        writes++;
+    }
+
+    /** Fresh {@link TimetableEntry} holding the row's values, unaffected by later changes to the store. */
+    public TimetableEntry detach(int row) {
+        return new TimetableEntry(ids[row], versions[row], courseName(row), type(row), day(row).name(),
+                formatMinutes(starts[row]), durations[row], locationId(row));
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new ArrayList<>(this);
+    }
+
+    // ---- internals -----------------------------------------------------------------------
+
+    private void checkNotFrozen() {
+        if (frozen) throw new UnsupportedOperationException("The timetable is frozen");
+    }
+
+    private void write(int row, TimetableEntry e) {
+        write(row, e.getId(), e.getVersion(), e.getCourseName(), typeOf(e), dayOf(e), startOf(e), e.getDurationMinutes(), e.getLocationId());
+    }
+
+    private static ClassType typeOf(TimetableEntry e) {
+        if (e.getType() == null) throw new IllegalArgumentException("Missing class type");
+        return e.getType();
+    }
+
+    private static DayOfWeek dayOf(TimetableEntry e) {
+        DayOfWeek day = e.getDayOfWeek();
+        if (day == null) throw new IllegalArgumentException("Invalid day: " + e.getDay());
+        return day;
+    }
+
+    private static int startOf(TimetableEntry e) {
+        int start = e.getStartMinutes();
+        if (start < 0) throw new IllegalArgumentException("Invalid start time: " + e.getStartTime());
+        return start;
+    }
+
+    private void write(int row, int id, int version, String courseName, ClassType type, DayOfWeek day,
+                       int startMinutes, int durationMinutes, String locationId) {
+        checkRange(startMinutes, durationMinutes);
+        ids[row] = id;
+        versions[row] = version;
+        courses[row] = intern(Objects.requireNonNull(courseName), courseNames, courseIndex());
+        locations[row] = intern(Objects.requireNonNull(locationId), locationKeys, locationIndex());
+        starts[row] = (short) startMinutes;
+        durations[row] = (short) durationMinutes;
+        days[row] = (byte) day.ordinal();
+        types[row] = (byte) type.ordinal();
+    }
+
+    private static void checkRange(int startMinutes, int durationMinutes) {
+        if (startMinutes < 0 || startMinutes >= TIMES.length) throw new IllegalArgumentException("Invalid start: " + startMinutes);
+        if (durationMinutes < 0 || durationMinutes > Short.MAX_VALUE) throw new IllegalArgumentException("Invalid duration: " + durationMinutes);
+    }
+
+    private static int intern(String value, List<String> pool, Map<String, Integer> index) {
+        Integer i = index.get(value);
+        if (i != null) return i;
+        pool.add(value);
+        index.put(value, pool.size() - 1);
+        return pool.size() - 1;
+    }
+
+    // Transient so deserialized stores rebuild them instead of writing every name twice.
+    private Map<String, Integer> courseIndex() {
+        if (courseIndex == null) courseIndex = indexOf(courseNames);
+        return courseIndex;
+    }
+
+    private Map<String, Integer> locationIndex() {
+        if (locationIndex == null) locationIndex = indexOf(locationKeys);
+        return locationIndex;
+    }
+
+    private static Map<String, Integer> indexOf(List<String> pool) {
+        Map<String, Integer> index = new HashMap<>(pool.size() * 2);
+        for (int i = 0; i < pool.size(); i++) index.put(pool.get(i), i);
+        return index;
+    }
+
+    private void shift(int from, int to, int count) {
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(versions, from, versions, to, count);
+        System.arraycopy(courses, from, courses, to, count);
+        System.arraycopy(locations, from, locations, to, count);
+        System.arraycopy(starts, from, starts, to, count);
+        System.arraycopy(durations, from, durations, to, count);
+        System.arraycopy(days, from, days, to, count);
+        System.arraycopy(types, from, types, to, count);
+    }
+
+    private void allocate(int capacity) {
+        ids = new int[capacity];
+        versions = new int[capacity];
+        courses = new int[capacity];
+        locations = new int[capacity];
+        starts = new short[capacity];
+        durations = new short[capacity];
+        days = new byte[capacity];
+        types = new byte[capacity];
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1);
+        ids = Arrays.copyOf(ids, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        courses = Arrays.copyOf(courses, capacity);
+        locations = Arrays.copyOf(locations, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        days = Arrays.copyOf(days, capacity);
+        types = Arrays.copyOf(types, capacity);
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException(row);
+        return row;
+    }
+
+    // ---- time helpers --------------------------------------------------------------------
+
+    /** Minutes after midnight for {@code HH:mm} or {@code HH:mm:ss}, or -1 if it isn't a time. */
+    static int parseMinutes(String time) {
+        if (time == null) return -1;
+        String t = time.trim();
+        if (t.length() >= 5 && t.charAt(2) == ':' && isDigit(t, 0) && isDigit(t, 1) && isDigit(t, 3) && isDigit(t, 4)
+                && (t.length() == 5 || t.length() == 8 && t.charAt(5) == ':')) {
+            int h = (t.charAt(0) - '0') * 10 + (t.charAt(1) - '0');
+            int m = (t.charAt(3) - '0') * 10 + (t.charAt(4) - '0');
+            if (h < 24 && m < 60) return h * 60 + m;
+        }
+        try {
+            LocalTime lt = LocalTime.parse(t);
+            return lt.getHour() * 60 + lt.getMinute();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /** {@code HH:mm}; the strings are shared, so formatting allocates nothing. */
+    static String formatMinutes(int minutes) {
+        return TIMES[minutes];
+    }
+
+    private static boolean isDigit(String s, int i) {
+        char c = s.charAt(i);
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * A row of a {@link TimetableStore} seen as a {@link TimetableEntry}. It serializes as a plain
+     * entry, both with object streams and with Gson, so snapshots holding views save like any other.
+     */
+    @JsonAdapter(EntryView.GsonFactory.class)
+    static final class EntryView extends TimetableEntry {
+        private static final long serialVersionUID = 1L;
+
+        private final transient TimetableStore store;
+        private final transient int row;
+
+        EntryView(TimetableStore store, int row) {
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override public int getId() { return store.ids[row]; }
+        @Override public int getVersion() { return store.versions[row]; }
+        @Override public String getCourseName() { return store.courseNames.get(store.courses[row]); }
+        @Override public ClassType getType() { return TYPES[store.types[row]]; }
+        @Override public String getDay() { return DAYS[store.days[row]].name(); }
+        @Override public DayOfWeek getDayOfWeek() { return DAYS[store.days[row]]; }
+        @Override public String getStartTime() { return TIMES[store.starts[row]]; }
+        @Override public int getStartMinutes() { return store.starts[row]; }
+        @Override public int getDurationMinutes() { return store.durations[row]; }
+        @Override public String getLocationId() { return store.locationKeys.get(store.locations[row]); }
+
+        TimetableEntry detach() {
+            return store.detach(row);
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            return detach();
+        }
+
+        // Written and read as a plain entry; one read back is a view of a store of its own.
+        static final class GsonFactory implements TypeAdapterFactory {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                TypeAdapter<TimetableEntry> plain = gson.getAdapter(TimetableEntry.class);
+                return (TypeAdapter<T>) new TypeAdapter<EntryView>() {
+                    @Override
+                    public void write(JsonWriter out, EntryView e) throws IOException {
+                        plain.write(out, e == null ? null : e.detach());
+                    }
+
+                    @Override
+                    public EntryView read(JsonReader in) throws IOException {
+                        TimetableEntry e = plain.read(in);
+                        return e == null ? null : (EntryView) new TimetableStore(List.of(e)).get(0);
+                    }
+                };
+            }
+        }
+    }
+}
@@ -1,6 +1,43 @@
 package org.example;
 
 import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.logging.Logger;
 import static org.junit.jupiter.api.Assertions.*;
 
 class UniversityScheduleTest {
@@ -49,4 +86,1514 @@ class UniversityScheduleTest {
 
         assertEquals("You are at the Main Entrance.", directions);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testTimetableStoreKeepsEntryValues() {
+        TimetableStore store = new TimetableStore();
+        store.add(new TimetableEntry("Java", "LECTURE", "monday", "08:00:00", 90, "Room 1"));
+        store.add(new TimetableEntry("Java", "LAB", "FRIDAY", "14:40", 45, "Room 2"));
+        store.remove(0);
+
+        TimetableEntry entry = store.get(0);
+        assertEquals("Java", entry.getCourseName());
+        assertEquals("FRIDAY", entry.getDay());
+        assertEquals("14:40", entry.getStartTime());
+        assertEquals(880, entry.getStartMinutes());
+        assertEquals("Room 2", entry.getLocationId());
+    }
+
+    @Test
+    void testConflictDetectorFindsRoomAndCourseClashes() {
+        List<TimetableEntry> entries = List.of(
+                new TimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1"),
+                new TimetableEntry("Math", "LECTURE", "MONDAY", "09:00", 60, "room 1"),
+                new TimetableEntry("Java", "LAB", "MONDAY", "09:15", 45, "Room 2"),
+                new TimetableEntry("Math", "LAB", "MONDAY", "10:00", 60, "Room 1"));
+
+        List<ConflictDetector.Conflict> conflicts = ConflictDetector.audit(entries);
+
+        assertEquals(2, conflicts.size());
+        assertEquals(ConflictDetector.Kind.ROOM, conflicts.get(0).kind());
+        assertEquals(540, conflicts.get(0).from());
+        assertEquals(570, conflicts.get(0).to());
+        assertEquals(ConflictDetector.Kind.COURSE, conflicts.get(1).kind());
+        assertEquals("Java", conflicts.get(1).resource());
+    }
+
+    @Test
+    void testScheduleConflictExceptionSerializes() throws Exception {
+        DataSnapshot data = new DataSnapshot();
+        data.addEntry(new TimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1"));
+        data.addEntry(new TimetableEntry("Math", "LAB", "MONDAY", "09:00", 60, "Room 1"));
+        ScheduleConflictException thrown = new ScheduleConflictException(ConflictDetector.audit(data.getEntries()));
+
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes)) {
+            out.writeObject(thrown);
+        }
+        try (java.io.ObjectInputStream in = new java.io.ObjectInputStream(new java.io.ByteArrayInputStream(bytes.toByteArray()))) {
+            ScheduleConflictException back = (ScheduleConflictException) in.readObject();
+            assertEquals(thrown.getMessage(), back.getMessage());
+            assertEquals("Math", back.getConflicts().get(0).second().getCourseName());
+        }
+    }
+
+    @Test
+    void testNewTimetableEntryRejectsClassesOutsideOneDay() {
+        assertNull(row("22:30", 90).validationError());
+        assertEquals("Class would run past midnight", row("23:00", 90).validationError());
+        assertNotNull(row("08:00", NewTimetableEntry.MAX_DURATION_MINUTES + 1).validationError());
+        assertNotNull(row("08:00", 0).validationError());
+        assertNotNull(row("8 o'clock", 60).validationError());
+    }
+
+    private static NewTimetableEntry row(String start, int duration) {
+        return new NewTimetableEntry("Java", "LECTURE", "MONDAY", start, duration, "Room 1", 0, 0, "CS");
+    }
+
+    @Test
+    void testConnectionPoolBlocksAtMaxSizeAndReusesConnections() throws SQLException {
+        FakeDb db = FakeDb.create("pool-bounds");
+        try (ConnectionPool pool = new ConnectionPool(db.url, 2, 50, 60_000, 4)) {
+            ConnectionPool.PooledConnection a = pool.borrow();
+            ConnectionPool.PooledConnection b = pool.borrow();
+            assertThrows(SQLTimeoutException.class, pool::borrow);
+            assertEquals(2, pool.stats().active());
+            assertEquals(1, pool.stats().timeouts());
+
+            a.close();
+            a.close(); // a second close must not free a second slot
+            ConnectionPool.PooledConnection c = pool.borrow();
+            assertSame(a.connection(), c.connection());
+            assertThrows(SQLTimeoutException.class, pool::borrow);
+            assertEquals(2, pool.stats().created());
+            b.close();
+            c.close();
+            assertEquals(2, pool.stats().idle());
+        }
+        assertEquals(0, db.open);
+    }
+
+    @Test
+    void testConnectionPoolClosesIdleConnectionsAndEvictsCachedStatements() throws Exception {
+        FakeDb db = FakeDb.create("pool-idle");
+        try (ConnectionPool pool = new ConnectionPool(db.url, 2, 50, 100, 1)) {
+            try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+                PreparedStatement first = conn.prepare("SELECT 1");
+                assertSame(first, conn.prepare("SELECT 1"));
+                conn.prepare("SELECT 2");
+                assertTrue(first.isClosed());
+            }
+            assertEquals(1, db.open);
+            Thread.sleep(1_500); // the reaper runs every second at the shortest
+            assertEquals(0, pool.stats().idle());
+            assertEquals(0, db.open);
+        }
+    }
+
+    @Test
+    void testIdResolverUpsertsOnceAndServesRepeatsFromCache() throws SQLException {
+        FakeDb db = FakeDb.create("resolver");
+        IdResolver ids = new IdResolver();
+        try (ConnectionPool pool = new ConnectionPool(db.url); ConnectionPool.PooledConnection conn = pool.borrow()) {
+            int java = ids.courseId(conn, "Java", "CS");
+            assertEquals(java, ids.courseId(conn, "  JAVA ", "CS"));
+            assertEquals(java, ids.findCourseId(conn, "java"));
+            assertEquals(1, db.executed.size(), "repeats must be cache hits");
+
+            // Created by someone else: the upsert returns the existing id instead of a duplicate.
+            db.courses.put("math", 42);
+            assertEquals(42, ids.courseId(conn, "Math", "CS"));
+
+            int room = ids.locationId(conn, "Room 1", 1, 2, 7);
+            assertEquals(room, ids.locationId(conn, "room 1", 1, 2, 8));
+            assertEquals(3, db.executed.size());
+            assertEquals(room, ids.locationId(conn, "Room 1", 5, 6, 9));
+            assertTrue(db.executed.get(3).startsWith("UPDATE locations"), "a move updates the cached id in place");
+            assertArrayEquals(new int[]{room, 5, 6}, db.locations.get("room 1"));
+
+            // Deleted behind the cache's back: the update matches nothing, so it falls back to the upsert.
+            db.locations.clear();
+            int recreated = ids.locationId(conn, "Room 1", 7, 8, 10);
+            assertNotEquals(room, recreated);
+            assertEquals(recreated, db.locations.get("room 1")[0]);
+
+            ids.forgetCourse("Java");
+            assertEquals(java, ids.findCourseId(conn, "Java"));
+            assertTrue(db.executed.get(db.executed.size() - 1).startsWith("SELECT"));
+        }
+    }
+
+    @Test
+    void testChangesSinceReportUpdatesDeletesAndMovedLocations() throws Exception {
+        String ds = java.nio.file.Files.createTempDirectory("delta").toString();
+        FileStorage files = new FileStorage(false);
+        files.addTimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1", 0, 0, "CS", ds);
+        files.addTimetableEntry("Math", "LAB", "TUESDAY", "10:00", 60, "Room 2", 5, 5, "CS", ds);
+        files.addTimetableEntry("Art", "SEMINAR", "FRIDAY", "12:00", 60, "Room 3", 9, 9, "History", ds);
+        DataSnapshot before = files.loadByFaculty("CS", ds);
+        TimetableEntry java = entryNamed(before, "Java"), math = entryNamed(before, "Math");
+
+        files.updateTimetableEntry(java.getId(), java.getVersion(), "Java", "LAB", "Room 2", 7, 7, "CS", ds);
+        files.deleteTimetableEntry(math.getId(), math.getVersion(), ds);
+        files.addTimetableEntry("Logic", "LECTURE", "WEDNESDAY", "09:40", 90, "Room 1", 0, 0, "CS", ds);
+
+        ChangeSet changes = files.loadChangesSince("CS", before.getVersion(), ds);
+        assertEquals(before.getVersion(), changes.fromVersion());
+        assertEquals(List.of(math.getId()), changes.deletedEntryIds());
+        assertEquals(List.of("Java", "Logic"), changes.upsertedEntries().stream().map(TimetableEntry::getCourseName).sorted().toList());
+        assertEquals(List.of("Room 2"), changes.upsertedLocations().stream().map(Location::getName).toList());
+
+        DataSnapshot caughtUp = new DataSnapshot(before);
+        caughtUp.apply(changes);
+        DataSnapshot reloaded = files.loadByFaculty("CS", ds);
+        assertEquals(describe(reloaded), describe(caughtUp));
+        assertEquals(reloaded.getVersion(), caughtUp.getVersion());
+        assertTrue(files.loadChangesSince("CS", reloaded.getVersion(), ds).isEmpty());
+        // Other faculties get the moved room, since every snapshot holds all rooms, but none of CS's entries.
+        ChangeSet history = files.loadChangesSince("History", before.getVersion(), ds);
+        assertTrue(history.upsertedEntries().isEmpty() && history.deletedEntryIds().isEmpty());
+        assertEquals(1, history.upsertedLocations().size());
+        files.close();
+    }
+
+    private static TimetableEntry entryNamed(DataSnapshot s, String course) {
+        return s.getEntries().stream().filter(e -> e.getCourseName().equals(course)).findFirst().orElseThrow();
+    }
+
+    // Entries and locations as sorted text, for comparing snapshots built different ways.
+    private static List<String> describe(DataSnapshot s) {
+        List<String> lines = new ArrayList<>();
+        for (TimetableEntry e : s.getEntries()) {
+            lines.add(e.getId() + "/" + e.getVersion() + " " + e.getCourseName() + " " + e.getType() + " " + e.getDay()
+                    + " " + e.getStartMinutes() + "+" + e.getDurationMinutes() + " @" + e.getLocationId());
+        }
+        for (Location l : s.getLocations()) lines.add(l.getId() + " " + l.getName() + " (" + l.getX() + "," + l.getY() + ")");
+        lines.sort(null);
+        return lines;
+    }
+
+    @Test
+    void testCachingStorageServesHitsFromMemoryAndRevalidatesExpiredOnes() throws Exception {
+        String ds = java.nio.file.Files.createTempDirectory("cache").toString();
+        FileStorage files = new FileStorage(false);
+        List<String> calls = new CopyOnWriteArrayList<>();
+        ScheduleStorage counted = (ScheduleStorage) Proxy.newProxyInstance(ScheduleStorage.class.getClassLoader(),
+                new Class<?>[] {ScheduleStorage.class}, (proxy, method, args) -> {
+                    calls.add(method.getName());
+                    try {
+                        return method.invoke(files, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        CachingStorage cached = new CachingStorage(counted, CachingStorage.DEFAULT_MAX_ENTRIES, 60_000);
+        files.addTimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1", 0, 0, "CS", ds);
+
+        DataSnapshot first = cached.loadByFaculty("CS", ds);
+        assertSame(first, cached.loadByFaculty("CS", ds));
+        assertEquals(List.of("loadByFaculty"), calls, "a hit within the TTL must not reach the wrapped storage");
+        assertThrows(UnsupportedOperationException.class, () -> first.getTimetable().remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> first.removeEntry(first.getEntries().get(0).getId()));
+        DataSnapshot copy = new DataSnapshot(first);
+        assertTrue(copy.removeEntry(copy.getEntries().get(0).getId()), "a copy can be changed");
+
+        // A write through the cache drops the snapshot it changed.
+        cached.addTimetableEntry("Math", "LAB", "TUESDAY", "10:00", 60, "Room 2", 5, 5, "CS", ds);
+        assertEquals(2, cached.loadByFaculty("CS", ds).getEntries().size());
+        assertEquals(1, first.getEntries().size(), "snapshots already handed out stay as they were");
+
+        // Written past the cache, as another instance of the app would: seen once the TTL is up.
+        CachingStorage shortLived = new CachingStorage(counted, CachingStorage.DEFAULT_MAX_ENTRIES, 0);
+        DataSnapshot before = shortLived.loadByFaculty("CS", ds);
+        files.addTimetableEntry("Art", "SEMINAR", "FRIDAY", "12:00", 60, "Room 1", 0, 0, "CS", ds);
+        calls.clear();
+        DataSnapshot after = shortLived.loadByFaculty("CS", ds);
+        assertEquals(List.of("loadChangesSince"), calls);
+        assertEquals(3, after.getEntries().size());
+        assertEquals(2, before.getEntries().size());
+        assertTrue(after.isFrozen());
+        assertSame(after, shortLived.loadByFaculty("CS", ds), "an unchanged snapshot is kept");
+
+        CachingStorage.Stats stats = cached.getStats();
+        assertEquals(2, stats.misses());
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.invalidations());
+        assertEquals(2, shortLived.getStats().deltaRefreshes());
+        cached.close();
+    }
+
+    @Test
+    void testFileStoreCutsTornAndCorruptLogTails() throws Exception {
+        Path dir = Files.createTempDirectory("filestore");
+        Path log = dir.resolve("log-0.bin");
+        FileStore store = new FileStore(dir, false);
+        store.addEntry(classAt("Java", "08:00"));
+        long oneFrame = Files.size(log);
+        store.addEntry(classAt("Math", "10:00"));
+        store.close();
+
+        // A crash mid-append leaves part of the last frame behind.
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            ch.truncate(ch.size() - 3);
+        }
+        store = new FileStore(dir, false);
+        assertEquals(List.of("Java"), courseNames(store));
+        assertEquals(oneFrame, Files.size(log), "the torn frame is cut off");
+        store.addEntry(classAt("Art", "12:00"));
+        store.close();
+
+        // A complete frame whose bytes don't match its checksum is dropped too.
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(log, bytes);
+        store = new FileStore(dir, false);
+        assertEquals(List.of("Java"), courseNames(store));
+        store.close();
+    }
+
+    @Test
+    void testFileStoreCompactsAndPrunesOldTombstones() throws Exception {
+        Path dir = Files.createTempDirectory("filestore");
+        FileStore store = new FileStore(dir, false);
+        for (int hour = 8; hour < 18; hour++) store.addEntry(classAt("Course " + hour, String.format("%02d:00", hour)));
+        for (TimetableEntry e : store.snapshot(null).getEntries()) {
+            if (!e.getCourseName().equals("Course 8")) store.deleteEntry(e.getId(), e.getVersion());
+        }
+        store.compact();
+        assertTrue(Files.exists(dir.resolve("snapshot-1.bin")));
+        assertFalse(Files.exists(dir.resolve("log-0.bin")));
+        long withTombstones = Files.size(dir.resolve("snapshot-1.bin"));
+        store.close();
+
+        // Reopened, nobody can hold a snapshot from before the deletes, so their tombstones go.
+        store = new FileStore(dir, false);
+        assertEquals(List.of("Course 8"), courseNames(store));
+        store.compact();
+        assertTrue(Files.size(dir.resolve("snapshot-2.bin")) < withTombstones);
+        ChangeSet fromScratch = store.changesSince("CS", 0);
+        assertEquals(9, fromScratch.deletedEntryIds().size());
+        DataSnapshot caughtUp = new DataSnapshot();
+        caughtUp.apply(fromScratch);
+        assertEquals(describe(store.snapshot("CS")), describe(caughtUp));
+        store.addEntry(classAt("Math", "09:00"));
+        store.close();
+
+        store = new FileStore(dir, false);
+        assertEquals(List.of("Course 8", "Math"), courseNames(store));
+        store.close();
+    }
+
+    @Test
+    void testFileStoreRefusesCorruptSnapshotAndInvalidMerge() throws Exception {
+        Path dir = Files.createTempDirectory("filestore");
+        FileStore store = new FileStore(dir, false);
+        store.addEntry(classAt("Java", "08:00"));
+
+        // The first entry is fine; the second must keep it from being stored as well.
+        DataSnapshot bad = new DataSnapshot();
+        bad.addEntry(new TimetableEntry("Math", ClassType.LAB, "TUESDAY", "10:00", 60, "Room 2"));
+        bad.addEntry(new TimetableEntry("Art", ClassType.LAB, "SATURDAY", "10:00", 60, "Room 3"));
+        assertThrows(IOException.class, () -> store.merge(bad, "CS"));
+        assertEquals(List.of("Java"), courseNames(store), "a rejected merge leaves nothing behind");
+        store.compact();
+        store.close();
+
+        Path snapshot = dir.resolve("snapshot-1.bin");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(snapshot, bytes);
+        assertThrows(IOException.class, () -> new FileStore(dir, false));
+    }
+
+    @Test
+    void testSavingAPartialSnapshotLeavesUnlistedRoomsWhereTheyAre() throws Exception {
+        String ds = Files.createTempDirectory("partial").toString();
+        FileStorage files = new FileStorage(false);
+        files.addTimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1", 5, 7, "CS", ds);
+        long before = files.loadByFaculty("CS", ds).getVersion();
+
+        // Entries only: one in a known room, one in a room nobody has heard of.
+        DataSnapshot partial = new DataSnapshot();
+        partial.addEntry(new TimetableEntry("Math", ClassType.LAB, "TUESDAY", "10:00", 60, "room 1"));
+        partial.addEntry(new TimetableEntry("Art", ClassType.LAB, "WEDNESDAY", "10:00", 60, "Room 9"));
+        files.save(partial, ds);
+
+        DataSnapshot after = files.load(ds);
+        Location room1 = after.findLocationByName("Room 1").orElseThrow();
+        assertEquals(List.of(5, 7), List.of(room1.getX(), room1.getY()));
+        assertEquals(room1.getName(), after.findLocation(entryNamed(after, "Math").getLocationId()).orElseThrow().getName());
+        assertTrue(after.findLocationByName("Room 9").isPresent());
+        assertEquals(List.of("Room 9"), files.loadChangesSince("CS", before, ds).upsertedLocations().stream().map(Location::getName).toList(),
+                "only the new room changed");
+        files.close();
+    }
+
+    private static NewTimetableEntry classAt(String course, String start) {
+        return new NewTimetableEntry(course, "LECTURE", "MONDAY", start, 60, "Room 1", 0, 0, "CS");
+    }
+
+    private static List<String> courseNames(FileStore store) {
+        return store.snapshot(null).getEntries().stream().map(TimetableEntry::getCourseName).sorted().toList();
+    }
+
+    @Test
+    void testStudentTimetableHoldsOnlyEnrolledCourses() throws Exception {
+        Path dir = Files.createTempDirectory("students");
+        String ds = dir.toString();
+        FileStorage files = new FileStorage(false);
+        files.addTimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1", 0, 0, "CS", ds);
+        files.addTimetableEntry("Java", "LAB", "WEDNESDAY", "10:00", 90, "Lab 2", 5, 0, "CS", ds);
+        files.addTimetableEntry("Math", "LECTURE", "TUESDAY", "08:00", 90, "Hall 3", 7, 0, "CS", ds);
+        files.addTimetableEntry("Art", "SEMINAR", "FRIDAY", "12:00", 60, "Studio", 9, 9, "Arts", ds);
+        files.createStudentIfNotExists("Ada", "CS", ds);
+        assertTrue(files.loadForStudent("Ada", ds).getEntries().isEmpty());
+        assertThrows(IOException.class, () -> files.enroll("Nobody", "Java", ds));
+
+        files.enroll("Ada", "Java", ds);
+        files.enroll("Ada", "Art", ds);
+        DataSnapshot mine = files.loadForStudent("Ada", ds);
+        assertEquals(List.of("Art FRIDAY", "Java MONDAY", "Java WEDNESDAY"), classes(mine));
+        assertEquals(List.of("Lab 2", "Room 1", "Studio"), rooms(mine));
+
+        long logged = sizeOf(dir);
+        files.enroll("Ada", "Java", ds);
+        assertEquals(logged, sizeOf(dir), "enrolling twice writes nothing");
+        assertEquals(classes(mine), classes(files.loadForStudent("Ada", ds)));
+
+        files.unenroll("Ada", "Java", ds);
+        assertEquals(List.of("Art FRIDAY"), classes(files.loadForStudent("Ada", ds)));
+        assertEquals(List.of("Studio"), rooms(files.loadForStudent("Ada", ds)));
+        files.close();
+
+        FileStorage reopened = new FileStorage(false);
+        assertEquals(List.of("Art FRIDAY"), classes(reopened.loadForStudent("Ada", ds)));
+        reopened.close();
+    }
+
+    private static List<String> classes(DataSnapshot s) {
+        return s.getEntries().stream().map(e -> e.getCourseName() + " " + e.getDay()).sorted().toList();
+    }
+
+    private static List<String> rooms(DataSnapshot s) {
+        return s.getLocations().stream().map(Location::getName).sorted().toList();
+    }
+
+    private static long sizeOf(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.mapToLong(f -> f.toFile().length()).sum();
+        }
+    }
+
+    @Test
+    void testBinarySnapshotRoundTripsThroughMappedReads() throws Exception {
+        DataSnapshot data = new DataSnapshot();
+        data.setVersion(42);
+        data.getStudents().add(new Student("Ana", "CS"));
+        data.getStudents().add(new Student("Ben", null));
+        data.addLocation(new Location("1", "Room 1", "Main", 3, 4));
+        data.addLocation(new Location("2", "Lab", null, -5, 7));
+        data.addEntry(new TimetableEntry(7, 2, "Java", ClassType.LECTURE, "MONDAY", "08:00:00", 90, "Room 1"));
+        data.addEntry(new TimetableEntry(9, 0, "Math", ClassType.LAB, "friday", "23:30", 30, "Lab"));
+
+        MappedSnapshot mapped = new MappedSnapshot(BinarySnapshotStorage.encode(data));
+        assertEquals(42, mapped.getVersion());
+        assertEquals(2, mapped.entryCount());
+        assertEquals(9, mapped.entryId(1));
+        assertEquals(DayOfWeek.FRIDAY, mapped.day(1));
+        assertEquals(23 * 60 + 30, mapped.startMinutes(1));
+        assertEquals("Math", mapped.courseName(1));
+        assertEquals("08:00", mapped.entry(0).getStartTime());
+        assertNull(mapped.location(1).getBuilding());
+        assertNull(mapped.student(1).getFaculty());
+
+        DataSnapshot back = mapped.toDataSnapshot();
+        assertEquals(describe(data), describe(back));
+        assertEquals(42, back.getVersion());
+        assertEquals(List.of("Ana CS", "Ben null"), back.getStudents().stream().map(s -> s.getName() + " " + s.getFaculty()).toList());
+        assertEquals("Main", back.findLocationById("1").orElseThrow().getBuilding());
+    }
+
+    @Test
+    void testSnapshotsSerializeAsPlainEntryLists() throws Exception {
+        DataSnapshot data = new DataSnapshot();
+        data.setVersion(5);
+        data.addLocation(new Location("1", "Room 1", "Main", 3, 4));
+        data.addEntry(new TimetableEntry(7, 2, "Java", ClassType.LECTURE, "MONDAY", "08:00", 90, "Room 1"));
+        data.addEntry(new TimetableEntry(9, 0, "Math", ClassType.LAB, "FRIDAY", "14:15", 30, "Room 1"));
+
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(bytes)) {
+            out.writeObject(data);
+            out.writeObject(data.getTimetable());
+        }
+        try (java.io.ObjectInputStream in = new java.io.ObjectInputStream(new java.io.ByteArrayInputStream(bytes.toByteArray()))) {
+            DataSnapshot back = (DataSnapshot) in.readObject();
+            assertEquals(describe(data), describe(back));
+            assertEquals(5, back.getVersion());
+            // Streams hold what DataSnapshot held before the column store, so older builds can read them.
+            Object timetable = in.readObject();
+            assertEquals(ArrayList.class, timetable.getClass());
+            assertEquals(TimetableEntry.class, ((List<?>) timetable).get(0).getClass());
+        }
+        assertEquals(5632193817941659112L, java.io.ObjectStreamClass.lookup(DataSnapshot.class).getSerialVersionUID());
+        assertEquals(4522527583129008642L, java.io.ObjectStreamClass.lookup(TimetableEntry.class).getSerialVersionUID());
+
+        com.google.gson.Gson gson = new com.google.gson.Gson();
+        String json = gson.toJson(data);
+        assertEquals(describe(data), describe(gson.fromJson(json, DataSnapshot.class)));
+        TimetableEntry view = data.getEntries().get(1);
+        TimetableEntry read = gson.fromJson(gson.toJson(view), view.getClass());
+        assertEquals(List.of(9, "Math", ClassType.LAB, "14:15", 30), List.of(read.getId(), read.getCourseName(),
+                read.getType(), read.getStartTime(), read.getDurationMinutes()));
+    }
+
+    @Test
+    void testDataSnapshotIndexesMatchScansAcrossChanges() throws Exception {
+        Random random = new Random(12);
+        DataSnapshot data = new DataSnapshot();
+        for (int i = 0; i < 20; i++) data.addLocation(new Location(String.valueOf(i), "Room " + i, "Main", i, i));
+        String[] courses = {"Java", "Math", "Art", "Logic"};
+        data.entriesOn(DayOfWeek.MONDAY);
+        Field indexField = DataSnapshot.class.getDeclaredField("entryIndex");
+        indexField.setAccessible(true);
+        Object index = indexField.get(data);
+        int nextId = 1;
+        for (int step = 0; step < 400; step++) {
+            int op = random.nextInt(11);
+            if (op == 10 && !data.getEntries().isEmpty()) {
+                List<TimetableEntry> all = data.getEntries();
+                int gone = all.get(random.nextInt(all.size())).getId();
+                int changed = all.get(random.nextInt(all.size())).getId();
+                data.apply(new ChangeSet(step, step + 1,
+                        List.of(randomEntry(random, changed, courses), randomEntry(random, nextId++, courses)),
+                        List.of(gone), List.of()));
+                assertEquals(step + 1, data.getVersion());
+            } else if (op < 6 || data.getEntries().isEmpty()) {
+                data.addEntry(randomEntry(random, nextId++, courses));
+            } else if (op < 8) {
+                TimetableEntry old = data.getEntries().get(random.nextInt(data.getEntries().size()));
+                assertTrue(data.updateEntry(randomEntry(random, old.getId(), courses)));
+            } else if (op < 9) {
+                assertTrue(data.removeEntry(data.getEntries().get(random.nextInt(data.getEntries().size())).getId()));
+            } else {
+                int moved = random.nextInt(20);
+                data.apply(new ChangeSet(step, step + 1, List.of(), List.of(),
+                        List.of(new Location(String.valueOf(moved), "Room " + moved, "Annex", moved + 1, moved))));
+            }
+
+            List<TimetableEntry> all = data.getEntries();
+            for (DayOfWeek day : DayOfWeek.values()) {
+                assertEquals(ids(all.stream().filter(e -> e.getDayOfWeek() == day).toList()), ids(data.entriesOn(day)));
+            }
+            for (String course : courses) {
+                assertEquals(ids(all.stream().filter(e -> e.getCourseName().equals(course)).toList()), ids(data.entriesOfCourse(course)));
+            }
+            Location room = data.getLocations().get(random.nextInt(data.getLocations().size()));
+            assertEquals(ids(all.stream().filter(e -> e.getLocationId().equals(room.getName())).toList()), ids(data.entriesAt(room)));
+            assertEquals(room, data.findLocationById(room.getId()).orElseThrow());
+            assertEquals(room, data.findLocationByName(room.getName().toUpperCase()).orElseThrow());
+            assertEquals(room, data.findLocation(room.getName()).orElseThrow());
+        }
+        assertSame(index, indexField.get(data), "changes are made in place, not by rebuilding the index");
+        assertEquals(20, data.getLocations().size());
+        assertTrue(data.removeLocation("3"));
+        assertTrue(data.findLocationByName("room 3").isEmpty());
+    }
+
+    private static TimetableEntry randomEntry(Random random, int id, String[] courses) {
+        int start = 8 * 60 + 15 * random.nextInt(40);
+        return new TimetableEntry(id, 0, courses[random.nextInt(courses.length)], ClassType.LECTURE,
+                DayOfWeek.of(1 + random.nextInt(5)).name(), TimetableStore.formatMinutes(start),
+                30 + 15 * random.nextInt(6), "Room " + random.nextInt(20));
+    }
+
+    private static List<Integer> ids(List<TimetableEntry> entries) {
+        return entries.stream().map(TimetableEntry::getId).sorted().toList();
+    }
+
+    @Test
+    void testCourseRequestParseExplainsBadInput() {
+        TimetableSolver.CourseRequest ok = TimetableSolver.CourseRequest.parse("Algorithms, lab, 90, 2, monday WEDNESDAY");
+        assertEquals(ClassType.LAB, ok.type());
+        assertEquals(java.util.EnumSet.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY), ok.preferredDays());
+
+        for (String bad : List.of("Algorithms, LAB, ninety, 2", "Algorithms, LAB, 90, 0", "Algorithms, TUTORIAL, 90, 1",
+                "Algorithms, LAB, 90, 1, Someday", "Algorithms, LAB, 900, 1", "Algorithms, LAB")) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> TimetableSolver.CourseRequest.parse(bad), bad);
+            assertTrue(e.getMessage().contains("Algorithms"), e.getMessage());
+        }
+    }
+
+    @Test
+    void testSolverPlacesEverySessionWithoutClashes() {
+        List<Location> rooms = List.of(new Location("a", "Room A", "Main", 0, 0), new Location("b", "Room B", "Main", 5, 0),
+                new Location("c", "Room C", "Main", 9, 0));
+        List<TimetableEntry> existing = new ArrayList<>();
+        // Room A is taken every morning, Room B all of Tuesday (named by id), and Java already meets on Monday at 08:00.
+        for (String day : ScheduleGrid.DAYS) existing.add(new TimetableEntry(100, 0, "Biology", ClassType.LAB, day, "08:00", 300, "Room A"));
+        existing.add(new TimetableEntry(101, 0, "Chemistry", ClassType.LAB, "TUESDAY", "08:00", 900, "b"));
+        existing.add(new TimetableEntry(102, 0, "Java", ClassType.LECTURE, "MONDAY", "08:00", 90, "Room C"));
+        List<TimetableSolver.CourseRequest> requests = List.of(
+                TimetableSolver.CourseRequest.parse("Java, LECTURE, 90, 3, MONDAY"),
+                TimetableSolver.CourseRequest.parse("Math, LAB, 120, 4, TUESDAY WEDNESDAY"),
+                TimetableSolver.CourseRequest.parse("Art, SEMINAR, 60, 2"),
+                TimetableSolver.CourseRequest.parse("Logic, LECTURE, 180, 2, FRIDAY"));
+        TimetableSolver solver = new TimetableSolver(rooms, existing);
+
+        TimetableSolver.Solution solution = solver.solve(requests, 8).orElseThrow();
+        List<String> courses = solution.placements().stream().map(p -> p.course().courseName()).toList();
+        assertEquals(List.of("Java", "Java", "Java", "Math", "Math", "Math", "Math", "Art", "Art", "Logic", "Logic"), courses);
+
+        List<TimetableEntry> all = new ArrayList<>(existing);
+        for (TimetableSolver.Placement p : solution.placements()) {
+            all.add(new TimetableEntry(0, 0, p.course().courseName(), p.course().type(), p.day().name(), p.startTime(),
+                    p.course().durationMinutes(), p.room().getName()));
+        }
+        for (int i = 0; i < all.size(); i++) {
+            for (int j = i + 1; j < all.size(); j++) {
+                TimetableEntry x = all.get(i), y = all.get(j);
+                boolean overlap = x.getDayOfWeek() == y.getDayOfWeek() && x.getStartMinutes() < y.getStartMinutes() + y.getDurationMinutes()
+                        && y.getStartMinutes() < x.getStartMinutes() + x.getDurationMinutes();
+                if (!overlap) continue;
+                String where = x.getCourseName() + " and " + y.getCourseName() + " on " + x.getDay();
+                assertNotEquals(roomOf(rooms, x), roomOf(rooms, y), where + " share a room");
+                assertNotEquals(x.getCourseName(), y.getCourseName(), where + " overlap");
+            }
+        }
+        assertEquals(penaltyOf(solution.placements()), solution.penalty());
+        // Attempts share the best score, so more of them can only find an equal or better timetable.
+        assertTrue(solution.penalty() <= solver.solve(requests, 1).orElseThrow().penalty());
+    }
+
+    @Test
+    void testSolverKeepsToPreferredDaysWhenItCan() {
+        List<Location> room = List.of(new Location("a", "Room A", "Main", 0, 0));
+        List<TimetableSolver.CourseRequest> art = List.of(TimetableSolver.CourseRequest.parse("Art, SEMINAR, 60, 2, TUESDAY THURSDAY"));
+
+        TimetableSolver.Solution free = new TimetableSolver(room, List.of()).solve(art, 4).orElseThrow();
+        assertEquals(0, free.penalty());
+        assertEquals(Set.of(DayOfWeek.TUESDAY, DayOfWeek.THURSDAY), Set.copyOf(free.placements().stream().map(TimetableSolver.Placement::day).toList()));
+
+        // With Thursday booked, a second Tuesday session costs less than a day nobody asked for.
+        List<TimetableEntry> thursday = List.of(new TimetableEntry(1, 0, "Biology", ClassType.LAB, "THURSDAY", "08:00", 900, "Room A"));
+        TimetableSolver.Solution busy = new TimetableSolver(room, thursday).solve(art, 4).orElseThrow();
+        assertEquals(List.of(DayOfWeek.TUESDAY, DayOfWeek.TUESDAY), busy.placements().stream().map(TimetableSolver.Placement::day).toList());
+        assertEquals(penaltyOf(busy.placements()), busy.penalty());
+    }
+
+    @Test
+    void testSolverReturnsEmptyWhenNoTimetableFits() {
+        List<Location> room = List.of(new Location("a", "Room A", "Main", 0, 0));
+        List<TimetableSolver.CourseRequest> java = List.of(TimetableSolver.CourseRequest.parse("Java, LECTURE, 90, 1"));
+        List<TimetableEntry> roomTaken = new ArrayList<>(), courseTaken = new ArrayList<>();
+        for (String day : ScheduleGrid.DAYS) {
+            roomTaken.add(new TimetableEntry(0, 0, "Biology", ClassType.LAB, day, "08:00", 900, "Room A"));
+            courseTaken.add(new TimetableEntry(0, 0, "Java", ClassType.LAB, day, "08:00", 900, "Elsewhere"));
+        }
+        assertTrue(new TimetableSolver(room, roomTaken).solve(java, 4).isEmpty());
+        assertTrue(new TimetableSolver(room, courseTaken).solve(java, 4).isEmpty());
+        assertTrue(new TimetableSolver(List.of(), List.of()).solve(java, 4).isEmpty());
+        assertTrue(new TimetableSolver(room, List.of()).solve(java, 4).isPresent());
+    }
+
+    @Test
+    void testScheduleStoresTheSolutionAsOneBatch() throws Exception {
+        String ds = Files.createTempDirectory("solver").toString();
+        FileStorage files = new FileStorage(false);
+        files.addTimetableEntry("Biology", "LAB", "MONDAY", "08:00", 720, "Room A", 0, 0, "Bio", ds);
+        files.addTimetableEntry("Chemistry", "LAB", "MONDAY", "20:00", 240, "Room A", 0, 0, "Bio", ds);
+        List<String> calls = new CopyOnWriteArrayList<>();
+        List<List<NewTimetableEntry>> batches = new CopyOnWriteArrayList<>();
+        ScheduleStorage counted = (ScheduleStorage) Proxy.newProxyInstance(ScheduleStorage.class.getClassLoader(),
+                new Class<?>[] {ScheduleStorage.class}, (proxy, method, args) -> {
+                    calls.add(method.getName());
+                    @SuppressWarnings("unchecked")
+                    List<NewTimetableEntry> rows = method.getName().equals("addTimetableEntries") ? (List<NewTimetableEntry>) args[0] : null;
+                    if (rows != null) batches.add(List.copyOf(rows));
+                    try {
+                        return method.invoke(files, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        List<TimetableSolver.CourseRequest> requests = List.of(TimetableSolver.CourseRequest.parse("Java, LECTURE, 90, 3, MONDAY"));
+
+        TimetableSolver.Solution solution = TimetableSolver.schedule(counted, "CS", requests, ds);
+        assertEquals(1, calls.stream().filter(c -> c.startsWith("addTimetableEntr")).count(), calls.toString());
+        assertEquals(List.of(solution.placements().stream().map(p -> p.toRow("CS")).toList()), batches);
+        DataSnapshot stored = files.loadByFaculty("CS", ds);
+        assertEquals(3, stored.getEntries().size());
+        // Room A is the only room and is taken all Monday, so Java can't have its preferred day.
+        assertTrue(stored.getEntries().stream().noneMatch(e -> e.getDayOfWeek() == DayOfWeek.MONDAY));
+        files.close();
+    }
+
+    private static String roomOf(List<Location> rooms, TimetableEntry e) {
+        return rooms.stream().filter(l -> l.getId().equals(e.getLocationId()) || l.getName().equals(e.getLocationId()))
+                .map(Location::getId).findFirst().orElse(e.getLocationId());
+    }
+
+    // The solver's soft rules: 10 off a preferred day, 4 per earlier session of the course that day, 2 for an evening start.
+    private static int penaltyOf(List<TimetableSolver.Placement> placements) {
+        Map<String, Integer> sessionsOnDay = new HashMap<>();
+        int penalty = 0;
+        for (TimetableSolver.Placement p : placements) {
+            penalty += 4 * (sessionsOnDay.merge(p.course().courseName() + " " + p.day(), 1, Integer::sum) - 1);
+            Set<DayOfWeek> preferred = p.course().preferredDays();
+            if (!preferred.isEmpty() && !preferred.contains(p.day())) penalty += 10;
+            if (TimetableStore.parseMinutes(p.startTime()) >= 18 * 60) penalty += 2;
+        }
+        return penalty;
+    }
+
+    @Test
+    void testCampusRouterFindsShortestWalks() {
+        Random random = new Random(16);
+        int n = 40;
+        List<CampusGraph.Node> nodes = new ArrayList<>();
+        List<Location> rooms = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int x = random.nextInt(500), y = random.nextInt(500);
+            nodes.add(new CampusGraph.Node(100 + i, "Junction " + i, x, y, "L" + i));
+            rooms.add(new Location("L" + i, "Room " + i, "Main", x, y));
+        }
+        // Nodes 35 and up are left off the walkways to check the fallback.
+        List<CampusGraph.Edge> edges = new ArrayList<>();
+        long[][] shortest = new long[n][n];
+        for (long[] row : shortest) java.util.Arrays.fill(row, Long.MAX_VALUE / 4);
+        for (int i = 0; i < n; i++) shortest[i][i] = 0;
+        for (int k = 0; k < 90; k++) {
+            int a = random.nextInt(35), b = random.nextInt(35);
+            if (a == b) continue;
+            CampusGraph.Node na = nodes.get(a), nb = nodes.get(b);
+            int straight = (int) Math.ceil(Math.hypot(na.x() - nb.x(), na.y() - nb.y()));
+            int meters = random.nextBoolean() ? 0 : straight + random.nextInt(50); // 0 means the straight line
+            edges.add(new CampusGraph.Edge(na.id(), nb.id(), meters));
+            long length = meters > 0 ? meters : straight;
+            shortest[a][b] = shortest[b][a] = Math.min(shortest[a][b], length);
+        }
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) shortest[i][j] = Math.min(shortest[i][j], shortest[i][k] + shortest[k][j]);
+            }
+        }
+
+        CampusRouter router = new CampusRouter(new CampusGraph(nodes, edges), 16);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                Location from = rooms.get(i), to = rooms.get(j);
+                CampusRouter.Route route = router.route(from, to);
+                if (shortest[i][j] < Long.MAX_VALUE / 4) {
+                    assertEquals(shortest[i][j], route.meters(), from.getName() + " -> " + to.getName());
+                    assertEquals(route.meters(), route.legs().stream().mapToInt(Integer::intValue).sum());
+                    assertEquals("L" + i, route.path().get(0).locationId());
+                    assertEquals("L" + j, route.path().get(route.path().size() - 1).locationId());
+                } else {
+                    assertTrue(route.path().isEmpty());
+                    assertEquals(Math.abs(to.getX() - from.getX()) + Math.abs(to.getY() - from.getY()), route.meters());
+                }
+            }
+        }
+        assertSame(router.route(rooms.get(3), rooms.get(4)), router.route(rooms.get(3), rooms.get(4)));
+    }
+
+    @Test
+    void testLocationGridMatchesBruteForce() {
+        Random random = new Random(17);
+        LocationGrid grid = new LocationGrid(25);
+        Map<String, Location> all = new HashMap<>();
+        for (int step = 0; step < 600; step++) {
+            String id = String.valueOf(random.nextInt(150));
+            if (random.nextInt(5) == 0) {
+                assertEquals(all.remove(id) != null, grid.remove(id));
+            } else {
+                // Mostly a dense campus, with the odd far-away outlier.
+                int spread = random.nextInt(20) == 0 ? 100_000 : 400;
+                Location l = new Location(id, "Room " + id, "Main", random.nextInt(spread) - spread / 2, random.nextInt(spread) - spread / 2);
+                all.put(id, l);
+                grid.put(l);
+            }
+            assertEquals(all.size(), grid.size());
+
+            int x = random.nextInt(600) - 300, y = random.nextInt(600) - 300;
+            int k = 1 + random.nextInt(8);
+            List<Long> nearest = all.values().stream().map(l -> squaredDistance(l, x, y)).sorted().limit(k).toList();
+            assertEquals(nearest, grid.nearest(x, y, k).stream().map(l -> squaredDistance(l, x, y)).toList());
+
+            double radius = random.nextInt(150);
+            List<String> within = grid.within(x, y, radius).stream().map(Location::getId).toList();
+            assertEquals(all.values().stream().filter(l -> squaredDistance(l, x, y) <= radius * radius).map(Location::getId).sorted().toList(),
+                    within.stream().sorted().toList());
+            for (int i = 1; i < within.size(); i++) {
+                assertTrue(squaredDistance(all.get(within.get(i - 1)), x, y) <= squaredDistance(all.get(within.get(i)), x, y));
+            }
+
+            int w = random.nextInt(300), h = random.nextInt(300);
+            assertEquals(all.values().stream().filter(l -> l.getX() >= x && l.getX() <= x + w && l.getY() >= y && l.getY() <= y + h)
+                            .map(Location::getId).sorted().toList(),
+                    grid.inBox(x, y, x + w, y + h).stream().map(Location::getId).sorted().toList());
+        }
+    }
+
+    private static long squaredDistance(Location l, int x, int y) {
+        long dx = l.getX() - x, dy = l.getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    @Test
+    void testIntervalIndexMatchesBruteForce() {
+        Random random = new Random(13);
+        IntervalIndex<DayOfWeek> index = new IntervalIndex<>(TimetableEntry::getDayOfWeek);
+        Map<Integer, TimetableEntry> all = new HashMap<>();
+        String[] courses = {"Java", "Math"};
+        for (int step = 0; step < 800; step++) {
+            int id = 1 + random.nextInt(120);
+            if (random.nextInt(4) == 0) {
+                assertEquals(all.remove(id) != null, index.remove(id));
+            } else {
+                TimetableEntry e = randomEntry(random, id, courses);
+                all.put(id, e);
+                index.put(e);
+            }
+
+            DayOfWeek day = DayOfWeek.of(1 + random.nextInt(5));
+            int from = 7 * 60 + random.nextInt(13 * 60), to = from + 1 + random.nextInt(180);
+            List<TimetableEntry> overlapping = index.overlapping(day, from, to);
+            assertEquals(ids(all.values().stream().filter(e -> e.getDayOfWeek() == day && e.getStartMinutes() < to
+                    && e.getStartMinutes() + e.getDurationMinutes() > from).toList()), ids(overlapping));
+            for (int i = 1; i < overlapping.size(); i++) {
+                assertTrue(overlapping.get(i - 1).getStartMinutes() <= overlapping.get(i).getStartMinutes());
+            }
+            assertEquals(ids(all.values().stream().filter(e -> e.getDayOfWeek() == day && e.getStartMinutes() <= from
+                    && e.getStartMinutes() + e.getDurationMinutes() > from).toList()), ids(index.occupying(day, from)));
+
+            TimetableEntry next = index.nextStarting(day, from);
+            int firstStart = all.values().stream().filter(e -> e.getDayOfWeek() == day && e.getStartMinutes() >= from)
+                    .mapToInt(TimetableEntry::getStartMinutes).min().orElse(-1);
+            assertEquals(firstStart, next == null ? -1 : next.getStartMinutes());
+        }
+    }
+
+    @Test
+    void testIndexCopiesShareWhatNeitherSideChanged() {
+        Random random = new Random(21);
+        String[] courses = {"Java", "Math"};
+        IntervalIndex<DayOfWeek> original = new IntervalIndex<>(TimetableEntry::getDayOfWeek);
+        Map<Integer, TimetableEntry> originalEntries = new HashMap<>();
+        for (int id = 1; id <= 200; id++) {
+            TimetableEntry e = randomEntry(random, id, courses);
+            original.put(e);
+            originalEntries.put(id, e);
+        }
+        IntervalIndex<DayOfWeek> copy = original.copy();
+        Map<Integer, TimetableEntry> copyEntries = new HashMap<>(originalEntries);
+        // Only Mondays change in the copy, only Tuesdays in the original.
+        for (int id = 1; id <= 200; id++) {
+            TimetableEntry e = originalEntries.get(id);
+            if (e.getDayOfWeek() == DayOfWeek.MONDAY) {
+                copy.remove(id);
+                copyEntries.remove(id);
+            } else if (e.getDayOfWeek() == DayOfWeek.TUESDAY) {
+                TimetableEntry later = new TimetableEntry(id, 1, e.getCourseName(), e.getType(), "TUESDAY", "20:00", 30, e.getLocationId());
+                original.put(later);
+                originalEntries.put(id, later);
+            }
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            assertEquals(ids(originalEntries.values().stream().filter(e -> e.getDayOfWeek() == day).toList()), ids(original.all(day)));
+            assertEquals(ids(copyEntries.values().stream().filter(e -> e.getDayOfWeek() == day).toList()), ids(copy.all(day)));
+            assertEquals(day != DayOfWeek.MONDAY && day != DayOfWeek.TUESDAY, copy.sameGroup(original, day), day.name());
+        }
+        assertEquals(originalEntries.size(), original.size());
+        assertEquals(copyEntries.size(), copy.size());
+        assertEquals(20 * 60, original.nextStarting(DayOfWeek.TUESDAY, 19 * 60).getStartMinutes());
+        copy.freeze();
+        assertThrows(IllegalStateException.class, () -> copy.remove(originalEntries.keySet().iterator().next()));
+
+        LocationGrid grid = new LocationGrid(10);
+        for (int i = 0; i < 50; i++) grid.put(new Location(String.valueOf(i), "Room " + i, "Main", i * 7, i * 3));
+        LocationGrid moved = grid.copy();
+        moved.put(new Location("0", "Room 0", "Main", 1000, 1000));
+        moved.freeze();
+        assertEquals("0", grid.nearest(0, 0, 1).get(0).getId());
+        assertEquals("1", moved.nearest(0, 0, 1).get(0).getId());
+        assertEquals("0", moved.nearest(1000, 1000, 1).get(0).getId());
+        assertThrows(IllegalStateException.class, () -> moved.remove("1"));
+
+        // A schedule snapshot doesn't see later changes to the data it was made from.
+        DataSnapshot data = new DataSnapshot();
+        data.addLocation(new Location("1", "Room 1", "Main", 0, 0));
+        data.addEntry(new TimetableEntry(1, 0, "Java", ClassType.LECTURE, "MONDAY", "10:00", 90, "Room 1"));
+        ScheduleSnapshot frozen = ScheduleSnapshot.of(data);
+        data.removeEntry(1);
+        data.addEntry(new TimetableEntry(2, 0, "Math", ClassType.LECTURE, "MONDAY", "08:00", 60, "Room 1"));
+        data.removeLocation("1");
+        assertEquals(List.of(1), ids(frozen, DayOfWeek.MONDAY));
+        assertEquals("Room 1", frozen.findLocation("1").orElseThrow().getName());
+        assertEquals(List.of(2), ids(ScheduleSnapshot.of(data), DayOfWeek.MONDAY));
+    }
+
+    @Test
+    void testRoomAvailabilityRebuildsAfterRemovingOverlappingBookings() {
+        Random random = new Random(18);
+        List<Location> rooms = new ArrayList<>();
+        for (int i = 0; i < 70; i++) rooms.add(new Location("R" + i, "Room " + i, "Main", i, 0)); // more than one bitmap word
+        RoomAvailability availability = new RoomAvailability(rooms);
+        Map<Integer, TimetableEntry> booked = new HashMap<>();
+        for (int step = 0; step < 1500; step++) {
+            int id = 1 + random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                assertEquals(booked.remove(id) != null, availability.remove(id));
+            } else {
+                // Few rooms and long classes, so bookings often clash and removing one must keep the other.
+                int start = 8 * 60 + 5 * random.nextInt(120);
+                TimetableEntry e = new TimetableEntry(id, 0, "Course", ClassType.LECTURE, DayOfWeek.of(1 + random.nextInt(2)).name(),
+                        TimetableStore.formatMinutes(start), 5 + 5 * random.nextInt(30), "Room " + random.nextInt(70));
+                booked.put(id, e);
+                availability.put(e);
+            }
+
+            DayOfWeek day = DayOfWeek.of(1 + random.nextInt(2));
+            int start = 8 * 60 + 5 * random.nextInt(120), duration = 5 + 5 * random.nextInt(30);
+            List<Location> expected = rooms.stream().filter(r -> booked.values().stream().noneMatch(e -> e.getLocationId().equals(r.getName())
+                    && e.getDayOfWeek() == day && e.getStartMinutes() < start + duration
+                    && e.getStartMinutes() + e.getDurationMinutes() > start)).toList();
+            assertEquals(expected, availability.freeRooms(day, start, duration));
+            Location room = rooms.get(random.nextInt(rooms.size()));
+            assertEquals(expected.contains(room), availability.isFree(room, day, start, duration));
+        }
+    }
+
+    @Test
+    void testRoomAvailabilityCatchesUpThroughDeltas() throws Exception {
+        String ds = Files.createTempDirectory("rooms").toString();
+        FileStorage files = new FileStorage(false);
+        files.addTimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1", 0, 0, "CS", ds);
+        files.addTimetableEntry("Art", "SEMINAR", "MONDAY", "08:00", 60, "Room 2", 9, 9, "History", ds);
+        RoomAvailability availability = RoomAvailability.load(files, ds);
+        Location room1 = new Location("Room 1", 0, 0), room2 = new Location("Room 2", 9, 9);
+        assertTrue(availability.freeRooms(DayOfWeek.MONDAY, 8 * 60, 30).isEmpty());
+
+        TimetableEntry java = entryNamed(files.loadByFaculty("CS", ds), "Java");
+        files.deleteTimetableEntry(java.getId(), java.getVersion(), ds);
+        files.addTimetableEntry("Math", "LAB", "MONDAY", "12:00", 60, "Room 2", 9, 9, "Physics", ds);
+        availability.refresh(files, ds);
+        assertTrue(availability.isFree(room1, DayOfWeek.MONDAY, 8 * 60, 90));
+        assertFalse(availability.isFree(room2, DayOfWeek.MONDAY, 12 * 60 + 30, 15));
+        assertEquals(List.of("Room 1"), availability.freeRooms(DayOfWeek.MONDAY, 12 * 60, 60).stream().map(Location::getName).toList());
+        files.close();
+    }
+
+    @Test
+    void testScheduleSnapshotApplySharesUntouchedDays() {
+        DataSnapshot data = new DataSnapshot();
+        data.setVersion(1);
+        data.addLocation(new Location("1", "Room 1", "Main", 0, 0));
+        data.addEntry(new TimetableEntry(1, 0, "Java", ClassType.LECTURE, "MONDAY", "10:00", 90, "Room 1"));
+        data.addEntry(new TimetableEntry(2, 0, "Math", ClassType.LAB, "MONDAY", "08:00", 60, "Room 1"));
+        data.addEntry(new TimetableEntry(3, 0, "Art", ClassType.SEMINAR, "TUESDAY", "09:00", 60, "Room 1"));
+        data.addEntry(new TimetableEntry(4, 0, "Logic", ClassType.LECTURE, "FRIDAY", "12:00", 60, "Room 1"));
+        ScheduleSnapshot before = ScheduleSnapshot.of(data);
+        assertEquals(List.of(2, 1), ids(before, DayOfWeek.MONDAY));
+
+        // Java moves from Monday to Wednesday and Art is deleted; Friday and the rooms are untouched.
+        ChangeSet changes = new ChangeSet(1, 2,
+                List.of(new TimetableEntry(1, 1, "Java", ClassType.LECTURE, "WEDNESDAY", "10:00", 90, "Room 1")), List.of(3), List.of());
+        ScheduleSnapshot after = before.apply(changes);
+        data.apply(changes);
+        assertEquals(describe(ScheduleSnapshot.of(data)), describe(after));
+        assertEquals(2, after.getVersion());
+        assertTrue(after.sameDay(before, DayOfWeek.FRIDAY));
+        assertTrue(after.sameDay(before, DayOfWeek.THURSDAY));
+        assertFalse(after.sameDay(before, DayOfWeek.MONDAY));
+        assertFalse(after.sameDay(before, DayOfWeek.TUESDAY));
+        assertFalse(after.sameDay(before, DayOfWeek.WEDNESDAY));
+        assertTrue(after.sameLocations(before));
+
+        // The old version is left as it was.
+        assertEquals(4, before.size());
+        assertEquals(List.of(2, 1), ids(before, DayOfWeek.MONDAY));
+        assertEquals(List.of(3), ids(before, DayOfWeek.TUESDAY));
+
+        ScheduleSnapshot moved = after.apply(new ChangeSet(2, 3, List.of(), List.of(), List.of(new Location("1", "Room 1", "Main", 5, 5))));
+        assertFalse(moved.sameLocations(after));
+        assertEquals(5, moved.findLocation("Room 1").orElseThrow().getX());
+        for (DayOfWeek day : DayOfWeek.values()) assertTrue(moved.sameDay(after, day));
+        assertSame(moved, moved.apply(ChangeSet.empty(3)));
+    }
+
+    @Test
+    void testSnapshotsAnswerTimeAndRoomQueriesLikeAScan() {
+        Random random = new Random(31);
+        String[] courses = {"Java", "Math", "Art"};
+        DataSnapshot data = new DataSnapshot();
+        // Rooms 0-9 are referred to by name, as FileStore does; the id differs from the name.
+        for (int i = 0; i < 10; i++) data.addLocation(new Location("r" + i, "Room " + i, "Main", i, 0));
+        ScheduleSnapshot schedule = ScheduleSnapshot.of(data);
+        Map<Integer, TimetableEntry> all = new HashMap<>();
+        for (int step = 0; step < 300; step++) {
+            int id = 1 + random.nextInt(60);
+            ChangeSet changes;
+            if (random.nextInt(4) == 0) {
+                all.remove(id);
+                changes = new ChangeSet(step, step + 1, List.of(), List.of(id), List.of());
+            } else {
+                TimetableEntry e = randomEntry(random, id, courses);
+                all.put(id, e);
+                changes = new ChangeSet(step, step + 1, List.of(e), List.of(), List.of());
+            }
+            data.apply(changes);
+            schedule = schedule.apply(changes);
+
+            DayOfWeek day = DayOfWeek.of(1 + random.nextInt(5));
+            int from = 7 * 60 + random.nextInt(13 * 60), to = from + 1 + random.nextInt(120);
+            Location room = data.findLocationById("r" + random.nextInt(10)).orElseThrow();
+            List<Integer> occupying = ids(all.values().stream().filter(e -> e.getDayOfWeek() == day
+                    && e.getStartMinutes() <= from && e.getStartMinutes() + e.getDurationMinutes() > from).toList());
+            List<Integer> inRoom = ids(all.values().stream().filter(e -> e.getDayOfWeek() == day && e.getLocationId().equals(room.getName())
+                    && e.getStartMinutes() < to && e.getStartMinutes() + e.getDurationMinutes() > from).toList());
+            int nextStart = all.values().stream().filter(e -> e.getDayOfWeek() == day && e.getStartMinutes() >= from)
+                    .mapToInt(TimetableEntry::getStartMinutes).min().orElse(-1);
+
+            assertEquals(occupying, ids(data.entriesOccupying(day, from)));
+            assertEquals(occupying, ids(schedule.entriesOccupying(day, from)));
+            assertEquals(inRoom, ids(data.entriesOverlappingAt(room, day, from, to)));
+            assertEquals(inRoom, ids(schedule.entriesOverlappingAt(room, day, from, to)));
+            TimetableEntry next = data.nextEntryStarting(day, from);
+            assertEquals(nextStart, next == null ? -1 : next.getStartMinutes());
+            next = schedule.nextEntryStarting(day, from);
+            assertEquals(nextStart, next == null ? -1 : next.getStartMinutes());
+        }
+        assertEquals(all.size(), schedule.size());
+    }
+
+    private static List<Integer> ids(ScheduleSnapshot s, DayOfWeek day) {
+        return s.entriesOn(day).stream().map(TimetableEntry::getId).toList();
+    }
+
+    private static List<String> describe(ScheduleSnapshot s) {
+        List<String> lines = new ArrayList<>();
+        for (TimetableEntry e : s.getEntries()) {
+            lines.add(e.getId() + "/" + e.getVersion() + " " + e.getCourseName() + " " + e.getDay() + " " + e.getStartMinutes());
+        }
+        return lines;
+    }
+
+    @Test
+    void testGridModelShowsOffSlotClassesInTheirSlot() {
+        ScheduleGridModel model = new ScheduleGridModel(2, new int[]{480, 540, 600});
+        DataSnapshot data = new DataSnapshot();
+        data.addLocation(new Location("1", "Room 1", "Main", 0, 0));
+        data.addEntry(new TimetableEntry(1, 0, "Java", ClassType.LECTURE, "MONDAY", "08:15", 30, "Room 1"));
+        data.addEntry(new TimetableEntry(2, 0, "Math", ClassType.LAB, "TUESDAY", "10:45", 60, "Room 1"));
+        data.addEntry(new TimetableEntry(3, 0, "Art", ClassType.SEMINAR, "TUESDAY", "07:00", 60, "Room 1"));
+
+        List<Integer> changed = model.update(ScheduleSnapshot.of(data));
+        assertEquals(List.of(model.cell(0, 0), model.cell(1, 2)), changed);
+        assertEquals("Java", model.blockAt(model.cell(0, 0)).entry().getCourseName());
+        assertEquals("Room 1", model.blockAt(model.cell(0, 0)).locationName());
+        assertEquals("Math", model.blockAt(model.cell(1, 2)).entry().getCourseName());
+        for (int slot = 0; slot < model.slots(); slot++) {
+            if (slot != 2) assertNull(model.blockAt(model.cell(1, slot)), "before the first slot, Art has no cell");
+        }
+    }
+
+    @Test
+    void testGridModelPatchesOnlyCellsThatLookDifferent() {
+        ScheduleGridModel model = new ScheduleGridModel(5, new int[]{480, 540, 600});
+        DataSnapshot data = new DataSnapshot();
+        data.setVersion(1);
+        data.addLocation(new Location("1", "Room 1", "Main", 0, 0));
+        data.addEntry(new TimetableEntry(1, 0, "Java", ClassType.LECTURE, "MONDAY", "08:00", 60, "Room 1"));
+        data.addEntry(new TimetableEntry(2, 0, "Math", ClassType.LAB, "WEDNESDAY", "09:00", 60, "Room 1"));
+        ScheduleSnapshot first = ScheduleSnapshot.of(data);
+        assertEquals(2, model.update(first).size());
+        ScheduleGridModel.Block java = model.blockAt(model.cell(0, 0));
+
+        // Saved again unchanged: only the version moves on, so nothing needs redrawing.
+        ScheduleSnapshot resaved = first.apply(new ChangeSet(1, 2,
+                List.of(new TimetableEntry(1, 1, "Java", ClassType.LECTURE, "MONDAY", "08:00", 60, "Room 1")), List.of(), List.of()));
+        assertEquals(List.of(), model.update(resaved));
+        assertEquals(1, model.blockAt(model.cell(0, 0)).entry().getVersion());
+        assertNotSame(java, model.blockAt(model.cell(0, 0)));
+
+        ScheduleSnapshot renamed = resaved.apply(new ChangeSet(2, 3,
+                List.of(new TimetableEntry(2, 1, "Statistics", ClassType.LAB, "WEDNESDAY", "09:00", 60, "Room 1")), List.of(), List.of()));
+        assertEquals(List.of(model.cell(2, 1)), model.update(renamed));
+        assertEquals("Statistics", model.blockAt(model.cell(2, 1)).entry().getCourseName());
+
+        ScheduleSnapshot moved = renamed.apply(new ChangeSet(3, 4,
+                List.of(new TimetableEntry(1, 2, "Java", ClassType.LECTURE, "MONDAY", "10:00", 60, "Room 1")), List.of(), List.of()));
+        assertEquals(List.of(model.cell(0, 0), model.cell(0, 2)), model.update(moved));
+        assertNull(model.blockAt(model.cell(0, 0)));
+        assertSame(moved, model.shown());
+    }
+
+    @Test
+    void testLoadExecutorDeliversOnlyTheLatestLoad() throws Exception {
+        try (LoadExecutor executor = new LoadExecutor(200, Runnable::run)) {
+            LoadExecutor.Lane lane = executor.lane("test");
+            BlockingQueue<String> out = new LinkedBlockingQueue<>();
+            Consumer<IOException> onError = ex -> out.add("error " + ex.getMessage());
+
+            // A burst within the coalescing window runs only its last load.
+            AtomicInteger runs = new AtomicInteger();
+            for (int i = 0; i < 5; i++) {
+                String name = "burst " + i;
+                lane.submit(ticket -> {
+                    runs.incrementAndGet();
+                    return name;
+                }, out::add, onError);
+            }
+            assertEquals("burst 4", out.poll(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+
+            // A slow load overtaken by a newer one finishes later but is never delivered.
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch slowDone = new CountDownLatch(1);
+            lane.submit(ticket -> {
+                started.countDown();
+                await(release);
+                slowDone.countDown();
+                return "slow";
+            }, out::add, onError);
+            await(started);
+            lane.submit(ticket -> "fast", out::add, onError);
+            assertEquals("fast", out.poll(5, TimeUnit.SECONDS));
+            release.countDown();
+            await(slowDone);
+
+            // A load that checks in after being replaced stops there.
+            CountDownLatch checking = new CountDownLatch(1);
+            CountDownLatch replaced = new CountDownLatch(1);
+            AtomicInteger pastCheck = new AtomicInteger();
+            lane.submit(ticket -> {
+                checking.countDown();
+                await(replaced);
+                ticket.checkCancelled();
+                pastCheck.incrementAndGet();
+                return "stale";
+            }, out::add, onError);
+            await(checking);
+            lane.submit(ticket -> {
+                throw new IllegalStateException("boom");
+            }, out::add, onError);
+            replaced.countDown();
+            assertEquals("error Load 'test' failed: boom", out.poll(5, TimeUnit.SECONDS));
+            assertNull(out.poll(100, TimeUnit.MILLISECONDS));
+            assertEquals(0, pastCheck.get());
+
+            LoadExecutor.Stats stats = executor.stats();
+            assertEquals(9, stats.submitted());
+            assertEquals(4, stats.coalesced());
+            // At least slow and stale; a load replaced just after delivering, before it is marked finished, counts too.
+            assertTrue(stats.cancelled() >= 2);
+            assertEquals(2, stats.delivered());
+            assertEquals(1, stats.failed());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS), "timed out");
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    void testMutationPipelineMergesQueuedEditsAndRetiresSavedOnes() throws Exception {
+        String ds = Files.createTempDirectory("pipeline").toString();
+        FileStorage files = new FileStorage(false);
+        files.addTimetableEntry("Java", "LECTURE", "MONDAY", "08:00", 90, "Room 1", 0, 0, "CS", ds);
+        files.addTimetableEntry("Math", "LAB", "TUESDAY", "10:00", 60, "Room 1", 0, 0, "CS", ds);
+        ScheduleSnapshot base = ScheduleSnapshot.of(files.loadByFaculty("CS", ds));
+        TimetableEntry java = base.getEntries().stream().filter(e -> e.getCourseName().equals("Java")).findFirst().orElseThrow();
+        TimetableEntry math = base.getEntries().stream().filter(e -> e.getCourseName().equals("Math")).findFirst().orElseThrow();
+
+        // Writes wait at the gate, so edits made meanwhile stay queued and can be merged.
+        List<String> writes = new CopyOnWriteArrayList<>();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        ScheduleStorage gated = (ScheduleStorage) Proxy.newProxyInstance(ScheduleStorage.class.getClassLoader(),
+                new Class<?>[]{ScheduleStorage.class}, (self, method, args) -> {
+                    if (method.getName().endsWith("TimetableEntry") || method.getName().equals("addTimetableEntries")) {
+                        writes.add(method.getName() + " " + (args[0] instanceof List<?> rows
+                                ? rows.stream().map(r -> ((NewTimetableEntry) r).courseName()).toList() : args[0]));
+                        writing.countDown();
+                        await(gate);
+                    }
+                    try {
+                        return method.invoke(files, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        BlockingQueue<List<MutationPipeline.Failure>> settled = new LinkedBlockingQueue<>();
+        MutationPipeline edits = new MutationPipeline(gated, ds, "CS", Runnable::run, settled::add);
+
+        edits.add("Logic", ClassType.LECTURE, "WEDNESDAY", "09:00", 60, "Room 1", 0, 0, "CS");
+        await(writing);
+        edits.add("Stats", ClassType.LAB, "THURSDAY", "09:00", 60, "Room 1", 0, 0, "CS");
+        edits.add("Marathon", ClassType.LAB, "FRIDAY", "08:00", 13 * 60, "Room 1", 0, 0, "CS");
+        edits.add("Ethics", ClassType.LECTURE, "FRIDAY", "09:00", 60, "Room 1", 0, 0, "CS");
+        edits.update(java, "Java 2", ClassType.LECTURE, "Room 1", 0, 0, "CS");
+        TimetableEntry shownJava = edits.overlay(base).getEntries().stream().filter(e -> e.getId() == java.getId()).findFirst().orElseThrow();
+        assertEquals(java.getVersion() + 1, shownJava.getVersion());
+        // Edited again from what is shown: still one write from the loaded version.
+        edits.update(shownJava, "Java 3", ClassType.LAB, "Room 1", 0, 0, "CS");
+        TimetableEntry shownStats = edits.overlay(base).getEntries().stream().filter(e -> e.getCourseName().equals("Stats")).findFirst().orElseThrow();
+        assertTrue(shownStats.getId() < 0);
+        edits.update(shownStats, "Statistics", ClassType.LAB, "Room 1", 0, 0, "CS");
+        edits.delete(math);
+
+        ScheduleSnapshot shown = edits.overlay(base);
+        assertEquals(List.of("Ethics/0", "Java 3/" + (java.getVersion() + 1), "Logic/0", "Marathon/0", "Statistics/0"),
+                shown.getEntries().stream().map(e -> e.getCourseName() + "/" + e.getVersion()).sorted().toList());
+        assertEquals(2, base.size(), "the base is left as loaded");
+
+        // Queued adds go in one batch; the row the storage rejects fails alone.
+        gate.countDown();
+        assertEquals(List.of(), settled.poll(5, TimeUnit.SECONDS));
+        List<MutationPipeline.Failure> rejected = settled.poll(5, TimeUnit.SECONDS);
+        assertEquals(List.of("Adding Marathon"), rejected.stream().map(MutationPipeline.Failure::action).toList());
+        assertEquals(List.of("addTimetableEntries [Logic]", "addTimetableEntries [Statistics, Marathon, Ethics]",
+                "updateTimetableEntry " + java.getId(), "deleteTimetableEntry " + math.getId()), writes);
+
+        // Saved changes stay in the overlay until a schedule loaded after them is shown.
+        long mark = edits.savedMark();
+        shown = edits.overlay(base);
+        assertEquals(List.of("Ethics/0", "Java 3/" + (java.getVersion() + 1), "Logic/0", "Statistics/0"),
+                shown.getEntries().stream().map(e -> e.getCourseName() + "/" + e.getVersion()).sorted().toList());
+        ScheduleSnapshot loaded = ScheduleSnapshot.of(files.loadByFaculty("CS", ds));
+        assertEquals(List.of("Ethics/0", "Java 3/" + (java.getVersion() + 1), "Logic/0", "Statistics/0"),
+                loaded.getEntries().stream().map(e -> e.getCourseName() + "/" + e.getVersion()).sorted().toList());
+        edits.retire(mark);
+        assertSame(loaded, edits.overlay(loaded));
+
+        // A write that fails drops out of the overlay, which puts the grid back.
+        edits.update(java, "Java 4", ClassType.LECTURE, "Room 1", 0, 0, "CS");
+        List<MutationPipeline.Failure> failures = settled.poll(5, TimeUnit.SECONDS);
+        assertEquals(1, failures.size());
+        assertEquals("Saving Java 4", failures.get(0).action());
+        assertInstanceOf(StaleEntryException.class, failures.get(0).error());
+        assertSame(loaded, edits.overlay(loaded));
+        files.close();
+    }
+
+    @Test
+    void testSchemaMigrationsRunOncePerDataSource() throws IOException {
+        FakeDb db = FakeDb.create("migrations");
+        JdbcStorage first = new JdbcStorage();
+        assertFalse(first.accountExists("Ann", "CS", db.url));
+        List<Integer> all = SchemaMigrator.MIGRATIONS.stream().map(SchemaMigrator.Migration::version).toList();
+        assertEquals(all, db.schemaVersions);
+        int ranOnOpen = db.executed.size();
+
+        // The open pool skips the migrator entirely.
+        first.accountExists("Ann", "CS", db.url);
+        assertEquals(ranOnOpen + 1, db.executed.size());
+
+        // Another storage on the same url checks the version but applies nothing.
+        JdbcStorage second = new JdbcStorage();
+        second.accountExists("Ann", "CS", db.url);
+        List<String> sinceOpen = db.executed.subList(ranOnOpen + 1, db.executed.size());
+        assertTrue(sinceOpen.stream().noneMatch(sql -> sql.contains("INSERT INTO schema_version") || sql.contains("ALTER TABLE")
+                || sql.contains("CREATE INDEX")), sinceOpen.toString());
+        assertEquals(all, db.schemaVersions);
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void testSchemaMigratorResumesAfterTheLastAppliedVersion() throws Exception {
+        FakeDb db = FakeDb.create("migrations-partial");
+        db.schemaVersions.addAll(List.of(1, 2, 3));
+        // Migration 4 added its column and then died before recording itself.
+        db.ddl.add("ALTER TABLE timetable_entries ADD COLUMN version INT NOT NULL DEFAULT 0");
+        try (Connection conn = DriverManager.getConnection(db.url)) {
+            assertEquals(SchemaMigrator.latestVersion(), new SchemaMigrator().migrate(conn));
+        }
+        assertEquals(SchemaMigrator.MIGRATIONS.stream().map(SchemaMigrator.Migration::version).toList(), db.schemaVersions);
+        assertTrue(db.executed.stream().noneMatch(sql -> sql.contains("CREATE TABLE IF NOT EXISTS locations")
+                || sql.contains("idx_courses_faculty") || sql.contains("uq_locations_name")), "versions 1-3 are skipped");
+    }
+
+    @Test
+    void testCsvLinesKeepQuotedCommasAndQuotes() {
+        assertEquals(List.of("Java", "Room 1, North", "say \"hi\"", ""), TimetableImporter.parseCsvLine("Java,\"Room 1, North\",\"say \"\"hi\"\"\","));
+        assertEquals(List.of(""), TimetableImporter.parseCsvLine(""));
+        assertEquals(List.of("a", "", "b"), TimetableImporter.parseCsvLine("a,,b"));
+    }
+
+    @Test
+    void testImporterFlushesBatchesAndReportsFailuresByFileRow() throws IOException {
+        Path csv = Files.createTempFile("timetable", ".csv");
+        Files.writeString(csv, String.join("\n",
+                "courseName,type,day,startTime,durationMinutes,location,x,y,faculty",
+                "Java,LECTURE,MONDAY,08:00,90,\"Room 1, North\",0,0,",
+                "Math,LAB,TUESDAY,10:00,sixty,Room 2,5,5,",
+                "",
+                "Rejected,LAB,TUESDAY,12:00,60,Room 2,5,5,",
+                "Art,SEMINAR,FRIDAY,12:00,60,Room 3,9,9,History",
+                "Logic,LECTURE,WEDNESDAY,09:00,60,Room 1",
+                "Stats,LAB,THURSDAY,09:00,60,Room 2,5,5,"));
+        List<List<NewTimetableEntry>> batches = new ArrayList<>();
+        List<TimetableImporter.Progress> progress = new ArrayList<>();
+        TimetableImporter importer = new TimetableImporter(recordingStorage(batches), "ds", 2, progress::add);
+
+        TimetableImporter.Report report = importer.importFile(csv, "CS");
+        assertEquals(List.of(List.of("Java", "Rejected"), List.of("Art", "Stats")),
+                batches.stream().map(b -> b.stream().map(NewTimetableEntry::courseName).toList()).toList());
+        assertEquals("Room 1, North", batches.get(0).get(0).locationName());
+        assertEquals(List.of("CS", "CS"), batches.get(0).stream().map(NewTimetableEntry::faculty).toList());
+        assertEquals("History", batches.get(1).get(0).faculty());
+        // Blank lines aren't rows, and a failure inside a batch is mapped back to its row in the file.
+        assertEquals(List.of(2L, 3L, 5L), report.failures().stream().map(TimetableImporter.Failure::row).toList());
+        assertTrue(report.failures().get(0).reason().startsWith("Not a number"));
+        assertEquals("Too few columns", report.failures().get(2).reason());
+        assertEquals("rejected by storage", report.failures().get(1).reason());
+        assertEquals(new TimetableImporter.Progress(6, 3, 3, 0), withoutTime(report.progress()));
+        assertEquals(List.of(3L, 6L), progress.stream().map(TimetableImporter.Progress::rowsRead).toList());
+    }
+
+    @Test
+    void testImporterReadsJsonLocationsFirstAndSkipsBadEntries() throws IOException {
+        // Entries come before the locations they use, so only a second pass can resolve them.
+        Path json = Files.createTempFile("backup", ".json");
+        Files.writeString(json, """
+                {"entries": [
+                  {"courseName": "Java", "type": "LECTURE", "day": "MONDAY", "startTime": "08:00", "durationMinutes": 90, "locationId": "1"},
+                  {"courseName": "Math", "type": "LAB", "day": "TUESDAY", "startTime": "10:00", "durationMinutes": "ninety", "locationId": "1"},
+                  {"courseName": "Art", "type": "SEMINAR", "day": "FRIDAY", "startTime": "12:00", "durationMinutes": null, "locationId": "1"},
+                  {"courseName": "Logic", "type": "LECTURE", "day": "FRIDAY", "startTime": "12:00", "durationMinutes": 60, "locationId": "2"},
+                  {"courseName": "Stats", "type": {"nested": true}, "day": "FRIDAY", "startTime": "14:00", "durationMinutes": 60, "locationId": "1"},
+                  {"courseName": "Music", "type": "LAB", "day": "THURSDAY", "startTime": "09:00", "durationMinutes": 45, "locationId": "9"},
+                  {"courseName": "Drama", "type": "LAB", "day": "THURSDAY", "startTime": "11:00", "durationMinutes": 45, "locationId": "Room 1"}
+                ],
+                "locations": [
+                  {"id": "1", "name": "Room 1", "building": "Main", "x": 3, "y": 4},
+                  {"id": "2", "name": "Room 2", "building": "Main", "x": "far", "y": 4}
+                ]}
+                """);
+        List<List<NewTimetableEntry>> batches = new ArrayList<>();
+        TimetableImporter.Report report = new TimetableImporter(recordingStorage(batches), "ds", 10, p -> {}).importFile(json, "CS");
+
+        List<NewTimetableEntry> imported = batches.stream().flatMap(List::stream).toList();
+        assertEquals(List.of("Java", "Drama"), imported.stream().map(NewTimetableEntry::courseName).toList());
+        assertEquals(List.of("Room 1", "3", "4"), List.of(imported.get(0).locationName(), "" + imported.get(0).x(), "" + imported.get(0).y()));
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L), report.failures().stream().map(TimetableImporter.Failure::row).toList());
+        assertTrue(report.failures().get(0).reason().startsWith("Bad durationMinutes"), report.failures().get(0).reason());
+        assertTrue(report.failures().get(1).reason().startsWith("Bad durationMinutes"), report.failures().get(1).reason());
+        assertTrue(report.failures().get(2).reason().startsWith("Location Room 2: Bad x"), report.failures().get(2).reason());
+        assertTrue(report.failures().get(3).reason().startsWith("Bad type"), report.failures().get(3).reason());
+        assertEquals("Unknown location: 9", report.failures().get(4).reason());
+    }
+
+    // Takes every batch, rejecting rows for the course "Rejected".
+    private static ScheduleStorage recordingStorage(List<List<NewTimetableEntry>> batches) {
+        return (ScheduleStorage) Proxy.newProxyInstance(ScheduleStorage.class.getClassLoader(), new Class<?>[]{ScheduleStorage.class},
+                (self, method, args) -> {
+                    if (!method.getName().equals("addTimetableEntries")) throw new UnsupportedOperationException(method.getName());
+                    @SuppressWarnings("unchecked") List<NewTimetableEntry> rows = List.copyOf((List<NewTimetableEntry>) args[0]);
+                    batches.add(rows);
+                    List<BatchResult.RowFailure> failures = new ArrayList<>();
+                    for (int i = 0; i < rows.size(); i++) {
+                        if (rows.get(i).courseName().equals("Rejected")) failures.add(new BatchResult.RowFailure(i, "rejected by storage"));
+                    }
+                    return new BatchResult(rows.size() - failures.size(), failures);
+                });
+    }
+
+    private static TimetableImporter.Progress withoutTime(TimetableImporter.Progress p) {
+        return new TimetableImporter.Progress(p.rowsRead(), p.imported(), p.failed(), 0);
+    }
+
+    /**
+     * A JDBC driver for {@code jdbc:fake:} urls that keeps courses and locations in maps and
+     * understands just the statements the pool, {@link IdResolver} and {@link SchemaMigrator} send.
+     * DDL is only recorded; running the same ALTER or CREATE INDEX twice fails the way MySQL does.
+     */
+    static final class FakeDb {
+        private static final Map<String, FakeDb> BY_URL = new HashMap<>();
+
+        static {
+            try {
+                DriverManager.registerDriver(new Driver() {
+                    @Override public Connection connect(String url, Properties info) {
+                        FakeDb db;
+                        synchronized (BY_URL) {
+                            db = BY_URL.get(url);
+                        }
+                        return db == null ? null : db.connect();
+                    }
+                    @Override public boolean acceptsURL(String url) { return url.startsWith("jdbc:fake:"); }
+                    @Override public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) { return new DriverPropertyInfo[0]; }
+                    @Override public int getMajorVersion() { return 1; }
+                    @Override public int getMinorVersion() { return 0; }
+                    @Override public boolean jdbcCompliant() { return false; }
+                    @Override public Logger getParentLogger() { return Logger.getGlobal(); }
+                });
+            } catch (SQLException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final String url;
+        final Map<String, Integer> courses = new HashMap<>(); // lower-cased name
+        final Map<String, int[]> locations = new HashMap<>(); // lower-cased name -> {id, x, y}
+        final List<String> executed = new ArrayList<>();
+        final List<Integer> schemaVersions = new ArrayList<>();
+        final Set<String> ddl = new HashSet<>();
+        int open;
+        private int nextId = 1;
+
+        private FakeDb(String url) {
+            this.url = url;
+        }
+
+        static FakeDb create(String name) {
+            FakeDb db = new FakeDb("jdbc:fake:" + name);
+            synchronized (BY_URL) {
+                BY_URL.put(db.url, db);
+            }
+            return db;
+        }
+
+        private synchronized Connection connect() {
+            open++;
+            boolean[] closed = {false};
+            return proxy(Connection.class, (method, args) -> switch (method) {
+                case "close" -> {
+                    synchronized (this) {
+                        if (!closed[0]) open--;
+                    }
+                    closed[0] = true;
+                    yield null;
+                }
+                case "isClosed" -> closed[0];
+                case "isValid", "getAutoCommit" -> true;
+                case "setAutoCommit", "commit", "rollback" -> null;
+                case "prepareStatement" -> statement((String) args[0]);
+                case "createStatement" -> statement();
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private Statement statement() {
+            return proxy(Statement.class, (method, args) -> switch (method) {
+                case "execute" -> {
+                    execute((String) args[0], new Object[8]);
+                    yield false;
+                }
+                case "executeQuery" -> rows(execute((String) args[0], new Object[8])[1]);
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Object[] params = new Object[8];
+            boolean[] closed = {false};
+            int[] key = {0};
+            return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+                case "setString", "setInt", "setLong" -> {
+                    params[(Integer) args[0]] = args[1];
+                    yield null;
+                }
+                case "clearParameters", "clearBatch" -> null;
+                case "close" -> {
+                    closed[0] = true;
+                    yield null;
+                }
+                case "isClosed" -> closed[0];
+                case "executeUpdate" -> {
+                    int[] result = execute(sql, params);
+                    key[0] = result[1];
+                    yield result[0];
+                }
+                case "executeQuery" -> rows(execute(sql, params)[1]);
+                case "getGeneratedKeys" -> rows(key[0]);
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        // Returns {rows changed, id}; an id of 0 means no row.
+        private synchronized int[] execute(String sql, Object[] p) throws SQLException {
+            executed.add(sql);
+            String statement = sql.strip();
+            if (statement.startsWith("SELECT GET_LOCK") || statement.startsWith("SELECT RELEASE_LOCK")) return new int[]{0, 1};
+            if (statement.startsWith("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+                return new int[]{0, schemaVersions.stream().mapToInt(Integer::intValue).max().orElse(0)};
+            }
+            if (statement.startsWith("INSERT INTO schema_version")) {
+                schemaVersions.add((Integer) p[1]);
+                return new int[]{1, 0};
+            }
+            if (statement.startsWith("CREATE TABLE") || statement.startsWith("INSERT IGNORE")) return new int[]{0, 0};
+            if (statement.startsWith("CREATE INDEX") || statement.startsWith("ALTER TABLE")) {
+                if (!ddl.add(statement)) throw new SQLException("Duplicate", "42000", statement.contains("COLUMN") ? 1060 : 1061);
+                return new int[]{0, 0};
+            }
+            if (statement.startsWith("SELECT 1 FROM students")) return new int[]{0, 0};
+            if (sql.startsWith("INSERT INTO courses")) {
+                return new int[]{1, courses.computeIfAbsent(key(p[1]), k -> nextId++)};
+            }
+            if (sql.startsWith("SELECT id FROM courses")) {
+                return new int[]{0, courses.getOrDefault(key(p[1]), 0)};
+            }
+            if (sql.trim().startsWith("INSERT INTO locations")) {
+                int[] row = locations.computeIfAbsent(key(p[1]), k -> new int[]{nextId++, 0, 0});
+                row[1] = (Integer) p[2];
+                row[2] = (Integer) p[3];
+                return new int[]{1, row[0]};
+            }
+            if (sql.startsWith("UPDATE locations")) {
+                for (int[] row : locations.values()) {
+                    if (row[0] != (Integer) p[4]) continue;
+                    row[1] = (Integer) p[1];
+                    row[2] = (Integer) p[2];
+                    return new int[]{1, row[0]};
+                }
+                return new int[]{0, 0};
+            }
+            throw new UnsupportedOperationException(sql);
+        }
+
+        private static ResultSet rows(int id) {
+            boolean[] before = {true};
+            return proxy(ResultSet.class, (method, args) -> switch (method) {
+                case "next" -> {
+                    boolean has = before[0] && id != 0;
+                    before[0] = false;
+                    yield has;
+                }
+                case "getInt" -> id;
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private static String key(Object name) {
+            return ((String) name).trim().toLowerCase(Locale.ROOT);
+        }
+
+        private interface Handler {
+            Object handle(String method, Object[] args) throws SQLException;
+        }
+
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    (self, method, args) -> switch (method.getName()) {
+                        case "unwrap" -> null;
+                        case "isWrapperFor" -> false;
+                        case "hashCode" -> System.identityHashCode(self);
+                        case "equals" -> self == args[0];
+                        case "toString" -> type.getSimpleName();
+                        default -> handler.handle(method.getName(), args);
+                    }));
+        }
+    }
+}